@@ -1,12 +1,21 @@
 package net.amarantha.mediascheduler;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.name.Named;
+import net.amarantha.mediascheduler.audit.AuditLog;
+import net.amarantha.mediascheduler.audit.AuditLogImpl;
 import net.amarantha.mediascheduler.device.Projector;
 import net.amarantha.mediascheduler.device.ProjectorMock;
+import net.amarantha.mediascheduler.metrics.Metrics;
 import net.amarantha.mediascheduler.midi.Midi;
 import net.amarantha.mediascheduler.midi.MidiImpl;
 import net.amarantha.mediascheduler.scheduler.JsonEncoder;
 import net.amarantha.mediascheduler.scheduler.JsonEncoderImpl;
+import net.amarantha.mediascheduler.scheduler.JsonStorage;
+import net.amarantha.mediascheduler.scheduler.MvStoreStorage;
+import net.amarantha.mediascheduler.scheduler.Storage;
+import net.amarantha.mediascheduler.utility.PropertyManager;
 
 public class ApplicationModule extends AbstractModule {
 
@@ -15,6 +24,22 @@ public class ApplicationModule extends AbstractModule {
         bind(Midi.class).to(MidiImpl.class);
         bind(Projector.class).to(ProjectorMock.class);
         bind(JsonEncoder.class).to(JsonEncoderImpl.class);
+        bind(AuditLog.class).to(AuditLogImpl.class);
+        if ( Storage.MVSTORE.equals(PropertyManager.getBootstrapProperty(Storage.STORAGE_PROPERTY, "json")) ) {
+            bind(Storage.class).to(MvStoreStorage.class);
+        } else {
+            bind(Storage.class).to(JsonStorage.class);
+        }
+    }
+
+    @Provides @Named("output")
+    Midi provideOutputMidi(Metrics metrics) {
+        return new MidiImpl(metrics);
+    }
+
+    @Provides @Named("output")
+    Projector provideOutputProjector() {
+        return new ProjectorMock();
     }
 
 }
@@ -2,10 +2,22 @@ package net.amarantha.mediascheduler;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.util.Modules;
+import net.amarantha.mediascheduler.scheduler.Simulator;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.List;
 
 public class Main {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws FileNotFoundException {
+
+        if ( args.length>2 && "simulate".equals(args[0]) ) {
+            simulate(args);
+            return;
+        }
 
         Injector injector = Guice.createInjector(new ApplicationModule());
 
@@ -17,4 +29,19 @@ public class Main {
 
     }
 
+    private static void simulate(String[] args) throws FileNotFoundException {
+        Injector injector = Guice.createInjector(Modules.override(new ApplicationModule()).with(new SimulationModule()));
+        LocalDateTime from = LocalDateTime.parse(args[1]);
+        LocalDateTime to = LocalDateTime.parse(args[2]);
+        List<String> commands = injector.getInstance(Simulator.class).simulate(from, to, System.err);
+        PrintStream out = ( args.length>3 ? new PrintStream(args[3]) : System.out );
+        for ( String command : commands ) {
+            out.println(command);
+        }
+        out.flush();
+        if ( out!=System.out ) {
+            out.close();
+        }
+    }
+
 }
@@ -0,0 +1,51 @@
+package net.amarantha.mediascheduler;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import net.amarantha.mediascheduler.device.Projector;
+import net.amarantha.mediascheduler.device.ProjectorMock;
+import net.amarantha.mediascheduler.midi.Midi;
+import net.amarantha.mediascheduler.midi.MidiRecorder;
+import net.amarantha.mediascheduler.scheduler.JsonStorage;
+import net.amarantha.mediascheduler.scheduler.MvStoreStorage;
+import net.amarantha.mediascheduler.scheduler.ReadOnlyStorage;
+import net.amarantha.mediascheduler.scheduler.Storage;
+import net.amarantha.mediascheduler.utility.Now;
+import net.amarantha.mediascheduler.utility.PropertyManager;
+
+public class SimulationModule extends AbstractModule {
+
+    private final Now now = new Now();
+    private final MidiRecorder recorder = new MidiRecorder(now);
+
+    @Override
+    protected void configure() {
+        bind(Now.class).toInstance(now);
+        bind(MidiRecorder.class).toInstance(recorder);
+        bind(Midi.class).toInstance(recorder);
+        bind(Projector.class).to(ProjectorMock.class);
+    }
+
+    // A dry run reads the live store but never writes to it
+    @Provides @Singleton
+    Storage provideStorage(JsonStorage jsonFiles, MvStoreStorage mvStore) {
+        if ( Storage.MVSTORE.equals(PropertyManager.getBootstrapProperty(Storage.STORAGE_PROPERTY, "json")) ) {
+            mvStore.setReadOnly(true);
+            return new ReadOnlyStorage(mvStore);
+        }
+        return new ReadOnlyStorage(jsonFiles);
+    }
+
+    @Provides @Named("output")
+    Midi provideOutputMidi() {
+        return new MidiRecorder(now, recorder.getRecording());
+    }
+
+    @Provides @Named("output")
+    Projector provideOutputProjector() {
+        return new ProjectorMock();
+    }
+
+}
@@ -0,0 +1,96 @@
+package net.amarantha.mediascheduler.audit;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.time.Instant;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({ "epochMillis", "time", "type" })
+public class AuditEntry {
+
+    public enum Type {
+        CUE_STARTED, CUE_STOPPED,
+        PAUSED, RESUMED,
+        EVENT_ADDED, EVENT_UPDATED, EVENT_REMOVED, EVENT_MOVED, EVENT_ARCHIVED,
+        OCCURRENCE_OVERRIDDEN, OVERRIDE_REMOVED,
+        CUE_ADDED, CUE_REMOVED,
+        ZONE_CREATED
+    }
+
+    private long epochMillis;
+    private final Type type;
+    private final String zone;
+    private final String output;
+    private final Integer cueId;
+    private final Long eventId;
+    private final String detail;
+
+    @JsonCreator
+    public AuditEntry(
+            @JsonProperty("epochMillis") long epochMillis,
+            @JsonProperty("type") Type type,
+            @JsonProperty("zone") String zone,
+            @JsonProperty("output") String output,
+            @JsonProperty("cueId") Integer cueId,
+            @JsonProperty("eventId") Long eventId,
+            @JsonProperty("detail") String detail) {
+        this.epochMillis = epochMillis;
+        this.type = type;
+        this.zone = zone;
+        this.output = output;
+        this.cueId = cueId;
+        this.eventId = eventId;
+        this.detail = detail;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    // Stamped by the log as the entry is queued, so the log stays in time order
+    void setEpochMillis(long epochMillis) {
+        this.epochMillis = epochMillis;
+    }
+
+    public String getTime() {
+        return Instant.ofEpochMilli(epochMillis).toString();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getZone() {
+        return zone;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public Integer getCueId() {
+        return cueId;
+    }
+
+    public Long getEventId() {
+        return eventId;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public String toString() {
+        return getTime() + " " + type
+                + ( zone==null ? "" : " zone=" + zone )
+                + ( output==null ? "" : " output=" + output )
+                + ( cueId==null ? "" : " cue=" + cueId )
+                + ( eventId==null ? "" : " event=" + eventId )
+                + ( detail==null ? "" : " " + detail );
+    }
+
+}
@@ -0,0 +1,18 @@
+package net.amarantha.mediascheduler.audit;
+
+import net.amarantha.mediascheduler.audit.AuditEntry.Type;
+
+import java.util.List;
+
+public interface AuditLog {
+
+    void startup();
+
+    void shutdown();
+
+    // Must return quickly and never block on I/O
+    void record(Type type, String zone, String output, Integer cueId, Long eventId, String detail);
+
+    List<AuditEntry> query(long fromMillis, long toMillis);
+
+}
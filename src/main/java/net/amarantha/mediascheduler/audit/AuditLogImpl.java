@@ -0,0 +1,279 @@
+package net.amarantha.mediascheduler.audit;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.audit.AuditEntry.Type;
+import net.amarantha.mediascheduler.metrics.Metrics;
+import net.amarantha.mediascheduler.utility.Now;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Append-only JSON-lines log, written in batches by a flusher thread from a ring buffer.
+// A sparse index of line offsets lets queries seek near their start time.
+@Singleton
+public class AuditLogImpl implements AuditLog {
+
+    static final String AUDIT_FILENAME = "audit.log";
+
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    private static final long FLUSH_MILLIS = 250;
+    private static final int INDEX_INTERVAL = 256;
+
+    @Inject private Now now;
+    @Inject private Metrics metrics;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    public AuditLogImpl() {}
+
+
+    /////////////////
+    // Ring Buffer //
+    /////////////////
+
+    private final AuditEntry[] ring = new AuditEntry[CAPACITY];
+    private volatile long head = 0;     // Next entry to write
+    private volatile long tail = 0;     // Next free slot
+    private long dropped = 0;
+
+    private volatile boolean running = false;
+    private Thread flusher;
+
+    @Override
+    public void record(Type type, String zone, String output, Integer cueId, Long eventId, String detail) {
+        if ( !running ) {
+            return;
+        }
+        AuditEntry entry = new AuditEntry(0, type, zone, output, cueId, eventId, detail);
+        long queued;
+        synchronized (ring) {
+            long t = tail;
+            if ( t - head >= CAPACITY ) {
+                dropped++;
+                return;
+            }
+            entry.setEpochMillis(now.epochMillis());
+            ring[(int) (t & MASK)] = entry;
+            tail = queued = t + 1;
+        }
+        if ( queued - head >= CAPACITY / 2 ) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+
+    ////////////
+    // Writer //
+    ////////////
+
+    private final Object writeLock = new Object();
+
+    private String filename;
+    private OutputStream out;
+    private long fileLength;
+    private long maxTime = Long.MIN_VALUE;
+    private int sinceIndexed = 0;
+
+    // Index point i: the offset of a line, and the latest time of any line before it
+    private long[] indexOffsets = new long[64];
+    private long[] indexTimes = new long[64];
+    private int indexSize = 0;
+
+    @Override
+    public void startup() {
+        startup(AUDIT_FILENAME);
+    }
+
+    synchronized void startup(String filename) {
+        if ( running ) {
+            return;
+        }
+        this.filename = filename;
+        synchronized (writeLock) {
+            try {
+                rebuildIndex();
+                out = new BufferedOutputStream(new FileOutputStream(filename, true));
+            } catch (IOException e) {
+                System.err.println("Could not open audit log '" + filename + "': " + e.getMessage());
+                return;
+            }
+        }
+        running = true;
+        flusher = new Thread(() -> {
+            while ( running ) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS));
+                flush();
+            }
+        }, "audit-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if ( !running ) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException ignored) {}
+        flush();
+        synchronized (writeLock) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            out = null;
+        }
+    }
+
+    void flush() {
+        long start = System.nanoTime();
+        long lost;
+        synchronized (ring) {
+            lost = dropped;
+            dropped = 0;
+        }
+        if ( lost>0 ) {
+            System.err.println("Audit log buffer full: " + lost + " entries dropped");
+        }
+        synchronized (writeLock) {
+            long h = head;
+            long t = tail;
+            if ( out==null || h==t ) {
+                return;
+            }
+            try {
+                for ( long seq = h; seq < t; seq++ ) {
+                    int slot = (int) (seq & MASK);
+                    AuditEntry entry = ring[slot];
+                    ring[slot] = null;
+                    byte[] line = mapper.writeValueAsBytes(entry);
+                    indexLine(entry.getEpochMillis());
+                    out.write(line);
+                    out.write('\n');
+                    fileLength += line.length + 1;
+                }
+                out.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            head = t;
+        }
+        metrics.histogram(Metrics.AUDIT_FLUSH_DURATION).recordSince(start);
+    }
+
+    private void indexLine(long epochMillis) {
+        if ( sinceIndexed==0 ) {
+            if ( indexSize==indexOffsets.length ) {
+                indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+            }
+            indexOffsets[indexSize] = fileLength;
+            indexTimes[indexSize] = maxTime;
+            indexSize++;
+        }
+        sinceIndexed = (sinceIndexed + 1) % INDEX_INTERVAL;
+        maxTime = Math.max(maxTime, epochMillis);
+    }
+
+    private void rebuildIndex() throws IOException {
+        fileLength = 0;
+        maxTime = Long.MIN_VALUE;
+        sinceIndexed = 0;
+        indexSize = 0;
+        File file = new File(filename);
+        if ( !file.exists() ) {
+            return;
+        }
+        try ( BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) ) {
+            String line;
+            while ( (line = reader.readLine())!=null ) {
+                indexLine(timeOf(line));
+                fileLength += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+        }
+    }
+
+    // Lines start {"epochMillis":..., so the time can be read without a full parse
+    private long timeOf(String line) throws IOException {
+        int pos = line.indexOf(':');
+        if ( pos<0 ) {
+            throw new IOException("Corrupt audit log line: " + line);
+        }
+        long result = 0;
+        boolean negative = ( pos+1<line.length() && line.charAt(pos+1)=='-' );
+        for ( int i = pos + (negative ? 2 : 1); i < line.length() && Character.isDigit(line.charAt(i)); i++ ) {
+            result = result * 10 + (line.charAt(i) - '0');
+        }
+        return negative ? -result : result;
+    }
+
+
+    ///////////
+    // Query //
+    ///////////
+
+    @Override
+    public List<AuditEntry> query(long fromMillis, long toMillis) {
+        flush();
+        long startOffset;
+        long endOffset;
+        synchronized (writeLock) {
+            if ( filename==null ) {
+                return new ArrayList<>();
+            }
+            // Last index point with nothing at or after fromMillis before it
+            int low = 0;
+            int high = indexSize - 1;
+            int found = -1;
+            while ( low<=high ) {
+                int mid = (low + high) >>> 1;
+                if ( indexTimes[mid] < fromMillis ) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            startOffset = ( found<0 ? 0 : indexOffsets[found] );
+            endOffset = fileLength;
+        }
+        List<AuditEntry> result = new ArrayList<>();
+        try ( RandomAccessFile file = new RandomAccessFile(filename, "r") ) {
+            file.seek(startOffset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(file.getChannel()), StandardCharsets.UTF_8));
+            long offset = startOffset;
+            String line;
+            while ( offset<endOffset && (line = reader.readLine())!=null ) {
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                long time = timeOf(line);
+                if ( time > toMillis ) {
+                    break;
+                }
+                if ( time >= fromMillis ) {
+                    result.add(mapper.readValue(line, AuditEntry.class));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+}
@@ -13,6 +13,7 @@ import static javax.sound.midi.ShortMessage.*;
 public class ArKaos {
 
     private Cue currentCue;
+    private Cue fadingCue;
 
     private int brightness;
     private int contrast;
@@ -23,18 +24,31 @@ public class ArKaos {
     private PropertyManager props;
     private Midi midi;
 
+    private String prefix;
+    private String midiDevice;
+
     @Inject
     public ArKaos(PropertyManager props, Midi midi) {
+        this(props, null, midi);
+    }
+
+    public ArKaos(PropertyManager props, String outputName, Midi midi) {
         this.props = props;
         this.midi = midi;
-        brightness = props.getInt("brightness", 64);
-        contrast = props.getInt("contrast", 64);
-        brightnessCC = props.getInt("brightnessCC", 42);
-        contrastCC = props.getInt("contrastCC", 43);
+        prefix = ( outputName==null ? "" : outputName + "." );
+        midiDevice = ( outputName==null ? null : props.getString(prefix + "midiDevice", outputName) );
+        brightness = props.getInt(prefix + "brightness", 64);
+        contrast = props.getInt(prefix + "contrast", 64);
+        brightnessCC = props.getInt(prefix + "brightnessCC", 42);
+        contrastCC = props.getInt(prefix + "contrastCC", 43);
     }
 
     public void startup() {
-        midi.openDevice();
+        if ( midiDevice==null ) {
+            midi.openDevice();
+        } else {
+            midi.openDevice(midiDevice);
+        }
         stopAll();
         brightnessCommand(brightness).send(midi);
         contrastCommand(contrast).send(midi);
@@ -46,6 +60,15 @@ public class ArKaos {
     }
 
     public void startCueList(Cue cue) {
+        if ( fadingCue!=null ) {
+            stopCueCommand(fadingCue).send(midi);
+            fadingCue = null;
+            if ( cue.equals(currentCue) ) {
+                // Completing a crossfade: bring the incoming cue up to full
+                startCueCommand(cue).send(midi);
+                return;
+            }
+        }
         if ( currentCue !=null ) {
             stopCueCommand(currentCue).send(midi);
         }
@@ -53,8 +76,22 @@ public class ArKaos {
         startCueCommand(cue).send(midi);
     }
 
+    public void crossfade(Cue from, Cue to, int level) {
+        if ( currentCue!=null && !currentCue.equals(from) && !currentCue.equals(to) ) {
+            stopCueCommand(currentCue).send(midi);
+        }
+        if ( fadingCue!=null && !fadingCue.equals(from) && !fadingCue.equals(to) ) {
+            stopCueCommand(fadingCue).send(midi);
+        }
+        fadingCue = from;
+        currentCue = to;
+        cueLevelCommand(from, 127 - level).send(midi);
+        cueLevelCommand(to, level).send(midi);
+    }
+
     public void stopAll() {
         currentCue = null;
+        fadingCue = null;
         stopAllCommand().send(midi);
     }
 
@@ -64,13 +101,13 @@ public class ArKaos {
 
     public void setBrightness(int brightness) {
         this.brightness = brightness;
-        props.setProperty("brightness", brightness);
+        props.setProperty(prefix + "brightness", brightness);
         brightnessCommand(brightness).send(midi);
     }
 
     public void setContrast(int contrast) {
         this.contrast = contrast;
-        props.setProperty("contrast", contrast);
+        props.setProperty(prefix + "contrast", contrast);
         contrastCommand(contrast).send(midi);
     }
 
@@ -98,6 +135,10 @@ public class ArKaos {
         return new MidiCommand(CONTROL_CHANGE, 1, cue.getNumber(), 127);
     }
 
+    public MidiCommand cueLevelCommand(Cue cue, int level) {
+        return new MidiCommand(CONTROL_CHANGE, 1, cue.getNumber(), level);
+    }
+
     public MidiCommand stopCueCommand(Cue cue) {
         return new MidiCommand(CONTROL_CHANGE, 1, cue.getNumber(), 0);
     }
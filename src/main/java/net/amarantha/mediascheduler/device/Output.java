@@ -0,0 +1,154 @@
+package net.amarantha.mediascheduler.device;
+
+import net.amarantha.mediascheduler.audit.AuditEntry.Type;
+import net.amarantha.mediascheduler.audit.AuditLog;
+import net.amarantha.mediascheduler.scheduler.Cue;
+import net.amarantha.mediascheduler.scheduler.Playlist;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class Output {
+
+    private final String name;
+    private final ArKaos mediaServer;
+    private final Projector projector;
+
+    private ExecutorService dispatcher;
+    private Cue targetCue;
+    private Cue fadingCue;
+    private int targetLevel = Playlist.FULL_LEVEL;
+
+    private AuditLog audit;
+
+    public Output(String name, ArKaos mediaServer, Projector projector) {
+        this.name = name;
+        this.mediaServer = mediaServer;
+        this.projector = projector;
+    }
+
+    public void setAuditLog(AuditLog audit) {
+        this.audit = audit;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ArKaos getMediaServer() {
+        return mediaServer;
+    }
+
+    public Projector getProjector() {
+        return projector;
+    }
+
+
+    ////////////////////////
+    // Startup & Shutdown //
+    ////////////////////////
+
+    public void startup() {
+        startup(true);
+    }
+
+    public void startup(boolean async) {
+        if ( async ) {
+            dispatcher = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "output-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        mediaServer.startup();
+        projector.switchOn(true);
+    }
+
+    public void shutdown() {
+        if ( dispatcher!=null ) {
+            dispatcher.shutdown();
+            try {
+                dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {}
+            dispatcher = null;
+        }
+        changeTarget(null);
+        fadingCue = null;
+        targetLevel = Playlist.FULL_LEVEL;
+        mediaServer.shutdown();
+        projector.switchOn(false);
+    }
+
+
+    //////////////
+    // Dispatch //
+    //////////////
+
+    public synchronized void showCue(Cue cue) {
+        showCue(cue, null, Playlist.FULL_LEVEL);
+    }
+
+    public synchronized void showCue(Cue cue, Cue fadeFrom, int level) {
+        if ( cue==null || fadeFrom==null || fadeFrom.equals(cue) || level>=Playlist.FULL_LEVEL ) {
+            fadeFrom = null;
+            level = Playlist.FULL_LEVEL;
+        }
+        if ( Objects.equals(cue, targetCue) && Objects.equals(fadeFrom, fadingCue) && level==targetLevel ) {
+            return;
+        }
+        changeTarget(cue);
+        fadingCue = fadeFrom;
+        targetLevel = level;
+        if ( cue==null ) {
+            dispatch(mediaServer::stopAll);
+        } else if ( fadeFrom==null ) {
+            dispatch(() -> mediaServer.startCueList(cue));
+        } else {
+            Cue from = fadeFrom;
+            int mix = level;
+            dispatch(() -> mediaServer.crossfade(from, cue, mix));
+        }
+    }
+
+    public synchronized void stopAll() {
+        changeTarget(null);
+        fadingCue = null;
+        targetLevel = Playlist.FULL_LEVEL;
+        dispatch(mediaServer::stopAll);
+    }
+
+    public synchronized Cue getTargetCue() {
+        return targetCue;
+    }
+
+    public synchronized Cue getFadingCue() {
+        return fadingCue;
+    }
+
+    public synchronized int getTargetLevel() {
+        return targetLevel;
+    }
+
+    private void changeTarget(Cue cue) {
+        if ( audit!=null && !Objects.equals(cue, targetCue) ) {
+            if ( targetCue!=null ) {
+                audit.record(Type.CUE_STOPPED, null, name, targetCue.getId(), null, null);
+            }
+            if ( cue!=null ) {
+                audit.record(Type.CUE_STARTED, null, name, cue.getId(), null, null);
+            }
+        }
+        targetCue = cue;
+    }
+
+    private void dispatch(Runnable command) {
+        if ( dispatcher==null ) {
+            command.run();
+        } else {
+            dispatcher.submit(command);
+        }
+    }
+
+}
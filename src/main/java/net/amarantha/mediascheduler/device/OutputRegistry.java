@@ -0,0 +1,96 @@
+package net.amarantha.mediascheduler.device;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import net.amarantha.mediascheduler.audit.AuditLog;
+import net.amarantha.mediascheduler.midi.Midi;
+import net.amarantha.mediascheduler.utility.PropertyManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Singleton
+public class OutputRegistry {
+
+    public static final String DEFAULT_OUTPUT = "main";
+
+    @Inject private ArKaos mediaServer;
+    @Inject private Projector projector;
+    @Inject private PropertyManager props;
+    @Inject private AuditLog audit;
+
+    @Inject @Named("output") private Provider<Midi> midiProvider;
+    @Inject @Named("output") private Provider<Projector> projectorProvider;
+
+    private final Map<String, Output> outputs = new LinkedHashMap<>();
+    private volatile int revision = 0;
+
+    private void loadOutputs() {
+        outputs.clear();
+        register(new Output(DEFAULT_OUTPUT, mediaServer, projector));
+        for ( String name : props.getString("outputs", "").split(",") ) {
+            name = name.trim();
+            if ( !name.isEmpty() && !outputs.containsKey(name) ) {
+                register(new Output(name, new ArKaos(props, name, midiProvider.get()), projectorProvider.get()));
+            }
+        }
+    }
+
+    public void register(Output output) {
+        output.setAuditLog(audit);
+        outputs.put(output.getName(), output);
+        revision++;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public Collection<Output> getOutputs() {
+        return Collections.unmodifiableCollection(outputs.values());
+    }
+
+    public Output getOutput(String name) {
+        return outputs.get(name==null ? DEFAULT_OUTPUT : name);
+    }
+
+    public ArKaos getMediaServer(String name) {
+        Output output = getOutput(name);
+        return output==null ? null : output.getMediaServer();
+    }
+
+
+    ////////////////////////
+    // Startup & Shutdown //
+    ////////////////////////
+
+    public void startup() {
+        startup(true);
+    }
+
+    public void startup(boolean async) {
+        loadOutputs();
+        if ( async ) {
+            outputs.values().parallelStream().forEach(Output::startup);
+        } else {
+            for ( Output output : outputs.values() ) {
+                output.startup(false);
+            }
+        }
+    }
+
+    public void shutdown() {
+        outputs.values().parallelStream().forEach(Output::shutdown);
+    }
+
+    public void stopAll() {
+        for ( Output output : outputs.values() ) {
+            output.stopAll();
+        }
+    }
+
+}
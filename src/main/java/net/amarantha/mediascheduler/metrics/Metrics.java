@@ -0,0 +1,105 @@
+package net.amarantha.mediascheduler.metrics;
+
+import com.google.inject.Singleton;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+@Singleton
+public class Metrics {
+
+    public static final String TICK_DURATION = "scheduler_tick_duration_seconds";
+    public static final String CHECK_DURATION = "scheduler_check_duration_seconds";
+    public static final String TRANSITION_LAG = "scheduler_transition_lag_seconds";
+    public static final String SAVE_DURATION = "scheduler_save_duration_seconds";
+    public static final String MIDI_SEND_DURATION = "midi_send_duration_seconds";
+    public static final String JSON_ENCODE_DURATION = "json_encode_duration_seconds";
+    public static final String JSON_DECODE_DURATION = "json_decode_duration_seconds";
+    public static final String FILE_WRITE_DURATION = "file_write_duration_seconds";
+    public static final String FILE_SYNC_DURATION = "file_sync_duration_seconds";
+    public static final String REST_DURATION = "rest_request_duration_seconds";
+    public static final String AUDIT_FLUSH_DURATION = "audit_flush_duration_seconds";
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Metrics() {
+        family(TICK_DURATION, "Time spent in each scheduler tick");
+        family(CHECK_DURATION, "Time spent checking every zone");
+        family(TRANSITION_LAG, "Delay between a transition's scheduled time and when it ran");
+        family(SAVE_DURATION, "Time spent saving schedules");
+        family(MIDI_SEND_DURATION, "Time spent sending a MIDI message");
+        family(JSON_ENCODE_DURATION, "Time spent encoding JSON");
+        family(JSON_DECODE_DURATION, "Time spent decoding JSON");
+        family(FILE_WRITE_DURATION, "Time spent writing files");
+        family(FILE_SYNC_DURATION, "Time spent forcing files to disk");
+        family(REST_DURATION, "Time spent handling REST requests");
+        family(AUDIT_FLUSH_DURATION, "Time spent writing a batch of audit entries");
+    }
+
+    public Histogram histogram(String name) {
+        return histogram(name, null, null);
+    }
+
+    public Histogram histogram(String name, String label, String value) {
+        Family family = family(name, "");
+        String key = ( label==null ? "" : label + "=\"" + escape(value) + "\"" );
+        Histogram histogram = family.histograms.get(key);
+        return histogram!=null ? histogram : family.histograms.computeIfAbsent(key, k -> new Histogram());
+    }
+
+    private Family family(String name, String help) {
+        Family family = families.get(name);
+        return family!=null ? family : families.computeIfAbsent(name, n -> new Family(help));
+    }
+
+    private static class Family {
+        private final String help;
+        private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+        private Family(String help) {
+            this.help = help;
+        }
+    }
+
+
+    ////////////
+    // Export //
+    ////////////
+
+    // Prometheus text exposition format (version 0.0.4), each histogram as a summary
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        for ( Entry<String, Family> entry : families.entrySet() ) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            sb.append("# HELP ").append(name).append(" ").append(family.help).append("\n");
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for ( Entry<String, Histogram> labelled : new ConcurrentSkipListMap<>(family.histograms).entrySet() ) {
+                String labels = labelled.getKey();
+                Histogram histogram = labelled.getValue();
+                for ( double quantile : QUANTILES ) {
+                    String quantileLabel = "quantile=\"" + quantile + "\"";
+                    sb.append(name).append("{").append(labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel).append("} ")
+                      .append(seconds(histogram.getValueAtQuantile(quantile))).append("\n");
+                }
+                String suffix = ( labels.isEmpty() ? "" : "{" + labels + "}" );
+                sb.append(name).append("_sum").append(suffix).append(" ").append(seconds(histogram.getSum())).append("\n");
+                sb.append(name).append("_count").append(suffix).append(" ").append(histogram.getCount()).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1e6);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
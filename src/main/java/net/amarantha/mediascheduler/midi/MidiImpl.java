@@ -1,6 +1,9 @@
 package net.amarantha.mediascheduler.midi;
 
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.metrics.Histogram;
+import net.amarantha.mediascheduler.metrics.Metrics;
 
 import javax.sound.midi.*;
 
@@ -9,6 +12,13 @@ public class MidiImpl implements Midi {
 
     private MidiDevice midiDevice;
 
+    private final Histogram sendTimes;
+
+    @Inject
+    public MidiImpl(Metrics metrics) {
+        sendTimes = metrics.histogram(Metrics.MIDI_SEND_DURATION);
+    }
+
     @Override
     public void openDevice() {
         openDevice(System.getenv("MIDIDEVICE"));
@@ -34,6 +44,7 @@ public class MidiImpl implements Midi {
     @Override
     public void send(int command, int channel, int data1, int data2) {
         if ( midiDevice!=null ) {
+            long start = System.nanoTime();
             try {
                 Receiver receiver = midiDevice.getReceiver();
                 ShortMessage message = new ShortMessage();
@@ -44,6 +55,7 @@ public class MidiImpl implements Midi {
             } catch (MidiUnavailableException e) {
                 System.err.println("MIDI Device Unavailable: " + e.getMessage());
             }
+            sendTimes.recordSince(start);
         }
     }
 
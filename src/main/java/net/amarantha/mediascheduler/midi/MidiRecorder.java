@@ -0,0 +1,49 @@
+package net.amarantha.mediascheduler.midi;
+
+import com.google.inject.Inject;
+import net.amarantha.mediascheduler.utility.Now;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MidiRecorder implements Midi {
+
+    private final Now now;
+    private final List<String> recording;
+
+    private String device = "default";
+
+    @Inject
+    public MidiRecorder(Now now) {
+        this(now, Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    public MidiRecorder(Now now, List<String> recording) {
+        this.now = now;
+        this.recording = recording;
+    }
+
+    @Override
+    public void openDevice() {
+        device = "default";
+    }
+
+    @Override
+    public void openDevice(String name) {
+        device = name;
+    }
+
+    @Override
+    public void closeDevice() {}
+
+    @Override
+    public void send(int command, int channel, int data1, int data2) {
+        recording.add(now.now() + " " + device + " " + command + " " + channel + " " + data1 + " " + data2);
+    }
+
+    public List<String> getRecording() {
+        return recording;
+    }
+
+}
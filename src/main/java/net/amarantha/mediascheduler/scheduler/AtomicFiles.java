@@ -0,0 +1,230 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.metrics.Metrics;
+import net.amarantha.mediascheduler.utility.PropertyManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+// Crash-safe whole-file writes, with rolling backups and CRC32 sidecars to fall back on
+@Singleton
+public class AtomicFiles {
+
+    public static final String FSYNC_PROPERTY = "fsync";
+    public static final String BACKUPS_PROPERTY = "backups";
+
+    static final String TEMP_SUFFIX = ".tmp";
+    static final String CHECKSUM_SUFFIX = ".crc";
+    static final String CORRUPT_SUFFIX = ".corrupt";
+
+    private static final int DEFAULT_BACKUPS = 3;
+
+    // NONE leaves flushing to the OS, DATA forces each file's contents to disk before it is
+    // renamed into place, and FULL also forces the directory so the rename itself is durable
+    public enum Fsync { NONE, DATA, FULL }
+
+    public interface Decoder<T> {
+        T decode(byte[] bytes) throws IOException;
+    }
+
+    @Inject private Metrics metrics;
+
+    private Fsync fsync = PropertyManager.getBootstrapProperty(FSYNC_PROPERTY, Fsync.FULL, value -> Fsync.valueOf(value.toUpperCase(Locale.ROOT)));
+    private int backups = Math.max(0, PropertyManager.getBootstrapProperty(BACKUPS_PROPERTY, DEFAULT_BACKUPS, Integer::parseInt));
+
+    void setFsync(Fsync fsync) {
+        this.fsync = fsync;
+    }
+
+    void setBackups(int backups) {
+        this.backups = backups;
+    }
+
+
+    ///////////
+    // Write //
+    ///////////
+
+    public synchronized void write(String filename, byte[] bytes) throws IOException {
+        Path path = Paths.get(filename).toAbsolutePath();
+        Path temp = sibling(path, TEMP_SUFFIX);
+        Path tempChecksum = sibling(path, TEMP_SUFFIX + CHECKSUM_SUFFIX);
+        writeFully(temp, bytes);
+        writeFully(tempChecksum, checksum(bytes).getBytes(StandardCharsets.US_ASCII));
+        if ( Files.exists(path) ) {
+            rotateBackups(path);
+        }
+        // Should a crash come between the two, the new copy fails its check against the old
+        // sidecar and a read falls back to the first backup, which is the old copy again
+        Files.move(temp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+        Files.move(tempChecksum, sibling(path, CHECKSUM_SUFFIX), ATOMIC_MOVE, REPLACE_EXISTING);
+        if ( fsync==Fsync.FULL ) {
+            forceDirectory(path.getParent());
+        }
+    }
+
+    // For journals, which have no backups or sidecar and are read line by line, a crash leaving
+    // at most a torn last line. Under FULL the directory is forced too when the file is new.
+    public synchronized void append(String filename, byte[] bytes) throws IOException {
+        Path path = Paths.get(filename).toAbsolutePath();
+        boolean created = !Files.exists(path);
+        try ( FileChannel channel = FileChannel.open(path, CREATE, WRITE, APPEND) ) {
+            writeFully(channel, bytes);
+        }
+        if ( created && fsync==Fsync.FULL ) {
+            forceDirectory(path.getParent());
+        }
+    }
+
+    private void writeFully(Path path, byte[] bytes) throws IOException {
+        try ( FileChannel channel = FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING) ) {
+            writeFully(channel, bytes);
+        }
+    }
+
+    private void writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while ( buffer.hasRemaining() ) {
+            channel.write(buffer);
+        }
+        if ( fsync!=Fsync.NONE ) {
+            long start = System.nanoTime();
+            channel.force(false);
+            metrics.histogram(Metrics.FILE_SYNC_DURATION).recordSince(start);
+        }
+    }
+
+    // Not every platform can open a directory to force it, in which case the rename is left
+    // to the OS as with DATA
+    private void forceDirectory(Path directory) {
+        long start = System.nanoTime();
+        try ( FileChannel channel = FileChannel.open(directory, READ) ) {
+            channel.force(true);
+            metrics.histogram(Metrics.FILE_SYNC_DURATION).recordSince(start);
+        } catch (IOException ignored) {}
+    }
+
+    // Shifts each backup along one, dropping the oldest, and keeps the live copy as the first.
+    // That one is a hard link, so the live file is never missing, even for a moment.
+    private void rotateBackups(Path path) throws IOException {
+        if ( backups==0 ) {
+            return;
+        }
+        for ( int i = backups; i > 1; i-- ) {
+            moveIfExists(backup(path, i - 1), backup(path, i));
+            moveIfExists(sibling(backup(path, i - 1), CHECKSUM_SUFFIX), sibling(backup(path, i), CHECKSUM_SUFFIX));
+        }
+        link(path, backup(path, 1));
+        Path checksum = sibling(path, CHECKSUM_SUFFIX);
+        if ( Files.exists(checksum) ) {
+            link(checksum, sibling(backup(path, 1), CHECKSUM_SUFFIX));
+        } else {
+            Files.deleteIfExists(sibling(backup(path, 1), CHECKSUM_SUFFIX));
+        }
+    }
+
+    private void moveIfExists(Path from, Path to) throws IOException {
+        if ( Files.exists(from) ) {
+            Files.move(from, to, REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(to);
+        }
+    }
+
+    private void link(Path existing, Path link) throws IOException {
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, existing);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(existing, link, REPLACE_EXISTING);
+        }
+    }
+
+
+    //////////
+    // Read //
+    //////////
+
+    // Decodes the newest copy that matches its checksum and decodes cleanly, or returns null
+    // if there is no copy at all. When every copy is bad the live one is set aside as .corrupt
+    // before failing, so that saving over it can't rotate the last of the evidence away.
+    public <T> T read(String filename, Decoder<T> decoder) throws IOException {
+        Path path = Paths.get(filename).toAbsolutePath();
+        boolean found = false;
+        for ( int i = 0; i <= backups; i++ ) {
+            Path copy = ( i==0 ? path : backup(path, i) );
+            if ( !Files.exists(copy) ) {
+                continue;
+            }
+            found = true;
+            try {
+                T result = decoder.decode(readVerified(copy));
+                if ( i>0 ) {
+                    System.err.println("Recovered '" + filename + "' from backup " + copy.getFileName());
+                }
+                return result;
+            } catch (IOException e) {
+                System.err.println("Skipping '" + copy.getFileName() + "': " + e.getMessage());
+            }
+        }
+        if ( !found ) {
+            return null;
+        }
+        if ( Files.exists(path) ) {
+            Files.copy(path, sibling(path, CORRUPT_SUFFIX), REPLACE_EXISTING);
+        }
+        throw new IOException("No intact copy of '" + filename + "'");
+    }
+
+    // A copy without a sidecar, such as one written before there were any, is taken on trust
+    private byte[] readVerified(Path path) throws IOException {
+        byte[] bytes;
+        try ( FileChannel channel = FileChannel.open(path, READ) ) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while ( buffer.hasRemaining() && channel.read(buffer)>=0 ) {}
+            bytes = buffer.array();
+        }
+        Path checksum = sibling(path, CHECKSUM_SUFFIX);
+        if ( Files.exists(checksum) ) {
+            String expected = new String(Files.readAllBytes(checksum), StandardCharsets.US_ASCII).trim();
+            String actual = checksum(bytes).trim();
+            if ( !expected.equals(actual) ) {
+                throw new IOException("checksum " + actual + " does not match " + expected);
+            }
+        }
+        return bytes;
+    }
+
+
+    ///////////
+    // Paths //
+    ///////////
+
+    private static String checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return Long.toHexString(crc.getValue()) + " " + bytes.length + "\n";
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+    private static Path backup(Path path, int generation) {
+        return sibling(path, "." + generation);
+    }
+
+}
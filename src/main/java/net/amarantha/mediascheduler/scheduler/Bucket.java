@@ -0,0 +1,84 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.util.Arrays;
+
+// Rows of an EventStore sorted on start key. Inserts binary search then shift the arrays, which
+// beats a tree up to about ten thousand rows, far more than a bucket holds.
+class Bucket {
+
+    private long[] keys = new long[4];
+    private int[] rows = new int[4];
+    private int size = 0;
+
+    void add(int row, long key) {
+        if ( size==rows.length ) {
+            keys = Arrays.copyOf(keys, size * 2);
+            rows = Arrays.copyOf(rows, size * 2);
+        }
+        int pos = upperBound(key);
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        System.arraycopy(rows, pos, rows, pos + 1, size - pos);
+        keys[pos] = key;
+        rows[pos] = row;
+        size++;
+    }
+
+    boolean remove(int row, long key) {
+        for ( int i = lowerBound(key); i < size && keys[i]==key; i++ ) {
+            if ( rows[i]==row ) {
+                System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int get(int i) {
+        return rows[i];
+    }
+
+    long getKey(int i) {
+        return keys[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size==0;
+    }
+
+    // First position with a key not less than the given one
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while ( low<high ) {
+            int mid = (low + high) >>> 1;
+            if ( keys[mid] < key ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First position with a key greater than the given one
+    private int upperBound(long key) {
+        int low = 0;
+        int high = size;
+        while ( low<high ) {
+            int mid = (low + high) >>> 1;
+            if ( keys[mid] <= key ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,124 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static net.amarantha.mediascheduler.scheduler.MediaEvent.SECONDS_PER_DAY;
+
+// Answers clashes and free slots by binary search over interval indexes of each layer,
+// built only over the dates a proposed event could touch
+class ConflictFinder {
+
+    // Free slots are looked for this far either side of the proposed start
+    static final int SLOT_SEARCH_DAYS = 7;
+
+    static ConflictReport find(Map<Integer, Schedule> schedules, int priority, MediaEvent proposed,
+                               LocalDateTime notBefore, int horizonDays, int slotCount) {
+        LocalDate first = proposed.getStartDate();
+        LocalDate last = first.plusDays(horizonDays);
+        if ( proposed.getLastDate()!=null && proposed.getLastDate().isBefore(last) ) {
+            last = proposed.getLastDate();
+        }
+        IntervalIndex occurrences = indexProposed(proposed, first, last);
+
+        int maxSpanDays = 0;
+        for ( Schedule schedule : schedules.values() ) {
+            maxSpanDays = Math.max(maxSpanDays, schedule.getMaxSpanDays());
+        }
+        LocalDate from = first.minusDays(SLOT_SEARCH_DAYS + maxSpanDays + 1);
+        LocalDate to = max(last.plusDays(proposed.getSpanDays()), first.plusDays(SLOT_SEARCH_DAYS + 1));
+        Map<Integer, IntervalIndex> layers = new LinkedHashMap<>();
+        for ( Entry<Integer, Schedule> entry : schedules.entrySet() ) {
+            layers.put(entry.getKey(), entry.getValue().indexOccurrences(from, to));
+        }
+
+        ConflictReport report = new ConflictReport();
+        for ( int k = 0; k < occurrences.size(); k++ ) {
+            long start = occurrences.getStart(k);
+            long end = occurrences.getEnd(k);
+            for ( Entry<Integer, IntervalIndex> entry : layers.entrySet() ) {
+                IntervalIndex index = entry.getValue();
+                for ( int i = index.firstReaching(start); i < index.size() && index.getStart(i) < end; i++ ) {
+                    // Checking an existing event's new times shouldn't report it clashing with itself
+                    if ( index.getEnd(i) > start && index.getEventId(i)!=proposed.getId() ) {
+                        report.getConflicts().add(new ConflictReport.Conflict(entry.getKey(), entry.getKey()==priority,
+                                index.getEventId(i), index.getCueId(i),
+                                toDateTime(index.getStart(i)), toDateTime(index.getEnd(i)), toDateTime(start)));
+                    }
+                }
+            }
+        }
+
+        long target = ( occurrences.size()>0 ? occurrences.getStart(0) : first.toEpochDay() * SECONDS_PER_DAY + proposed.getStartOffset() );
+        IntervalIndex own = layers.get(priority);
+        findFreeSlots(report, own==null ? new IntervalIndex() : own, proposed.getId(), target,
+                proposed.getEndOffset() - proposed.getStartOffset(), notBefore.toEpochSecond(ZoneOffset.UTC), slotCount);
+        return report;
+    }
+
+    // The proposed event's own occurrences over the horizon, stand-ins included
+    private static IntervalIndex indexProposed(MediaEvent proposed, LocalDate first, LocalDate last) {
+        IntervalIndex result = new IntervalIndex();
+        for ( LocalDate date = proposed.nextOccurrence(first); date!=null && !date.isAfter(last); date = proposed.nextOccurrence(date.plusDays(1)) ) {
+            long midnight = date.toEpochDay() * SECONDS_PER_DAY;
+            result.add(midnight + proposed.getStartOffset(), midnight + proposed.getEndOffset(), proposed.getId(), proposed.getCueId());
+        }
+        for ( EventOverride override : proposed.getOverrides() ) {
+            MediaEvent replacement = override.apply(proposed);
+            if ( replacement!=null && !override.getDate().isBefore(first) && !override.getDate().isAfter(last) ) {
+                long midnight = override.getDate().toEpochDay() * SECONDS_PER_DAY;
+                result.add(midnight + replacement.getStartOffset(), midnight + replacement.getEndOffset(), proposed.getId(), replacement.getCueId());
+            }
+        }
+        result.sort();
+        return result;
+    }
+
+    // Walks the gaps between the layer's occurrences around the target, placing the event as
+    // near the target as each gap allows, and keeps the nearest. A repeating event is placed
+    // by its first occurrence only.
+    private static void findFreeSlots(ConflictReport report, IntervalIndex index, int eventId, long target,
+                                      long length, long notBefore, int slotCount) {
+        long windowStart = Math.max(target - SLOT_SEARCH_DAYS * SECONDS_PER_DAY, notBefore);
+        long windowEnd = target + SLOT_SEARCH_DAYS * SECONDS_PER_DAY + length;
+        List<long[]> candidates = new ArrayList<>();
+        long cursor = windowStart;
+        for ( int i = index.firstReaching(windowStart); i < index.size() && index.getStart(i) < windowEnd; i++ ) {
+            if ( index.getEventId(i)==eventId ) {
+                continue;
+            }
+            if ( index.getStart(i) > cursor ) {
+                offer(candidates, cursor, index.getStart(i), target, length);
+            }
+            cursor = Math.max(cursor, index.getEnd(i));
+        }
+        offer(candidates, cursor, windowEnd, target, length);
+        candidates.sort((a, b) -> a[1]!=b[1] ? Long.compare(a[1], b[1]) : Long.compare(a[0], b[0]));
+        for ( int i = 0; i < candidates.size() && i < slotCount; i++ ) {
+            long start = candidates.get(i)[0];
+            report.getFreeSlots().add(new ConflictReport.FreeSlot(toDateTime(start), toDateTime(start + length)));
+        }
+    }
+
+    private static void offer(List<long[]> candidates, long gapStart, long gapEnd, long target, long length) {
+        if ( gapEnd - gapStart >= length ) {
+            long start = Math.min(Math.max(target, gapStart), gapEnd - length);
+            candidates.add(new long[] { start, Math.abs(start - target) });
+        }
+    }
+
+    private static LocalDateTime toDateTime(long localSeconds) {
+        return LocalDateTime.ofEpochSecond(localSeconds, 0, ZoneOffset.UTC);
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+}
@@ -0,0 +1,149 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Every occurrence a proposed event would clash with, in each layer of its zone, and the
+// nearest times an event of its length would fit into its own layer
+public class ConflictReport {
+
+    public static final int DEFAULT_HORIZON_DAYS = 366;
+    public static final int DEFAULT_SLOTS = 5;
+
+    private final List<Conflict> conflicts = new ArrayList<>();
+    private final List<FreeSlot> freeSlots = new ArrayList<>();
+
+    public List<Conflict> getConflicts() {
+        return conflicts;
+    }
+
+    public List<FreeSlot> getFreeSlots() {
+        return freeSlots;
+    }
+
+    // Clashes in other layers only override or are overridden, so only those in its own block it
+    public boolean isClear() {
+        for ( Conflict conflict : conflicts ) {
+            if ( conflict.isBlocking() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    //////////////
+    // Conflict //
+    //////////////
+
+    public static class Conflict {
+
+        private final int priority;
+        private final boolean blocking;
+        private final int eventId;
+        private final int cueId;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final LocalDateTime proposedStart;
+
+        Conflict(int priority, boolean blocking, int eventId, int cueId, LocalDateTime start, LocalDateTime end, LocalDateTime proposedStart) {
+            this.priority = priority;
+            this.blocking = blocking;
+            this.eventId = eventId;
+            this.cueId = cueId;
+            this.start = start;
+            this.end = end;
+            this.proposedStart = proposedStart;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public boolean isBlocking() {
+            return blocking;
+        }
+
+        public int getEventId() {
+            return eventId;
+        }
+
+        public int getCueId() {
+            return cueId;
+        }
+
+        @JsonIgnore
+        public LocalDateTime getStart() {
+            return start;
+        }
+
+        @JsonIgnore
+        public LocalDateTime getEnd() {
+            return end;
+        }
+
+        // The occurrence of the proposed event that this one clashes with
+        @JsonIgnore
+        public LocalDateTime getProposedStart() {
+            return proposedStart;
+        }
+
+        @JsonProperty("start")
+        String getStartString() {
+            return start.toString();
+        }
+
+        @JsonProperty("end")
+        String getEndString() {
+            return end.toString();
+        }
+
+        @JsonProperty("proposedStart")
+        String getProposedStartString() {
+            return proposedStart.toString();
+        }
+
+    }
+
+
+    ///////////////
+    // Free Slot //
+    ///////////////
+
+    public static class FreeSlot {
+
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        FreeSlot(LocalDateTime start, LocalDateTime end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @JsonIgnore
+        public LocalDateTime getStart() {
+            return start;
+        }
+
+        @JsonIgnore
+        public LocalDateTime getEnd() {
+            return end;
+        }
+
+        @JsonProperty("start")
+        String getStartString() {
+            return start.toString();
+        }
+
+        @JsonProperty("end")
+        String getEndString() {
+            return end.toString();
+        }
+
+    }
+
+}
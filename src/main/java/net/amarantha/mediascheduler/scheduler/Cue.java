@@ -3,17 +3,30 @@ package net.amarantha.mediascheduler.scheduler;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.HashSet;
+import java.util.Set;
+
 public class Cue {
 
     private int id;
     private int number;
     private String name;
 
+    private Set<String> outputs = new HashSet<>();
+
+    public Cue(int id, int number, String name) {
+        this(id, number, name, null);
+    }
+
     @JsonCreator
-    public Cue(@JsonProperty("id") int id, @JsonProperty("number") int number, @JsonProperty("name") String name) {
+    public Cue(@JsonProperty("id") int id, @JsonProperty("number") int number, @JsonProperty("name") String name,
+               @JsonProperty("outputs") Set<String> outputs) {
         this.id = id;
         this.number = number;
         this.name = name;
+        if ( outputs!=null ) {
+            this.outputs.addAll(outputs);
+        }
     }
 
     public int getId() {
@@ -32,6 +45,18 @@ public class Cue {
         return name;
     }
 
+    public Set<String> getOutputs() {
+        return outputs;
+    }
+
+    public void setOutputs(Set<String> outputs) {
+        this.outputs = outputs;
+    }
+
+    public boolean isRoutedTo(String output) {
+        return outputs.isEmpty() || outputs.contains(output);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,152 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.util.*;
+
+// Cues by id and name, with lower-cased names indexed for prefix and trigram substring search
+class CueCatalogue {
+
+    private final TreeMap<Integer, Cue> byId = new TreeMap<>();
+    private final Map<String, Cue> byName = new HashMap<>();
+    private final TreeMap<String, Set<Integer>> byLowerName = new TreeMap<>();
+    private final Map<String, Set<Integer>> byTrigram = new HashMap<>();
+
+    // False if the id or the name is taken
+    synchronized boolean add(Cue cue) {
+        if ( byId.containsKey(cue.getId()) || byName.containsKey(cue.getName()) ) {
+            return false;
+        }
+        byId.put(cue.getId(), cue);
+        if ( cue.getName()!=null ) {
+            byName.put(cue.getName(), cue);
+            String lowerName = cue.getName().toLowerCase(Locale.ROOT);
+            byLowerName.computeIfAbsent(lowerName, n -> new HashSet<>()).add(cue.getId());
+            for ( String trigram : trigrams(lowerName) ) {
+                byTrigram.computeIfAbsent(trigram, t -> new HashSet<>()).add(cue.getId());
+            }
+        }
+        return true;
+    }
+
+    synchronized Cue remove(int id) {
+        Cue cue = byId.remove(id);
+        if ( cue!=null && cue.getName()!=null ) {
+            byName.remove(cue.getName());
+            String lowerName = cue.getName().toLowerCase(Locale.ROOT);
+            removePosting(byLowerName, lowerName, id);
+            for ( String trigram : trigrams(lowerName) ) {
+                removePosting(byTrigram, trigram, id);
+            }
+        }
+        return cue;
+    }
+
+    synchronized void clear() {
+        byId.clear();
+        byName.clear();
+        byLowerName.clear();
+        byTrigram.clear();
+    }
+
+    synchronized Cue get(long id) {
+        return id==(int) id ? byId.get((int) id) : null;
+    }
+
+    synchronized Cue get(String name) {
+        return byName.get(name);
+    }
+
+    synchronized int size() {
+        return byId.size();
+    }
+
+    // A copy in id order
+    synchronized Set<Cue> getAll() {
+        return new LinkedHashSet<>(byId.values());
+    }
+
+
+    ////////////
+    // Search //
+    ////////////
+
+    // Cues whose names contain the query, ignoring case: those starting with it first in name
+    // order, then the rest in id order. No query pages through every cue in id order.
+    synchronized List<Cue> search(String query, int offset, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        if ( query==null || query.isEmpty() ) {
+            ids.addAll(byId.keySet());
+        } else {
+            String lowerQuery = query.toLowerCase(Locale.ROOT);
+            Set<Integer> prefixed = new LinkedHashSet<>();
+            for ( Set<Integer> posting : byLowerName.subMap(lowerQuery, true, lowerQuery + Character.MAX_VALUE, true).values() ) {
+                prefixed.addAll(new TreeSet<>(posting));
+            }
+            ids.addAll(prefixed);
+            for ( Integer id : substringCandidates(lowerQuery) ) {
+                if ( !prefixed.contains(id) && byId.get(id).getName().toLowerCase(Locale.ROOT).contains(lowerQuery) ) {
+                    ids.add(id);
+                }
+            }
+        }
+        List<Cue> result = new ArrayList<>();
+        for ( int i = Math.max(offset, 0); i < ids.size() && result.size() < limit; i++ ) {
+            result.add(byId.get(ids.get(i)));
+        }
+        return result;
+    }
+
+    // Ids in order whose names hold every trigram of the query; too short a query to have any
+    // falls back to every named cue
+    private Collection<Integer> substringCandidates(String lowerQuery) {
+        List<String> trigrams = trigrams(lowerQuery);
+        if ( trigrams.isEmpty() ) {
+            List<Integer> result = new ArrayList<>();
+            for ( Cue cue : byId.values() ) {
+                if ( cue.getName()!=null ) {
+                    result.add(cue.getId());
+                }
+            }
+            return result;
+        }
+        Set<Integer> smallest = null;
+        for ( String trigram : trigrams ) {
+            Set<Integer> posting = byTrigram.get(trigram);
+            if ( posting==null ) {
+                return Collections.emptyList();
+            }
+            if ( smallest==null || posting.size() < smallest.size() ) {
+                smallest = posting;
+            }
+        }
+        TreeSet<Integer> result = new TreeSet<>();
+        for ( Integer id : smallest ) {
+            boolean all = true;
+            for ( String trigram : trigrams ) {
+                all &= byTrigram.get(trigram).contains(id);
+            }
+            if ( all ) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> trigrams(String text) {
+        List<String> result = new ArrayList<>();
+        for ( int i = 0; i + 3 <= text.length(); i++ ) {
+            result.add(text.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    private static void removePosting(Map<String, Set<Integer>> index, String key, int id) {
+        Set<Integer> posting = index.get(key);
+        if ( posting!=null ) {
+            posting.remove(id);
+            if ( posting.isEmpty() ) {
+                index.remove(key);
+            }
+        }
+    }
+
+}
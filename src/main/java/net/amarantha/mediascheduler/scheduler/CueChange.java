@@ -0,0 +1,34 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// One line of the cue journal: a cue added to or removed from the catalogue
+public class CueChange {
+
+    private final boolean removed;
+    private final Cue cue;
+
+    @JsonCreator
+    public CueChange(@JsonProperty("removed") boolean removed, @JsonProperty("cue") Cue cue) {
+        this.removed = removed;
+        this.cue = cue;
+    }
+
+    public static CueChange added(Cue cue) {
+        return new CueChange(false, cue);
+    }
+
+    public static CueChange removed(Cue cue) {
+        return new CueChange(true, cue);
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    public Cue getCue() {
+        return cue;
+    }
+
+}
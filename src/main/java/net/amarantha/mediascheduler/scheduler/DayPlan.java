@@ -0,0 +1,127 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+// One zone's transitions for one local day, resolved to epoch instants. Local times that fall
+// in a DST gap are shifted forward by the gap; times in an overlap use the earlier offset.
+// The day is cut into segments at every start and end, each holding its active events from
+// the highest layer down, so lookups cost a binary search however many layers exist.
+class DayPlan {
+
+    private static final MediaEvent[] NONE = new MediaEvent[0];
+    private static final long[] NO_STARTS = new long[0];
+
+    final LocalDate date;
+    final long dayStart;
+    final long dayEnd;
+
+    private final long[] bounds;
+    private final MediaEvent[][] active;
+    private final long[][] activeStarts;
+
+    private DayPlan(LocalDate date, long dayStart, long dayEnd, long[] bounds, MediaEvent[][] active, long[][] activeStarts) {
+        this.date = date;
+        this.dayStart = dayStart;
+        this.dayEnd = dayEnd;
+        this.bounds = bounds;
+        this.active = active;
+        this.activeStarts = activeStarts;
+    }
+
+    // Schedules must iterate from the highest priority down
+    static DayPlan build(Map<Integer, Schedule> schedules, LocalDate date, ZoneId timeZone) {
+        long dayStart = date.atStartOfDay(timeZone).toInstant().toEpochMilli();
+        long dayEnd = date.plusDays(1).atStartOfDay(timeZone).toInstant().toEpochMilli();
+        List<MediaEvent> events = new ArrayList<>();
+        List<long[]> intervals = new ArrayList<>();
+        TreeSet<Long> boundSet = new TreeSet<>();
+        List<MediaEvent> dayEvents = new ArrayList<>();
+        for ( Schedule schedule : schedules.values() ) {
+            // Include events from earlier days that are still running into this one
+            for ( int daysBack = 0; daysBack <= schedule.getMaxSpanDays(); daysBack++ ) {
+                LocalDate from = date.minusDays(daysBack);
+                dayEvents.clear();
+                schedule.getEvents(from, dayEvents);
+                for ( MediaEvent event : dayEvents ) {
+                    long start = toInstant(from, event.getStartTime(), timeZone);
+                    long end = toInstant(from.plusDays(event.getSpanDays()), event.getEndTime(), timeZone);
+                    if ( end > dayStart && start < dayEnd ) {
+                        events.add(event);
+                        intervals.add(new long[] { start, end });
+                        boundSet.add(start);
+                        boundSet.add(end);
+                    }
+                }
+            }
+        }
+        long[] bounds = new long[boundSet.size()];
+        int b = 0;
+        for ( long bound : boundSet ) {
+            bounds[b++] = bound;
+        }
+        MediaEvent[][] active = new MediaEvent[Math.max(bounds.length - 1, 0)][];
+        long[][] activeStarts = new long[active.length][];
+        List<Integer> segment = new ArrayList<>();
+        for ( int i = 0; i < active.length; i++ ) {
+            segment.clear();
+            for ( int e = 0; e < events.size(); e++ ) {
+                long[] interval = intervals.get(e);
+                if ( interval[0] <= bounds[i] && interval[1] > bounds[i] ) {
+                    segment.add(e);
+                }
+            }
+            active[i] = ( segment.isEmpty() ? NONE : new MediaEvent[segment.size()] );
+            activeStarts[i] = ( segment.isEmpty() ? NO_STARTS : new long[segment.size()] );
+            for ( int j = 0; j < segment.size(); j++ ) {
+                active[i][j] = events.get(segment.get(j));
+                activeStarts[i][j] = intervals.get(segment.get(j))[0];
+            }
+        }
+        return new DayPlan(date, dayStart, dayEnd, bounds, active, activeStarts);
+    }
+
+    static long toInstant(LocalDate date, LocalTime time, ZoneId timeZone) {
+        return ZonedDateTime.of(date, time, timeZone).toInstant().toEpochMilli();
+    }
+
+    boolean covers(long epochMillis) {
+        return epochMillis >= dayStart && epochMillis < dayEnd;
+    }
+
+    MediaEvent getEvent(long epochMillis) {
+        MediaEvent[] events = getSegment(epochMillis);
+        return events.length==0 ? null : events[0];
+    }
+
+    List<MediaEvent> getActiveEvents(long epochMillis) {
+        return Arrays.asList(getSegment(epochMillis));
+    }
+
+    // Start instants of the active events, in the same order
+    long[] getActiveStarts(long epochMillis) {
+        int segment = segmentOf(epochMillis);
+        return segment<0 ? NO_STARTS : activeStarts[segment];
+    }
+
+    private MediaEvent[] getSegment(long epochMillis) {
+        int segment = segmentOf(epochMillis);
+        return segment<0 ? NONE : active[segment];
+    }
+
+    private int segmentOf(long epochMillis) {
+        int pos = Arrays.binarySearch(bounds, epochMillis);
+        int segment = ( pos>=0 ? pos : -pos - 2 );
+        return ( segment<0 || segment>=active.length ) ? -1 : segment;
+    }
+
+    long getNextTransition(long epochMillis) {
+        int pos = Arrays.binarySearch(bounds, epochMillis);
+        int next = ( pos>=0 ? pos + 1 : -pos - 1 );
+        return ( next<bounds.length && bounds[next]<dayEnd ) ? bounds[next] : dayEnd;
+    }
+
+}
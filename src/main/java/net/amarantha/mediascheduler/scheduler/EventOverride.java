@@ -0,0 +1,112 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EventOverride {
+
+    private final LocalDate date;
+    private final boolean cancelled;
+    private final Integer cueId;
+    private final LocalTime startTime;
+    private final LocalTime endTime;
+    private final Integer spanDays;
+
+    @JsonCreator
+    public EventOverride(
+            @JsonProperty("date") String dateStr,
+            @JsonProperty("cancelled") boolean cancelled,
+            @JsonProperty("cueId") Integer cueId,
+            @JsonProperty("startTime") String startTimeStr,
+            @JsonProperty("endTime") String endTimeStr,
+            @JsonProperty("spanDays") Integer spanDays) throws IllegalArgumentException {
+        if ( dateStr==null ) {
+            throw new IllegalArgumentException("Override must have a date");
+        }
+        date = LocalDate.parse(dateStr);
+        this.cancelled = cancelled;
+        this.cueId = cueId;
+        startTime = ( startTimeStr==null ? null : LocalTime.parse(startTimeStr) );
+        endTime = ( endTimeStr==null ? null : LocalTime.parse(endTimeStr) );
+        this.spanDays = spanDays;
+    }
+
+    public static EventOverride cancel(String date) {
+        return new EventOverride(date, true, null, null, null, null);
+    }
+
+    public static EventOverride replace(String date, Integer cueId, String startTime, String endTime) {
+        return new EventOverride(date, false, cueId, startTime, endTime, null);
+    }
+
+    // The stand-in for one occurrence of a series, sharing its id
+    MediaEvent apply(MediaEvent series) {
+        if ( cancelled ) {
+            return null;
+        }
+        LocalTime start = ( startTime==null ? series.getStartTime() : startTime );
+        LocalTime end = ( endTime==null ? series.getEndTime() : endTime );
+        Integer span = spanDays;
+        if ( span==null && startTime==null && endTime==null ) {
+            span = series.getSpanDays();
+        }
+        // New times only run overnight when spanDays says so, bar an end of midnight
+        if ( span==null && end.isBefore(start) && !end.equals(LocalTime.MIDNIGHT) ) {
+            throw new IllegalArgumentException("Override on " + date + " ends before it starts");
+        }
+        MediaEvent replacement = new MediaEvent(series.getId(),
+                cueId==null ? series.getCueId() : cueId,
+                date.toString(),
+                start.toString(),
+                end.toString(),
+                span);
+        if ( cueId==null ) {
+            replacement.setPlaylist(series.getPlaylist());
+        }
+        return replacement;
+    }
+
+
+    /////////////
+    // Getters //
+    /////////////
+
+    @JsonIgnore
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public Integer getCueId() {
+        return cueId;
+    }
+
+    public Integer getSpanDays() {
+        return spanDays;
+    }
+
+    @JsonProperty("date")
+    String getDateString() {
+        return date.toString();
+    }
+
+    @JsonProperty("startTime")
+    String getStartTimeString() {
+        return startTime==null ? null : startTime.toString();
+    }
+
+    @JsonProperty("endTime")
+    String getEndTimeString() {
+        return endTime==null ? null : endTime.toString();
+    }
+
+}
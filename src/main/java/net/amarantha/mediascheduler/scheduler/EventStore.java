@@ -0,0 +1,230 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static net.amarantha.mediascheduler.scheduler.MediaEvent.SECONDS_PER_DAY;
+
+// Events as rows of parallel primitive arrays. Plain one-off and weekly events are held only as
+// primitives; anything with a custom rule, count, playlist or overrides keeps its object too.
+class EventStore {
+
+    static final int NO_END = Integer.MAX_VALUE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] cueIds = new int[INITIAL_CAPACITY];
+    private int[] startDays = new int[INITIAL_CAPACITY];     // Epoch day of the start date
+    private int[] lastDays = new int[INITIAL_CAPACITY];      // Epoch day of the last date, or NO_END
+    private int[] endDays = new int[INITIAL_CAPACITY];       // Epoch day of the end date, or NO_END
+    private int[] startSeconds = new int[INITIAL_CAPACITY];  // From midnight on the start day
+    private int[] endSeconds = new int[INITIAL_CAPACITY];    // From midnight on the start day, so past a day if it spans
+    private byte[] repeatMasks = new byte[INITIAL_CAPACITY]; // Weekly repeat days, Monday as bit 0
+    private boolean[] live = new boolean[INITIAL_CAPACITY];
+    private MediaEvent[] objects = new MediaEvent[INITIAL_CAPACITY];
+
+    private int highWater = 0;
+    private int size = 0;
+
+    private final IdIndex rowsById = new IdIndex();
+
+    // Rows freed by removals, reused before the arrays grow
+    private int[] free = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+
+    int add(MediaEvent event) {
+        int row = ( freeCount>0 ? free[--freeCount] : highWater++ );
+        if ( row>=ids.length ) {
+            grow(ids.length * 2);
+        }
+        ids[row] = event.getId();
+        cueIds[row] = event.getCueId();
+        startDays[row] = (int) event.getStartDate().toEpochDay();
+        lastDays[row] = epochDay(event.getLastDate());
+        endDays[row] = epochDay(event.getEndDate());
+        startSeconds[row] = event.getStartOffset();
+        endSeconds[row] = event.getEndOffset();
+        repeatMasks[row] = mask(event.getRepeatOn());
+        objects[row] = ( isPlain(event) ? null : event );
+        live[row] = true;
+        rowsById.put(ids[row], row);
+        size++;
+        return row;
+    }
+
+    void remove(int row) {
+        rowsById.remove(ids[row]);
+        live[row] = false;
+        objects[row] = null;
+        if ( freeCount==free.length ) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = row;
+        size--;
+    }
+
+    // Keeps this event as the row's object from now on, so changes made to it are held
+    void attach(int row, MediaEvent event) {
+        objects[row] = event;
+    }
+
+    private static boolean isPlain(MediaEvent event) {
+        return event.getRecurrence()==null && event.getOccurrences()==null
+                && event.getPlaylist()==null && !event.hasOverrides();
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        cueIds = Arrays.copyOf(cueIds, capacity);
+        startDays = Arrays.copyOf(startDays, capacity);
+        lastDays = Arrays.copyOf(lastDays, capacity);
+        endDays = Arrays.copyOf(endDays, capacity);
+        startSeconds = Arrays.copyOf(startSeconds, capacity);
+        endSeconds = Arrays.copyOf(endSeconds, capacity);
+        repeatMasks = Arrays.copyOf(repeatMasks, capacity);
+        live = Arrays.copyOf(live, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+    }
+
+
+    ///////////
+    // Views //
+    ///////////
+
+    MediaEvent get(int row) {
+        MediaEvent object = objects[row];
+        if ( object!=null ) {
+            return object;
+        }
+        return new MediaEvent(ids[row], cueIds[row], LocalDate.ofEpochDay(startDays[row]),
+                LocalTime.ofSecondOfDay(startSeconds[row]), LocalTime.ofSecondOfDay(endSeconds[row] % SECONDS_PER_DAY),
+                endSeconds[row] / SECONDS_PER_DAY, days(repeatMasks[row]),
+                endDays[row]==NO_END ? null : LocalDate.ofEpochDay(endDays[row]));
+    }
+
+    // Null for a packed row
+    MediaEvent getObject(int row) {
+        return objects[row];
+    }
+
+    // The row holding this id, or -1
+    int find(long id) {
+        return rowsById.get(id);
+    }
+
+
+    /////////////
+    // Columns //
+    /////////////
+
+    int getHighWater() {
+        return highWater;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isLive(int row) {
+        return live[row];
+    }
+
+    int getId(int row) {
+        return ids[row];
+    }
+
+    int getCueId(int row) {
+        return cueIds[row];
+    }
+
+    long getStartDay(int row) {
+        return startDays[row];
+    }
+
+    long getLastDay(int row) {
+        return lastDays[row];
+    }
+
+    int getStartSecond(int row) {
+        return startSeconds[row];
+    }
+
+    int getEndSecond(int row) {
+        return endSeconds[row];
+    }
+
+    // Orders rows as MediaEvent.compareTo does: by start date, then start time
+    long getStartKey(int row) {
+        return (long) startDays[row] * SECONDS_PER_DAY + startSeconds[row];
+    }
+
+    int getSpanDays(int row) {
+        return endSeconds[row] / SECONDS_PER_DAY;
+    }
+
+    boolean isRepeating(int row) {
+        MediaEvent object = objects[row];
+        return object!=null ? object.isRepeating() : repeatMasks[row]!=0;
+    }
+
+    // Whether a repeating row's rule falls on the date, before any overrides
+    boolean repeatsOn(int row, LocalDate date) {
+        MediaEvent object = objects[row];
+        if ( object!=null ) {
+            return object.getRule().occursOn(date);
+        }
+        long epochDay = date.toEpochDay();
+        return epochDay>=startDays[row] && epochDay<=lastDays[row]
+                && (repeatMasks[row] & bit(date.getDayOfWeek()))!=0;
+    }
+
+    boolean isExpired(int row, LocalDate today) {
+        MediaEvent object = objects[row];
+        if ( object!=null ) {
+            return object.isExpired(today);
+        }
+        return lastDays[row]!=NO_END && lastDays[row] + getSpanDays(row) < today.toEpochDay();
+    }
+
+    boolean usesCue(int row, int cueId) {
+        MediaEvent object = objects[row];
+        return object!=null ? object.getCueIds().contains(cueId) : cueIds[row]==cueId;
+    }
+
+
+    /////////////
+    // Packing //
+    /////////////
+
+    static int epochDay(LocalDate date) {
+        return date==null ? NO_END : (int) date.toEpochDay();
+    }
+
+    private static byte mask(Set<DayOfWeek> days) {
+        int result = 0;
+        for ( DayOfWeek dow : days ) {
+            result |= bit(dow);
+        }
+        return (byte) result;
+    }
+
+    private static Set<DayOfWeek> days(byte mask) {
+        Set<DayOfWeek> result = new HashSet<>();
+        for ( DayOfWeek dow : DayOfWeek.values() ) {
+            if ( (mask & bit(dow))!=0 ) {
+                result.add(dow);
+            }
+        }
+        return result;
+    }
+
+    private static int bit(DayOfWeek dow) {
+        return 1 << dow.ordinal();
+    }
+
+}
@@ -0,0 +1,94 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.util.Arrays;
+
+// Event id to EventStore row, open-addressed with linear probing so nothing is boxed. Removal
+// shifts later entries of the run back rather than leaving tombstones.
+class IdIndex {
+
+    static final int NONE = -1;
+
+    private int[] ids = new int[16];
+    private int[] rows = filled(16);
+    private int size = 0;
+
+    int get(long id) {
+        if ( id!=(int) id ) {
+            return NONE;
+        }
+        int mask = rows.length - 1;
+        for ( int i = slot((int) id, mask); rows[i]!=NONE; i = (i + 1) & mask ) {
+            if ( ids[i]==id ) {
+                return rows[i];
+            }
+        }
+        return NONE;
+    }
+
+    void put(int id, int row) {
+        if ( (size + 1) * 2 > rows.length ) {
+            resize(rows.length * 2);
+        }
+        int mask = rows.length - 1;
+        int i = slot(id, mask);
+        while ( rows[i]!=NONE ) {
+            if ( ids[i]==id ) {
+                rows[i] = row;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        ids[i] = id;
+        rows[i] = row;
+        size++;
+    }
+
+    void remove(int id) {
+        int mask = rows.length - 1;
+        int i = slot(id, mask);
+        while ( rows[i]!=NONE && ids[i]!=id ) {
+            i = (i + 1) & mask;
+        }
+        if ( rows[i]==NONE ) {
+            return;
+        }
+        rows[i] = NONE;
+        size--;
+        // Pull back any later entry whose home slot is no longer reachable past the gap
+        for ( int j = (i + 1) & mask; rows[j]!=NONE; j = (j + 1) & mask ) {
+            int home = slot(ids[j], mask);
+            boolean movable = ( i<=j ) ? ( home<=i || home>j ) : ( home<=i && home>j );
+            if ( movable ) {
+                ids[i] = ids[j];
+                rows[i] = rows[j];
+                rows[j] = NONE;
+                i = j;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        int[] oldIds = ids;
+        int[] oldRows = rows;
+        ids = new int[capacity];
+        rows = filled(capacity);
+        size = 0;
+        for ( int i = 0; i < oldRows.length; i++ ) {
+            if ( oldRows[i]!=NONE ) {
+                put(oldIds[i], oldRows[i]);
+            }
+        }
+    }
+
+    private static int slot(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int[] filled(int capacity) {
+        int[] result = new int[capacity];
+        Arrays.fill(result, NONE);
+        return result;
+    }
+
+}
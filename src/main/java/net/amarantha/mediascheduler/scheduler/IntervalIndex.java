@@ -0,0 +1,93 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.util.Arrays;
+
+// One layer's occurrences as intervals in local epoch seconds, sorted by start, with a
+// running maximum of the ends so a query can binary search even where intervals overlap
+class IntervalIndex {
+
+    private long[] starts = new long[16];
+    private long[] ends = new long[16];
+    private long[] reach = new long[16];  // Latest end of any interval up to and including this one
+    private int[] eventIds = new int[16];
+    private int[] cueIds = new int[16];
+    private int size = 0;
+
+    void add(long start, long end, int eventId, int cueId) {
+        if ( size==starts.length ) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            reach = Arrays.copyOf(reach, size * 2);
+            eventIds = Arrays.copyOf(eventIds, size * 2);
+            cueIds = Arrays.copyOf(cueIds, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        eventIds[size] = eventId;
+        cueIds[size] = cueId;
+        size++;
+    }
+
+    // Intervals arrive a day at a time, so only those within a day are out of order and an
+    // insertion sort does little more than one pass
+    void sort() {
+        for ( int i = 1; i < size; i++ ) {
+            long start = starts[i];
+            long end = ends[i];
+            int eventId = eventIds[i];
+            int cueId = cueIds[i];
+            int j = i - 1;
+            while ( j>=0 && starts[j]>start ) {
+                starts[j + 1] = starts[j];
+                ends[j + 1] = ends[j];
+                eventIds[j + 1] = eventIds[j];
+                cueIds[j + 1] = cueIds[j];
+                j--;
+            }
+            starts[j + 1] = start;
+            ends[j + 1] = end;
+            eventIds[j + 1] = eventId;
+            cueIds[j + 1] = cueId;
+        }
+        for ( int i = 0; i < size; i++ ) {
+            reach[i] = ( i==0 ? ends[i] : Math.max(reach[i - 1], ends[i]) );
+        }
+    }
+
+    // Position of the first interval that could still be running after the given second;
+    // overlaps with [from, to) are found by reading on from here while starts are before to
+    int firstReaching(long from) {
+        int low = 0;
+        int high = size;
+        while ( low<high ) {
+            int mid = (low + high) >>> 1;
+            if ( reach[mid] <= from ) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getStart(int i) {
+        return starts[i];
+    }
+
+    long getEnd(int i) {
+        return ends[i];
+    }
+
+    int getEventId(int i) {
+        return eventIds[i];
+    }
+
+    int getCueId(int i) {
+        return cueIds[i];
+    }
+
+}
@@ -1,6 +1,7 @@
 package net.amarantha.mediascheduler.scheduler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import net.amarantha.mediascheduler.audit.AuditEntry;
 
 import java.io.IOException;
 import java.time.LocalDate;
@@ -14,21 +15,51 @@ public interface JsonEncoder {
 
     void encodeAllSchedulesToFile(String filename);
 
-    Map<Integer, Schedule> decodeSchedulesFromFile(String filename);
+    Map<String, Zone> decodeSchedulesFromFile(String filename);
+
+    void appendEventsToFile(String filename, String zone, int priority, List<MediaEvent> events);
 
     String encodeSchedule(int priority, LocalDate date);
 
+    String encodeSchedule(String zone, int priority, LocalDate date);
+
+    String encodeZones();
+
+    void encodeZonesToFile(String filename);
+
+    String encodeZone(Zone zone);
+
+    Zone decodeZone(String json);
+
+    List<Zone> decodeZonesFromFile(String filename);
+
     String encodeCues();
 
     void encodeCuesToFile(String filename);
 
+    String encodeCue(Cue cue);
+
     Cue decodeCue(String json);
 
     Set<Cue> decodeCuesFromFile(String filename);
 
+    String encodeCues(List<Cue> cues);
+
+    void appendCueChangeToFile(String filename, CueChange change);
+
+    List<CueChange> decodeCueChangesFromFile(String filename);
+
+    void truncateFile(String filename);
+
     String encodeMediaEvent(MediaEvent event) throws JsonProcessingException;
 
     MediaEvent decodeMediaEvent(String json) throws IOException;
 
+    EventOverride decodeEventOverride(String json) throws IOException;
+
+    String encodeAuditEntries(List<AuditEntry> entries);
+
+    String encodeConflictReport(ConflictReport report);
+
     void saveSchedules();
 }
@@ -9,10 +9,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.audit.AuditEntry;
 import net.amarantha.mediascheduler.exception.ScheduleConflictException;
+import net.amarantha.mediascheduler.metrics.Metrics;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.Map.Entry;
@@ -21,25 +27,32 @@ import java.util.Map.Entry;
 public class JsonEncoderImpl implements JsonEncoder {
 
     @Inject private Scheduler scheduler;
+    @Inject private Metrics metrics;
+    @Inject private AtomicFiles files;
 
     public JsonEncoderImpl() {}
 
     private static class ScheduleWrapper {
+        public final String zone;
         public final int priority;
         public final List<MediaEvent> events;
         @JsonCreator
-        private ScheduleWrapper(@JsonProperty("priority") int priority, @JsonProperty("events") List<MediaEvent> events) {
+        private ScheduleWrapper(@JsonProperty("zone") String zone, @JsonProperty("priority") int priority, @JsonProperty("events") List<MediaEvent> events) {
+            this.zone = ( zone==null ? Scheduler.DEFAULT_ZONE : zone );
             this.priority = priority;
             this.events = events;
         }
     }
 
     private List<ScheduleWrapper> buildWrappers() {
-        Map<Integer, Schedule> schedules = scheduler.getSchedules();
         List<ScheduleWrapper> wrappers = new LinkedList<>();
-        for ( Entry<Integer, Schedule> entry : schedules.entrySet() ) {
-            List<MediaEvent> allEvents = entry.getValue().getUniqueEvents();
-            wrappers.add(new ScheduleWrapper(entry.getKey(), allEvents));
+        for ( Zone zone : scheduler.getZones() ) {
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    List<MediaEvent> allEvents = entry.getValue().getUniqueEvents();
+                    wrappers.add(new ScheduleWrapper(zone.getName(), entry.getKey(), allEvents));
+                }
+            }
         }
         return wrappers;
     }
@@ -57,19 +70,23 @@ public class JsonEncoderImpl implements JsonEncoder {
     @Override
     public void encodeAllSchedulesToFile(String filename) {
         try {
-            createMapper().writeValue(new File(filename), buildWrappers());
+            writeToFile(filename, buildWrappers());
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
     @Override
-    public Map<Integer, Schedule> decodeSchedulesFromFile(String filename) {
-        Map<Integer, Schedule> result = new HashMap<>();
+    public Map<String, Zone> decodeSchedulesFromFile(String filename) {
+        Map<String, Zone> result = new HashMap<>();
         try {
-            List<ScheduleWrapper> wrappers = createMapper().readValue(new File(filename), new TypeReference<List<ScheduleWrapper>>(){});
+            List<ScheduleWrapper> wrappers = readFromFile(filename, new TypeReference<List<ScheduleWrapper>>(){});
+            if ( wrappers==null ) {
+                return result;
+            }
             for ( ScheduleWrapper wrapper : wrappers ) {
-                Schedule schedule = new Schedule();
+                Zone zone = result.computeIfAbsent(wrapper.zone, Zone::new);
+                Schedule schedule = zone.getOrCreateSchedule(wrapper.priority);
                 for ( MediaEvent event : wrapper.events ) {
                     try {
                         schedule.addEvent(event);
@@ -77,18 +94,27 @@ public class JsonEncoderImpl implements JsonEncoder {
                         e.printStackTrace();
                     }
                 }
-                result.put(wrapper.priority, schedule);
             }
         } catch (IOException e) {
             e.printStackTrace();
-            encodeAllSchedulesToFile(filename);
         }
         return result;
     }
 
+    @Override
+    public void appendEventsToFile(String filename, String zone, int priority, List<MediaEvent> events) {
+        appendToFile(filename, new ScheduleWrapper(zone, priority, events));
+    }
+
     @Override
     public String encodeSchedule(int priority, LocalDate date) {
-        Schedule schedule = scheduler.getSchedules().get(priority);
+        return encodeSchedule(Scheduler.DEFAULT_ZONE, priority, date);
+    }
+
+    @Override
+    public String encodeSchedule(String zoneName, int priority, LocalDate date) {
+        Zone zone = scheduler.getZone(zoneName);
+        Schedule schedule = ( zone==null ? null : zone.getSchedules().get(priority) );
         if ( schedule!=null ) {
             List<MediaEvent> events = schedule.getEvents(date);
             try {
@@ -100,6 +126,59 @@ public class JsonEncoderImpl implements JsonEncoder {
         return null;
     }
 
+    @Override
+    public String encodeZones() {
+        try {
+            return createMapper().writeValueAsString(scheduler.getZones());
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public void encodeZonesToFile(String filename) {
+        try {
+            writeToFile(filename, scheduler.getZones());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String encodeZone(Zone zone) {
+        try {
+            return createMapper().writeValueAsString(zone);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Zone decodeZone(String json) {
+        try {
+            return createMapper().readValue(json, Zone.class);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public List<Zone> decodeZonesFromFile(String filename) {
+        List<Zone> result = new ArrayList<>();
+        try {
+            List<Zone> zones = readFromFile(filename, new TypeReference<List<Zone>>(){});
+            if ( zones!=null ) {
+                result.addAll(zones);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
     @Override
     public String encodeCues() {
         try {
@@ -113,10 +192,20 @@ public class JsonEncoderImpl implements JsonEncoder {
     @Override
     public void encodeCuesToFile(String filename) {
         try {
-            createMapper().writeValue(new File(filename), scheduler.getCues());
+            writeToFile(filename, scheduler.getCues());
         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String encodeCue(Cue cue) {
+        try {
+            return createMapper().writeValueAsString(cue);
+        } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
+        return null;
     }
 
     @Override
@@ -137,7 +226,7 @@ public class JsonEncoderImpl implements JsonEncoder {
     public Set<Cue> decodeCuesFromFile(String filename) {
         Set<Cue> result = new HashSet<>();
         try {
-            List<Cue> cues = createMapper().readValue(new File(filename), new TypeReference<List<Cue>>(){});
+            List<Cue> cues = readFromFile(filename, new TypeReference<List<Cue>>(){});
             if ( cues!=null ) {
                 for (Cue cue : cues) {
                     if (cue.getId() == -1) {
@@ -148,11 +237,61 @@ public class JsonEncoderImpl implements JsonEncoder {
             }
         } catch (IOException e) {
             e.printStackTrace();
-            encodeCuesToFile(filename);
         }
         return result;
     }
 
+    @Override
+    public String encodeCues(List<Cue> cues) {
+        try {
+            return createMapper().writeValueAsString(cues);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public void appendCueChangeToFile(String filename, CueChange change) {
+        appendToFile(filename, change);
+    }
+
+    // A line torn by a crash part way through appending is skipped
+    @Override
+    public List<CueChange> decodeCueChangesFromFile(String filename) {
+        List<CueChange> result = new ArrayList<>();
+        if ( !new File(filename).exists() ) {
+            return result;
+        }
+        ObjectMapper mapper = createMapper();
+        try {
+            long start = System.nanoTime();
+            for ( String line : Files.readAllLines(Paths.get(filename)) ) {
+                if ( line.trim().isEmpty() ) {
+                    continue;
+                }
+                try {
+                    result.add(mapper.readValue(line, CueChange.class));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            metrics.histogram(Metrics.JSON_DECODE_DURATION, "file", filename).recordSince(start);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    @Override
+    public void truncateFile(String filename) {
+        try {
+            Files.deleteIfExists(Paths.get(filename));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public String encodeMediaEvent(MediaEvent event) throws JsonProcessingException {
         return createMapper().writeValueAsString(event);
@@ -169,6 +308,65 @@ public class JsonEncoderImpl implements JsonEncoder {
         return event;
     }
 
+    @Override
+    public EventOverride decodeEventOverride(String json) throws IOException {
+        return createMapper().readValue(json, EventOverride.class);
+    }
+
+    @Override
+    public String encodeAuditEntries(List<AuditEntry> entries) {
+        try {
+            return createMapper().writeValueAsString(entries);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public String encodeConflictReport(ConflictReport report) {
+        try {
+            return createMapper().writeValueAsString(report);
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private void writeToFile(String filename, Object value) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = createMapper().writeValueAsBytes(value);
+        metrics.histogram(Metrics.JSON_ENCODE_DURATION, "file", filename).recordSince(start);
+        start = System.nanoTime();
+        files.write(filename, bytes);
+        metrics.histogram(Metrics.FILE_WRITE_DURATION, "file", filename).recordSince(start);
+    }
+
+    // One line per value, forced to disk as the fsync policy says
+    private void appendToFile(String filename, Object value) {
+        ObjectMapper mapper = createMapper();
+        mapper.disable(SerializationFeature.INDENT_OUTPUT);
+        try {
+            long start = System.nanoTime();
+            byte[] line = (mapper.writeValueAsString(value) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+            metrics.histogram(Metrics.JSON_ENCODE_DURATION, "file", filename).recordSince(start);
+            start = System.nanoTime();
+            files.append(filename, line);
+            metrics.histogram(Metrics.FILE_WRITE_DURATION, "file", filename).recordSince(start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Null if the file doesn't exist. A copy that fails to decode is passed over for a backup,
+    // and when no copy is intact the caller starts empty but nothing is written back over it.
+    private <T> T readFromFile(String filename, TypeReference<T> type) throws IOException {
+        long start = System.nanoTime();
+        T result = files.read(filename, bytes -> createMapper().readValue(bytes, type));
+        metrics.histogram(Metrics.JSON_DECODE_DURATION, "file", filename).recordSince(start);
+        return result;
+    }
+
     private ObjectMapper createMapper() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.enable(SerializationFeature.INDENT_OUTPUT);
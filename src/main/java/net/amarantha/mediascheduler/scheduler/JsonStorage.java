@@ -0,0 +1,208 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.utility.PropertyManager;
+
+import java.io.*;
+import java.util.*;
+
+// The original whole-file layout: schedules.json, zones.json and application.properties are
+// rewritten from memory on the commit after they change. Cues are the exception, each add or
+// removal appended to a journal that is folded back into cues.json once there are enough.
+@Singleton
+public class JsonStorage implements Storage {
+
+    @Inject private JsonEncoder json;
+
+    static final String SCHEDULES_FILENAME = "schedules.json";
+    static final String ZONES_FILENAME = "zones.json";
+    static final String CUES_FILENAME = "cues.json";
+    static final String CUES_JOURNAL = "cues.journal";
+
+    private static final int CUES_JOURNAL_LIMIT = 100;
+
+    // Events are staged under their zone's lock, which writing the schedules takes in turn, so
+    // these are flags rather than anything guarded by this object's lock. Each is cleared before
+    // its write so that a change made during the write is picked up by the next commit, and set
+    // again if the write fails.
+    private volatile boolean schedulesChanged = false;
+    private volatile boolean zonesChanged = false;
+    private boolean propertiesChanged = false;
+
+    private final List<CueChange> stagedCueChanges = new ArrayList<>();
+    private int journalledCueChanges = 0;
+    private boolean cueJournalAppended = false;
+
+    private Properties properties;
+
+    @Override
+    public void open() {}
+
+    // A journal left from an earlier run is only folded once this one has added to it, so
+    // a storage that was only read from writes nothing
+    @Override
+    public synchronized void close() {
+        commit();
+        if ( cueJournalAppended && journalledCueChanges>0 ) {
+            foldCueJournal();
+        }
+    }
+
+    // A write that fails is thrown on to the caller with its change still staged, so the same
+    // change is written by the next commit
+    @Override
+    public synchronized void commit() {
+        if ( !stagedCueChanges.isEmpty() ) {
+            int appended = 0;
+            try {
+                for ( CueChange change : stagedCueChanges ) {
+                    json.appendCueChangeToFile(CUES_JOURNAL, change);
+                    appended++;
+                }
+            } finally {
+                stagedCueChanges.subList(0, appended).clear();
+                journalledCueChanges += appended;
+                cueJournalAppended |= appended>0;
+            }
+        }
+        if ( cueJournalAppended && journalledCueChanges>=CUES_JOURNAL_LIMIT ) {
+            foldCueJournal();
+        }
+        if ( zonesChanged ) {
+            zonesChanged = false;
+            try {
+                json.encodeZonesToFile(ZONES_FILENAME);
+            } catch (RuntimeException e) {
+                zonesChanged = true;
+                throw e;
+            }
+        }
+        if ( schedulesChanged ) {
+            schedulesChanged = false;
+            try {
+                json.encodeAllSchedulesToFile(SCHEDULES_FILENAME);
+            } catch (RuntimeException e) {
+                schedulesChanged = true;
+                throw e;
+            }
+        }
+        if ( propertiesChanged ) {
+            saveProperties();
+            propertiesChanged = false;
+        }
+    }
+
+    ////////////
+    // Events //
+    ////////////
+
+    @Override
+    public Map<String, Zone> loadSchedules() {
+        return json.decodeSchedulesFromFile(SCHEDULES_FILENAME);
+    }
+
+    @Override
+    public void putEvent(String zone, int priority, MediaEvent event) {
+        schedulesChanged = true;
+    }
+
+    @Override
+    public void removeEvent(String zone, int priority, long eventId) {
+        schedulesChanged = true;
+    }
+
+
+    //////////
+    // Cues //
+    //////////
+
+    // Replaying is idempotent, so a journal that outlived its fold does no harm
+    @Override
+    public synchronized Set<Cue> loadCues() {
+        Map<Integer, Cue> result = new LinkedHashMap<>();
+        for ( Cue cue : json.decodeCuesFromFile(CUES_FILENAME) ) {
+            result.put(cue.getId(), cue);
+        }
+        List<CueChange> changes = json.decodeCueChangesFromFile(CUES_JOURNAL);
+        for ( CueChange change : changes ) {
+            result.remove(change.getCue().getId());
+            if ( !change.isRemoved() ) {
+                result.put(change.getCue().getId(), change.getCue());
+            }
+        }
+        journalledCueChanges = changes.size();
+        return new HashSet<>(result.values());
+    }
+
+    @Override
+    public synchronized void putCue(Cue cue) {
+        stagedCueChanges.add(CueChange.added(cue));
+    }
+
+    @Override
+    public synchronized void removeCue(Cue cue) {
+        stagedCueChanges.add(CueChange.removed(cue));
+    }
+
+    // Rewrites the whole catalogue, after which the journal is no longer needed
+    private void foldCueJournal() {
+        json.encodeCuesToFile(CUES_FILENAME);
+        json.truncateFile(CUES_JOURNAL);
+        journalledCueChanges = 0;
+    }
+
+
+    ///////////
+    // Zones //
+    ///////////
+
+    @Override
+    public List<Zone> loadZones() {
+        return json.decodeZonesFromFile(ZONES_FILENAME);
+    }
+
+    @Override
+    public void putZone(Zone zone) {
+        zonesChanged = true;
+    }
+
+
+    ////////////////
+    // Properties //
+    ////////////////
+
+    @Override
+    public synchronized Properties loadProperties() {
+        properties = new Properties();
+        File file = new File(PropertyManager.PROPS_FILENAME);
+        if ( file.exists() ) {
+            try ( InputStream in = new FileInputStream(file) ) {
+                properties.load(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Properties result = new Properties();
+        result.putAll(properties);
+        return result;
+    }
+
+    @Override
+    public synchronized void putProperty(String name, String value) {
+        if ( properties==null ) {
+            loadProperties();
+        }
+        properties.setProperty(name, value);
+        propertiesChanged = true;
+    }
+
+    private void saveProperties() {
+        try ( OutputStream out = new FileOutputStream(PropertyManager.PROPS_FILENAME) ) {
+            properties.store(out, "Application Properties");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -8,12 +8,12 @@ import com.google.inject.Inject;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 public class MediaEvent implements Comparable<MediaEvent> {
 
+    public static final int SECONDS_PER_DAY = 86400;
+
     private int id;
 
     private int cueId;
@@ -21,8 +21,20 @@ public class MediaEvent implements Comparable<MediaEvent> {
     private LocalDate startDate;
     private LocalTime startTime;
     private LocalTime endTime;
+    private int spanDays;
 
     private Set<DayOfWeek> repeatOn = new HashSet<>();
+    private LocalDate endDate;
+    private Integer occurrences;
+    private Recurrence recurrence;
+    private Recurrence rule;
+    private LocalDate lastDate;
+    private final Map<LocalDate, EventOverride> overrides = new HashMap<>();
+    private Playlist playlist;
+
+    public MediaEvent(int cueId, String startDateStr, String startTimeStr, String endTimeStr, DayOfWeek... repeats) throws IllegalArgumentException {
+        this(cueId, startDateStr, startTimeStr, endTimeStr, null, null, null, null, repeats);
+    }
 
     @JsonCreator
     public MediaEvent(
@@ -30,23 +42,124 @@ public class MediaEvent implements Comparable<MediaEvent> {
             @JsonProperty("startDate") String startDateStr,
             @JsonProperty("startTime") String startTimeStr,
             @JsonProperty("endTime") String endTimeStr,
+            @JsonProperty("spanDays") Integer spanDays,
+            @JsonProperty("endDate") String endDateStr,
+            @JsonProperty("occurrences") Integer occurrences,
+            @JsonProperty("recurrence") Recurrence recurrence,
             @JsonProperty("repeatOn") DayOfWeek... repeats) throws IllegalArgumentException {
-        this(Scheduler.nextEventId++, cueId, startDateStr, startTimeStr, endTimeStr, repeats);
+        this(Scheduler.nextEventId++, cueId, startDateStr, startTimeStr, endTimeStr, spanDays, repeats);
+        this.endDate = ( endDateStr==null ? null : LocalDate.parse(endDateStr) );
+        this.occurrences = occurrences;
+        this.recurrence = recurrence;
+        updateLastDate();
     }
 
     public MediaEvent(int id, int cueId, String startDateStr, String startTimeStr, String endTimeStr, DayOfWeek... repeats) throws IllegalArgumentException {
+        this(id, cueId, startDateStr, startTimeStr, endTimeStr, null, repeats);
+    }
+
+    public MediaEvent(int id, int cueId, String startDateStr, String startTimeStr, String endTimeStr, Integer spanDays, DayOfWeek... repeats) throws IllegalArgumentException {
         startTime = LocalTime.parse(startTimeStr);
-        if ( endTimeStr.equals("00:00") ) {
-            endTimeStr = "23:59";
-        }
         endTime  = LocalTime.parse(endTimeStr);
-        if ( startTime.isAfter(endTime) ) {
+        if ( spanDays==null ) {
+            // An end time at or before the start time runs into the next day
+            if ( endTime.isAfter(startTime) ) {
+                spanDays = 0;
+            } else if ( endTime.isBefore(startTime) || endTime.equals(LocalTime.MIDNIGHT) ) {
+                spanDays = 1;
+            } else {
+                throw new IllegalArgumentException("End Time must be different from Start Time");
+            }
+        }
+        if ( spanDays<0 || ( spanDays==0 && !endTime.isAfter(startTime) ) ) {
             throw new IllegalArgumentException("End Time must be after Start Time");
         }
         this.id = id;
         this.cueId = cueId;
+        this.spanDays = spanDays;
         startDate = LocalDate.parse(startDateStr);
-        repeatOn.addAll(Arrays.asList(repeats));
+        if ( repeats!=null ) {
+            repeatOn.addAll(Arrays.asList(repeats));
+        }
+        updateLastDate();
+    }
+
+    // Rebuilds an event from its packed row in an EventStore
+    MediaEvent(int id, int cueId, LocalDate startDate, LocalTime startTime, LocalTime endTime, int spanDays, Set<DayOfWeek> repeatOn, LocalDate endDate) {
+        this.id = id;
+        this.cueId = cueId;
+        this.startDate = startDate;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.spanDays = spanDays;
+        this.repeatOn = repeatOn;
+        this.endDate = endDate;
+        updateLastDate();
+    }
+
+
+    ////////////////
+    // Recurrence //
+    ////////////////
+
+    private void updateLastDate() {
+        Recurrence spec = recurrence;
+        if ( spec==null && !repeatOn.isEmpty() ) {
+            spec = Recurrence.weekly(repeatOn);
+        }
+        rule = ( spec==null ? null : spec.compile(startDate, endDate, occurrences) );
+        lastDate = ( rule==null ? startDate : rule.getLastDate() );
+    }
+
+    public boolean occursOn(LocalDate date) {
+        if ( rule==null ) {
+            return date.equals(startDate);
+        }
+        return rule.occursOn(date) && ( overrides.isEmpty() || !overrides.containsKey(date) );
+    }
+
+    // Bit i is set if the event takes place as itself on the i-th of up to 64 days
+    long occurrences(long fromDay, int days) {
+        if ( rule==null ) {
+            long offset = startDate.toEpochDay() - fromDay;
+            return ( offset>=0 && offset<days ) ? 1L << offset : 0;
+        }
+        long result = rule.occurrences(fromDay, days);
+        if ( overrides.isEmpty() ) {
+            return result;
+        }
+        for ( LocalDate date : overrides.keySet() ) {
+            long offset = date.toEpochDay() - fromDay;
+            if ( offset>=0 && offset<days ) {
+                result &= ~(1L << offset);
+            }
+        }
+        return result;
+    }
+
+    LocalDate nextOccurrence(LocalDate from) {
+        if ( rule==null ) {
+            return from.isAfter(startDate) ? null : startDate;
+        }
+        LocalDate date = rule.next(from);
+        while ( date!=null && overrides.containsKey(date) ) {
+            date = rule.next(date.plusDays(1));
+        }
+        return date;
+    }
+
+    @JsonIgnore
+    Recurrence getRule() {
+        return rule;
+    }
+
+    @JsonIgnore
+    public LocalDate getLastDate() {
+        return lastDate;
+    }
+
+    public boolean isExpired(LocalDate today) {
+        return lastDate!=null && lastDate.plusDays(spanDays).isBefore(today);
     }
 
 
@@ -77,12 +190,69 @@ public class MediaEvent implements Comparable<MediaEvent> {
         return endTime;
     }
 
+    public int getSpanDays() {
+        return spanDays;
+    }
+
+    @JsonIgnore
+    public int getStartOffset() {
+        return startTime.toSecondOfDay();
+    }
+
+    @JsonIgnore
+    public int getEndOffset() {
+        return spanDays * SECONDS_PER_DAY + endTime.toSecondOfDay();
+    }
+
     public Set<DayOfWeek> getRepeatOn() {
         return repeatOn;
     }
 
     public boolean isRepeating() {
-        return !repeatOn.isEmpty();
+        return rule!=null;
+    }
+
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    public Playlist getPlaylist() {
+        return playlist;
+    }
+
+    @JsonIgnore
+    public Set<Integer> getCueIds() {
+        Set<Integer> result = new HashSet<>();
+        result.add(cueId);
+        if ( playlist!=null ) {
+            for ( PlaylistItem item : playlist.getItems() ) {
+                result.add(item.getCueId());
+            }
+        }
+        return result;
+    }
+
+    public List<EventOverride> getOverrides() {
+        List<EventOverride> result = new ArrayList<>(overrides.values());
+        result.sort(Comparator.comparing(EventOverride::getDate));
+        return result;
+    }
+
+    boolean hasOverrides() {
+        return !overrides.isEmpty();
+    }
+
+    EventOverride getOverride(LocalDate date) {
+        return overrides.get(date);
+    }
+
+    @JsonIgnore
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public Integer getOccurrences() {
+        return occurrences;
     }
 
     @JsonProperty("startDate")
@@ -90,6 +260,11 @@ public class MediaEvent implements Comparable<MediaEvent> {
         return startDate.toString();
     }
 
+    @JsonProperty("endDate")
+    String getEndDateString() {
+        return endDate==null ? null : endDate.toString();
+    }
+
     @JsonProperty("startTime")
     String getStartTimeString() {
         return startTime.toString();
@@ -115,6 +290,7 @@ public class MediaEvent implements Comparable<MediaEvent> {
 
     public void setStartDate(LocalDate startDate) {
         this.startDate = startDate;
+        updateLastDate();
     }
 
     public void setStartTime(LocalTime startTime) {
@@ -125,8 +301,47 @@ public class MediaEvent implements Comparable<MediaEvent> {
         this.endTime = endTime;
     }
 
+    public void setSpanDays(int spanDays) {
+        this.spanDays = spanDays;
+    }
+
     public void setRepeatOn(Set<DayOfWeek> repeatOn) {
         this.repeatOn = repeatOn;
+        updateLastDate();
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+        updateLastDate();
+    }
+
+    public void setOccurrences(Integer occurrences) {
+        this.occurrences = occurrences;
+        updateLastDate();
+    }
+
+    public void setRecurrence(Recurrence recurrence) {
+        this.recurrence = recurrence;
+        updateLastDate();
+    }
+
+    public void setPlaylist(Playlist playlist) {
+        this.playlist = playlist;
+    }
+
+    public void setOverrides(List<EventOverride> overrides) {
+        this.overrides.clear();
+        for ( EventOverride override : overrides ) {
+            putOverride(override);
+        }
+    }
+
+    EventOverride putOverride(EventOverride override) {
+        return overrides.put(override.getDate(), override);
+    }
+
+    EventOverride removeOverride(LocalDate date) {
+        return overrides.remove(date);
     }
 
 
@@ -152,6 +367,7 @@ public class MediaEvent implements Comparable<MediaEvent> {
 
         if (id != that.id) return false;
         if (cueId != that.cueId) return false;
+        if (spanDays != that.spanDays) return false;
         if (startDate != null ? !startDate.equals(that.startDate) : that.startDate != null) return false;
         if (startTime != null ? !startTime.equals(that.startTime) : that.startTime != null) return false;
         return endTime != null ? endTime.equals(that.endTime) : that.endTime == null;
@@ -165,6 +381,7 @@ public class MediaEvent implements Comparable<MediaEvent> {
         result = 31 * result + (startDate != null ? startDate.hashCode() : 0);
         result = 31 * result + (startTime != null ? startTime.hashCode() : 0);
         result = 31 * result + (endTime != null ? endTime.hashCode() : 0);
+        result = 31 * result + spanDays;
         return result;
     }
 }
@@ -0,0 +1,229 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.exception.ScheduleConflictException;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.Map.Entry;
+
+// Everything in one H2 MVStore file, a row per event, cue, zone and property held as JSON.
+// Auto-commit is off, so puts only reach the file when committed; each commit writes a new
+// version of just the pages changed, and a crash leaves the file as of the last one. Opening
+// reads only the file header, the rest being paged in as the maps are read.
+//
+// Events are kept in a map per zone and layer, so moving one between layers is a remove and a
+// put in the same commit. The first time an empty store is opened it imports the JSON files.
+@Singleton
+public class MvStoreStorage implements Storage {
+
+    @Inject private JsonEncoder json;
+    @Inject private JsonStorage jsonFiles;
+
+    static final String FILENAME = "scheduler.mv.db";
+
+    private static final String EVENTS_PREFIX = "events/";
+    private static final String CUES = "cues";
+    private static final String ZONES = "zones";
+    private static final String PROPERTIES = "properties";
+
+    private MVStore store;
+    private boolean readOnly = false;
+
+    // Read only, the file is opened as such, or if there isn't one yet the JSON files are
+    // imported into a store held in memory
+    public synchronized void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public synchronized void open() {
+        if ( store!=null ) {
+            return;
+        }
+        if ( !readOnly ) {
+            store = new MVStore.Builder().fileName(FILENAME).autoCommitDisabled().compress().open();
+        } else if ( new File(FILENAME).exists() ) {
+            store = new MVStore.Builder().fileName(FILENAME).readOnly().open();
+        } else {
+            store = new MVStore.Builder().autoCommitDisabled().open();
+        }
+        if ( store.getMapNames().isEmpty() && !store.isReadOnly() ) {
+            importJsonFiles();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if ( store!=null ) {
+            if ( !readOnly ) {
+                store.commit();
+                store.compactMoveChunks();
+            }
+            store.close();
+            store = null;
+        }
+    }
+
+    @Override
+    public synchronized void commit() {
+        store().commit();
+    }
+
+    private synchronized MVStore store() {
+        if ( store==null ) {
+            open();
+        }
+        return store;
+    }
+
+    private void importJsonFiles() {
+        for ( Entry<String, Zone> entry : jsonFiles.loadSchedules().entrySet() ) {
+            for ( Entry<Integer, Schedule> layer : entry.getValue().getSchedules().entrySet() ) {
+                for ( MediaEvent event : layer.getValue().getUniqueEvents() ) {
+                    putEvent(entry.getKey(), layer.getKey(), event);
+                }
+            }
+        }
+        for ( Cue cue : jsonFiles.loadCues() ) {
+            putCue(cue);
+        }
+        for ( Zone zone : jsonFiles.loadZones() ) {
+            putZone(zone);
+        }
+        Properties properties = jsonFiles.loadProperties();
+        for ( String name : properties.stringPropertyNames() ) {
+            putProperty(name, properties.getProperty(name));
+        }
+        store.commit();
+    }
+
+
+    ////////////
+    // Events //
+    ////////////
+
+    // Each row is decoded on its own as it is read, rather than one document parsed whole
+    @Override
+    public Map<String, Zone> loadSchedules() {
+        Map<String, Zone> result = new HashMap<>();
+        for ( String mapName : store().getMapNames() ) {
+            if ( !mapName.startsWith(EVENTS_PREFIX) ) {
+                continue;
+            }
+            int split = mapName.lastIndexOf('/');
+            String zoneName = mapName.substring(EVENTS_PREFIX.length(), split);
+            int priority = Integer.parseInt(mapName.substring(split + 1));
+            Schedule schedule = result.computeIfAbsent(zoneName, Zone::new).getOrCreateSchedule(priority);
+            MVMap<Integer, String> events = store().openMap(mapName);
+            for ( String value : events.values() ) {
+                try {
+                    schedule.addEvent(json.decodeMediaEvent(value));
+                } catch (IOException | ScheduleConflictException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putEvent(String zone, int priority, MediaEvent event) {
+        try {
+            events(zone, priority).put(event.getId(), json.encodeMediaEvent(event));
+        } catch (JsonProcessingException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void removeEvent(String zone, int priority, long eventId) {
+        events(zone, priority).remove((int) eventId);
+    }
+
+    private MVMap<Integer, String> events(String zone, int priority) {
+        return store().openMap(EVENTS_PREFIX + zone + "/" + priority);
+    }
+
+
+    //////////
+    // Cues //
+    //////////
+
+    @Override
+    public Set<Cue> loadCues() {
+        Set<Cue> result = new HashSet<>();
+        if ( !store().hasMap(CUES) ) {
+            return result;
+        }
+        MVMap<Integer, String> cues = store().openMap(CUES);
+        for ( String value : cues.values() ) {
+            Cue cue = json.decodeCue(value);
+            if ( cue!=null ) {
+                result.add(cue);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putCue(Cue cue) {
+        store().<Integer, String>openMap(CUES).put(cue.getId(), json.encodeCue(cue));
+    }
+
+    @Override
+    public void removeCue(Cue cue) {
+        store().<Integer, String>openMap(CUES).remove(cue.getId());
+    }
+
+
+    ///////////
+    // Zones //
+    ///////////
+
+    @Override
+    public List<Zone> loadZones() {
+        List<Zone> result = new ArrayList<>();
+        if ( !store().hasMap(ZONES) ) {
+            return result;
+        }
+        MVMap<String, String> zones = store().openMap(ZONES);
+        for ( String value : zones.values() ) {
+            Zone zone = json.decodeZone(value);
+            if ( zone!=null ) {
+                result.add(zone);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void putZone(Zone zone) {
+        store().<String, String>openMap(ZONES).put(zone.getName(), json.encodeZone(zone));
+    }
+
+
+    ////////////////
+    // Properties //
+    ////////////////
+
+    @Override
+    public Properties loadProperties() {
+        Properties result = new Properties();
+        if ( store().hasMap(PROPERTIES) ) {
+            result.putAll(store().<String, String>openMap(PROPERTIES));
+        }
+        return result;
+    }
+
+    @Override
+    public void putProperty(String name, String value) {
+        store().<String, String>openMap(PROPERTIES).put(name, value);
+    }
+
+}
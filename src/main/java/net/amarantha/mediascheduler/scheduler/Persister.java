@@ -0,0 +1,156 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.metrics.Metrics;
+import net.amarantha.mediascheduler.utility.PropertyManager;
+
+// Commits staged storage changes from a background thread, batching each burst into one write
+@Singleton
+public class Persister {
+
+    public static final String SAVE_DELAY_PROPERTY = "saveDelay";
+
+    private static final long DEFAULT_SAVE_DELAY_MILLIS = 250;
+
+    @Inject private Storage storage;
+    @Inject private Metrics metrics;
+
+    private final Object commitLock = new Object();
+
+    private long version = 0;               // Last change marked dirty
+    private long durableVersion = 0;        // Last change committed
+
+    private long delayMillis = Math.max(0, PropertyManager.getBootstrapProperty(SAVE_DELAY_PROPERTY, DEFAULT_SAVE_DELAY_MILLIS, Long::parseLong));
+
+    private volatile boolean running = false;
+    private Thread writer;
+
+    void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    public synchronized void startup() {
+        if ( running ) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeBehind, "persister");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Always commits whatever is still dirty before returning. The writer is woken rather than
+    // interrupted, as an interrupt would close any file channel it has open mid-write.
+    public void shutdown() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = writer;
+            writer = null;
+            notifyAll();
+        }
+        if ( stopping!=null ) {
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        commit();
+    }
+
+
+    ////////////////
+    // Versioning //
+    ////////////////
+
+    // Call once the change has been staged with the storage; returns the version to wait for
+    public long markDirty() {
+        long marked;
+        synchronized (this) {
+            marked = ++version;
+            notifyAll();
+            if ( running ) {
+                return marked;
+            }
+        }
+        commit();
+        return marked;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized long getDurableVersion() {
+        return durableVersion;
+    }
+
+    // True once the change with this version, and all before it, has been committed
+    public synchronized boolean awaitDurable(long awaited, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while ( durableVersion<awaited ) {
+            long remaining = deadline - System.currentTimeMillis();
+            if ( remaining<=0 ) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+
+    ////////////
+    // Commit //
+    ////////////
+
+    // Commits now, on the caller's thread, if anything is dirty. A commit that fails leaves the
+    // durable version where it was, so the changes are tried again with the next.
+    public void commit() {
+        synchronized (commitLock) {
+            long committing;
+            synchronized (this) {
+                if ( version==durableVersion ) {
+                    return;
+                }
+                committing = version;
+            }
+            long start = System.nanoTime();
+            try {
+                storage.commit();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                return;
+            }
+            metrics.histogram(Metrics.SAVE_DURATION).recordSince(start);
+            synchronized (this) {
+                durableVersion = committing;
+                notifyAll();
+            }
+        }
+    }
+
+    private void writeBehind() {
+        try {
+            while ( true ) {
+                synchronized (this) {
+                    while ( running && version==durableVersion ) {
+                        wait();
+                    }
+                    // Let the rest of a burst arrive
+                    long deadline = System.currentTimeMillis() + delayMillis;
+                    long remaining;
+                    while ( running && (remaining = deadline - System.currentTimeMillis())>0 ) {
+                        wait(remaining);
+                    }
+                    if ( !running ) {
+                        return;
+                    }
+                }
+                commit();
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+}
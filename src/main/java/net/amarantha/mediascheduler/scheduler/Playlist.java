@@ -0,0 +1,125 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Playlist {
+
+    public static final int FULL_LEVEL = 127;
+
+    private final List<PlaylistItem> items;
+    private final boolean loop;
+
+    private final long[] ends;
+    private final long totalMillis;
+
+    @JsonCreator
+    public Playlist(@JsonProperty("items") List<PlaylistItem> items, @JsonProperty("loop") boolean loop) throws IllegalArgumentException {
+        if ( items==null || items.isEmpty() ) {
+            throw new IllegalArgumentException("Playlist must have at least one item");
+        }
+        this.items = new ArrayList<>(items);
+        this.loop = loop;
+        ends = new long[items.size()];
+        long end = 0;
+        for ( int i = 0; i < items.size(); i++ ) {
+            end += items.get(i).getDuration() * 1000L;
+            ends[i] = end;
+        }
+        totalMillis = end;
+    }
+
+    public List<PlaylistItem> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    public boolean isLoop() {
+        return loop;
+    }
+
+
+    //////////////
+    // Position //
+    //////////////
+
+    // All positions are millis since the occurrence started. A playlist that does not loop
+    // holds its last item once it has run through.
+
+    private long local(long elapsedMillis) {
+        if ( loop ) {
+            return Math.floorMod(elapsedMillis, totalMillis);
+        }
+        return Math.min(Math.max(elapsedMillis, 0), totalMillis - 1);
+    }
+
+    private int indexOf(long local) {
+        int low = 0;
+        int high = ends.length - 1;
+        while ( low < high ) {
+            int mid = (low + high) >>> 1;
+            if ( ends[mid] > local ) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private long startOf(int index) {
+        return index==0 ? 0 : ends[index-1];
+    }
+
+    private boolean isFading(int index, long local, long elapsedMillis) {
+        // The first item only fades in from the last when looping round
+        if ( index==0 && elapsedMillis<totalMillis ) {
+            return false;
+        }
+        return local - startOf(index) < items.get(index).getCrossfade() * 1000L;
+    }
+
+    public PlaylistItem getItem(long elapsedMillis) {
+        return items.get(indexOf(local(elapsedMillis)));
+    }
+
+    public PlaylistItem getFadingItem(long elapsedMillis) {
+        long local = local(elapsedMillis);
+        int index = indexOf(local);
+        if ( !isFading(index, local, elapsedMillis) ) {
+            return null;
+        }
+        return items.get(index==0 ? items.size() - 1 : index - 1);
+    }
+
+    public int getLevel(long elapsedMillis) {
+        long local = local(elapsedMillis);
+        int index = indexOf(local);
+        if ( !isFading(index, local, elapsedMillis) ) {
+            return FULL_LEVEL;
+        }
+        return (int) ((local - startOf(index)) * FULL_LEVEL / (items.get(index).getCrossfade() * 1000L));
+    }
+
+    public long getNextChange(long elapsedMillis, long stepMillis) {
+        if ( !loop && elapsedMillis>=totalMillis ) {
+            return Long.MAX_VALUE;
+        }
+        if ( elapsedMillis<0 ) {
+            return 0;
+        }
+        long local = local(elapsedMillis);
+        long base = elapsedMillis - local;
+        int index = indexOf(local);
+        long start = startOf(index);
+        if ( isFading(index, local, elapsedMillis) ) {
+            long fadeEnd = start + items.get(index).getCrossfade() * 1000L;
+            return base + Math.min(fadeEnd, start + ((local - start) / stepMillis + 1) * stepMillis);
+        }
+        return base + ends[index];
+    }
+
+}
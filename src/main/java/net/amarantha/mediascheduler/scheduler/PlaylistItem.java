@@ -0,0 +1,44 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PlaylistItem {
+
+    private final int cueId;
+    private final int duration;
+    private final int crossfade;
+
+    public PlaylistItem(int cueId, int duration) {
+        this(cueId, duration, null);
+    }
+
+    @JsonCreator
+    public PlaylistItem(@JsonProperty("cueId") int cueId, @JsonProperty("duration") int duration,
+                        @JsonProperty("crossfade") Integer crossfade) throws IllegalArgumentException {
+        this.cueId = cueId;
+        this.duration = duration;
+        this.crossfade = ( crossfade==null ? 0 : crossfade );
+        if ( duration<=0 ) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+        if ( this.crossfade<0 || this.crossfade>duration ) {
+            throw new IllegalArgumentException("Crossfade must be between 0 and the duration");
+        }
+    }
+
+    public int getCueId() {
+        return cueId;
+    }
+
+    // Seconds
+    public int getDuration() {
+        return duration;
+    }
+
+    // Seconds taken to fade in from the previous item, within this item's duration
+    public int getCrossfade() {
+        return crossfade;
+    }
+
+}
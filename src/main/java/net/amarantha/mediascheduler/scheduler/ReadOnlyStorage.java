@@ -0,0 +1,88 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+// Reads from another storage but drops every change, for dry runs
+public class ReadOnlyStorage implements Storage {
+
+    private final Storage source;
+
+    public ReadOnlyStorage(Storage source) {
+        this.source = source;
+    }
+
+    @Override
+    public void open() {
+        source.open();
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    @Override
+    public void commit() {}
+
+
+    ////////////
+    // Events //
+    ////////////
+
+    @Override
+    public Map<String, Zone> loadSchedules() {
+        return source.loadSchedules();
+    }
+
+    @Override
+    public void putEvent(String zone, int priority, MediaEvent event) {}
+
+    @Override
+    public void removeEvent(String zone, int priority, long eventId) {}
+
+
+    //////////
+    // Cues //
+    //////////
+
+    @Override
+    public Set<Cue> loadCues() {
+        return source.loadCues();
+    }
+
+    @Override
+    public void putCue(Cue cue) {}
+
+    @Override
+    public void removeCue(Cue cue) {}
+
+
+    ///////////
+    // Zones //
+    ///////////
+
+    @Override
+    public List<Zone> loadZones() {
+        return source.loadZones();
+    }
+
+    @Override
+    public void putZone(Zone zone) {}
+
+
+    ////////////////
+    // Properties //
+    ////////////////
+
+    @Override
+    public Properties loadProperties() {
+        return source.loadProperties();
+    }
+
+    @Override
+    public void putProperty(String name, String value) {}
+
+}
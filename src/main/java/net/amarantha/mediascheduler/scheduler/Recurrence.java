@@ -0,0 +1,437 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.util.*;
+
+public class Recurrence {
+
+    public enum Frequency { DAILY, WEEKLY, MONTHLY }
+
+    // 400 Gregorian years: every calendar pattern repeats after this many days
+    static final long GREGORIAN_CYCLE_DAYS = 146097;
+    private static final long GREGORIAN_CYCLE_MONTHS = 4800;
+
+    private final Frequency frequency;
+    private final int interval;
+    private final Set<DayOfWeek> byDay = EnumSet.noneOf(DayOfWeek.class);
+    private final int setPos;
+    private final Set<Integer> byMonthDay = new TreeSet<>();
+    private final Set<LocalDate> except = new TreeSet<>();
+
+    @JsonCreator
+    public Recurrence(
+            @JsonProperty("frequency") Frequency frequency,
+            @JsonProperty("interval") Integer interval,
+            @JsonProperty("byDay") Set<DayOfWeek> byDay,
+            @JsonProperty("setPos") Integer setPos,
+            @JsonProperty("byMonthDay") Set<Integer> byMonthDay,
+            @JsonProperty("except") Set<String> except) throws IllegalArgumentException {
+        this.frequency = ( frequency==null ? Frequency.WEEKLY : frequency );
+        this.interval = ( interval==null ? 1 : interval );
+        this.setPos = ( setPos==null ? 0 : setPos );
+        if ( this.interval<1 ) {
+            throw new IllegalArgumentException("Interval must be at least 1");
+        }
+        if ( this.setPos<-31 || this.setPos>31 ) {
+            throw new IllegalArgumentException("Set position must be between -31 and 31");
+        }
+        if ( byDay!=null ) {
+            this.byDay.addAll(byDay);
+        }
+        if ( byMonthDay!=null ) {
+            for ( int day : byMonthDay ) {
+                if ( day==0 || day<-31 || day>31 ) {
+                    throw new IllegalArgumentException("Month day must be between -31 and 31");
+                }
+            }
+            this.byMonthDay.addAll(byMonthDay);
+        }
+        if ( except!=null ) {
+            for ( String date : except ) {
+                this.except.add(LocalDate.parse(date));
+            }
+        }
+    }
+
+    public static Recurrence weekly(Collection<DayOfWeek> days) {
+        return new Recurrence(Frequency.WEEKLY, 1, new HashSet<>(days), null, null, null);
+    }
+
+    private Recurrence(Recurrence rule) {
+        frequency = rule.frequency;
+        interval = rule.interval;
+        setPos = rule.setPos;
+        byDay.addAll(rule.byDay);
+        byMonthDay.addAll(rule.byMonthDay);
+        except.addAll(rule.except);
+    }
+
+
+    /////////////
+    // Getters //
+    /////////////
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public Set<DayOfWeek> getByDay() {
+        return byDay;
+    }
+
+    public int getSetPos() {
+        return setPos;
+    }
+
+    public Set<Integer> getByMonthDay() {
+        return byMonthDay;
+    }
+
+    @JsonIgnore
+    public Set<LocalDate> getExcept() {
+        return except;
+    }
+
+    @JsonProperty("except")
+    List<String> getExceptStrings() {
+        List<String> result = new ArrayList<>();
+        for ( LocalDate date : except ) {
+            result.add(date.toString());
+        }
+        return result;
+    }
+
+
+    /////////////
+    // Compile //
+    /////////////
+
+    private LocalDate startDate;
+
+    private long firstDay;
+    private long lastDay;
+    private long startPeriod;
+    private int dayMask;
+    private long monthDayMask;
+    private int[] monthMasks;       // Monthly candidates, by weekday of the 1st and month length
+    private long[] weekMasks;       // Weekday matches over 64 days, by weekday of the first
+    private Set<Long> exceptDays;
+    private long firstExceptDay;
+    private long lastExceptDay;
+
+    // A compiled copy for one event, leaving this rule as it was
+    Recurrence compile(LocalDate startDate, LocalDate endDate, Integer count) {
+        Recurrence compiled = new Recurrence(this);
+        compiled.compileFrom(startDate, endDate, count);
+        return compiled;
+    }
+
+    private void compileFrom(LocalDate startDate, LocalDate endDate, Integer count) {
+        this.startDate = startDate;
+        dayMask = 0;
+        for ( DayOfWeek dow : byDay ) {
+            dayMask |= bit(dow);
+        }
+        monthDayMask = 0;
+        for ( int day : byMonthDay ) {
+            monthDayMask |= 1L << ( day>0 ? day : 31 - day );
+        }
+        // Fall back to the start date's own day, as RRULE does
+        if ( frequency==Frequency.WEEKLY && dayMask==0 ) {
+            dayMask = bit(startDate.getDayOfWeek());
+        }
+        if ( frequency==Frequency.MONTHLY && dayMask==0 && monthDayMask==0 ) {
+            monthDayMask = 1L << startDate.getDayOfMonth();
+        }
+        weekMasks = new long[7];
+        for ( int dow1 = 0; dow1 < 7; dow1++ ) {
+            for ( int i = 0; i < 64; i++ ) {
+                if ( dayMask==0 || (dayMask & 1 << (dow1 + i) % 7)!=0 ) {
+                    weekMasks[dow1] |= 1L << i;
+                }
+            }
+        }
+        if ( frequency==Frequency.MONTHLY ) {
+            monthMasks = new int[7 * 4];
+            for ( int dow1 = 0; dow1 < 7; dow1++ ) {
+                for ( int length = 28; length <= 31; length++ ) {
+                    int mask = 0;
+                    for ( int day = 1; day <= length; day++ ) {
+                        if ( isSetPos((dow1 + day - 1) % 7, day, length) ) {
+                            mask |= 1 << (day - 1);
+                        }
+                    }
+                    monthMasks[dow1 * 4 + length - 28] = mask;
+                }
+            }
+        }
+        exceptDays = new HashSet<>();
+        firstExceptDay = Long.MAX_VALUE;
+        lastExceptDay = Long.MIN_VALUE;
+        for ( LocalDate date : except ) {
+            exceptDays.add(date.toEpochDay());
+            firstExceptDay = Math.min(firstExceptDay, date.toEpochDay());
+            lastExceptDay = Math.max(lastExceptDay, date.toEpochDay());
+        }
+        firstDay = startDate.toEpochDay();
+        startPeriod = period(startDate);
+        lastDay = ( endDate==null ? Long.MAX_VALUE : endDate.toEpochDay() );
+        if ( lastDay<firstDay ) {
+            throw new IllegalArgumentException("End Date must not be before Start Date");
+        }
+        if ( count!=null ) {
+            if ( count<1 ) {
+                throw new IllegalArgumentException("Occurrences must be at least 1");
+            }
+            LocalDate date = null;
+            for ( int i = 0; i < count; i++ ) {
+                LocalDate next = next(date==null ? startDate : date.plusDays(1));
+                if ( next==null ) {
+                    break;
+                }
+                date = next;
+            }
+            lastDay = ( date==null ? firstDay - 1 : date.toEpochDay() );
+        }
+    }
+
+    LocalDate getLastDate() {
+        return lastDay==Long.MAX_VALUE ? null : LocalDate.ofEpochDay(lastDay);
+    }
+
+    Set<DayOfWeek> getCandidateDays() {
+        Set<DayOfWeek> result = EnumSet.noneOf(DayOfWeek.class);
+        for ( DayOfWeek dow : DayOfWeek.values() ) {
+            if ( dayMask==0 || (dayMask & bit(dow))!=0 ) {
+                result.add(dow);
+            }
+        }
+        return result;
+    }
+
+    private static int bit(DayOfWeek dow) {
+        return 1 << dow.ordinal();
+    }
+
+    private long period(LocalDate date) {
+        return period(date.toEpochDay(), date.getYear() * 12L + date.getMonthValue() - 1);
+    }
+
+    private long period(long epochDay, long month) {
+        switch ( frequency ) {
+            case DAILY:
+                return epochDay;
+            case WEEKLY:
+                // 1970-01-01 was a Thursday; shift so weeks run Monday to Sunday
+                return Math.floorDiv(epochDay + 3, 7);
+            default:
+                return month;
+        }
+    }
+
+
+    ////////////
+    // Lookup //
+    ////////////
+
+    public boolean occursOn(LocalDate date) {
+        long epochDay = date.toEpochDay();
+        return epochDay>=firstDay && epochDay<=lastDay && matches(date);
+    }
+
+    private boolean matches(LocalDate date) {
+        if ( Math.floorMod(period(date) - startPeriod, interval)!=0 ) {
+            return false;
+        }
+        int dow = date.getDayOfWeek().ordinal();
+        int day = date.getDayOfMonth();
+        if ( frequency==Frequency.MONTHLY ) {
+            if ( (monthMask(Math.floorMod(dow - day + 1, 7), date.lengthOfMonth()) & 1 << (day - 1))==0 ) {
+                return false;
+            }
+        } else if ( dayMask!=0 && (dayMask & 1 << dow)==0 ) {
+            return false;
+        }
+        return exceptDays.isEmpty() || !exceptDays.contains(date.toEpochDay());
+    }
+
+    private int monthMask(int dow1, int monthLength) {
+        return monthMasks[dow1 * 4 + monthLength - 28];
+    }
+
+    // As RRULE's BYSETPOS, the day must be the setPos-th of all the month's candidate days,
+    // so MO-FR with -1 is the month's last weekday rather than the last of each weekday
+    private boolean isSetPos(int dow, int day, int monthLength) {
+        if ( !isCandidate(dow, day, monthLength) ) {
+            return false;
+        }
+        if ( setPos==0 ) {
+            return true;
+        }
+        int position = 0;
+        int from = ( setPos>0 ? 1 : day );
+        int to = ( setPos>0 ? day : monthLength );
+        for ( int d = from; d <= to; d++ ) {
+            if ( isCandidate(Math.floorMod(dow + d - day, 7), d, monthLength) ) {
+                position++;
+            }
+        }
+        return position==Math.abs(setPos);
+    }
+
+    private boolean isCandidate(int dow, int day, int monthLength) {
+        if ( dayMask!=0 && (dayMask & 1 << dow)==0 ) {
+            return false;
+        }
+        int fromEnd = monthLength - day + 1;
+        return monthDayMask==0 || (monthDayMask & (1L << day | 1L << (31 + fromEnd)))!=0;
+    }
+
+    // Bit i is set if the rule falls on the i-th of the given days, of which there are at most
+    // 64. Worked a month at a time, which for a monthly rule is a single table lookup.
+    long occurrences(long fromDay, int days) {
+        LocalDate date = LocalDate.ofEpochDay(fromDay);
+        long month = date.getYear() * 12L + date.getMonthValue() - 1;
+        long monthStart = fromDay - date.getDayOfMonth() + 1;
+        int monthLength = date.lengthOfMonth();
+        long end = fromDay + days;
+        long result = 0;
+        for ( long day = fromDay; day<end; ) {
+            long segmentEnd = Math.min(end, monthStart + monthLength);
+            long mask = inMonth(monthStart, monthLength, month);
+            result |= ( mask >>> (day - monthStart) & lowBits((int) (segmentEnd - day)) ) << (day - fromDay);
+            day = segmentEnd;
+            monthStart += monthLength;
+            month++;
+            monthLength = Month.of((int) Math.floorMod(month, 12L) + 1).length(Year.isLeap(Math.floorDiv(month, 12L)));
+        }
+        return result;
+    }
+
+    // Bit i is set if the rule falls on day i+1 of the month
+    private long inMonth(long monthStart, int monthLength, long month) {
+        int dow1 = (int) Math.floorMod(monthStart + 3, 7L);
+        long mask = 0;
+        if ( frequency==Frequency.MONTHLY ) {
+            if ( Math.floorMod(month - startPeriod, interval)==0 ) {
+                mask = monthMask(dow1, monthLength);
+            }
+        } else {
+            mask = weekMasks[dow1] & lowBits(monthLength);
+            for ( int i = 0; interval>1 && i < monthLength; i++ ) {
+                if ( Math.floorMod(period(monthStart + i, month) - startPeriod, interval)!=0 ) {
+                    mask &= ~(1L << i);
+                }
+            }
+        }
+        long monthEnd = monthStart + monthLength - 1;
+        if ( firstDay>monthStart ) {
+            mask &= ~lowBits((int) Math.min(monthLength, firstDay - monthStart));
+        }
+        if ( lastDay<monthEnd ) {
+            mask &= lowBits((int) Math.max(0, lastDay - monthStart + 1));
+        }
+        if ( firstExceptDay<=monthEnd && lastExceptDay>=monthStart ) {
+            for ( int i = 0; i < monthLength; i++ ) {
+                if ( exceptDays.contains(monthStart + i) ) {
+                    mask &= ~(1L << i);
+                }
+            }
+        }
+        return mask;
+    }
+
+    private static long lowBits(int count) {
+        return count>=64 ? -1L : (1L << count) - 1;
+    }
+
+    LocalDate next(LocalDate from) {
+        LocalDate date = ( from.isBefore(startDate) ? startDate : from );
+        long limit = Math.min(lastDay, date.toEpochDay() + GREGORIAN_CYCLE_DAYS);
+        while ( date.toEpochDay()<=limit ) {
+            long offset = Math.floorMod(period(date) - startPeriod, interval);
+            if ( offset==0 ) {
+                if ( matches(date) ) {
+                    return date;
+                }
+                date = ( frequency==Frequency.DAILY ? date.plusDays(interval) : date.plusDays(1) );
+            } else {
+                // Skip straight to the next period in the cycle
+                long skip = interval - offset;
+                switch ( frequency ) {
+                    case DAILY:
+                        date = date.plusDays(skip);
+                        break;
+                    case WEEKLY:
+                        date = date.minusDays(date.getDayOfWeek().ordinal()).plusWeeks(skip);
+                        break;
+                    default:
+                        date = date.withDayOfMonth(1).plusMonths(skip);
+                }
+            }
+        }
+        return null;
+    }
+
+    public Iterable<LocalDate> expand(LocalDate from, LocalDate to) {
+        return () -> new Iterator<LocalDate>() {
+            private LocalDate next = nextUpTo(from);
+            @Override
+            public boolean hasNext() {
+                return next!=null;
+            }
+            @Override
+            public LocalDate next() {
+                if ( next==null ) {
+                    throw new NoSuchElementException();
+                }
+                LocalDate result = next;
+                next = nextUpTo(result.plusDays(1));
+                return result;
+            }
+            private LocalDate nextUpTo(LocalDate date) {
+                LocalDate result = ( date.isAfter(to) ? null : Recurrence.this.next(date) );
+                return ( result==null || result.isAfter(to) ) ? null : result;
+            }
+        };
+    }
+
+    // Days after which the pattern of occurrences repeats exactly, ignoring exceptions
+    long getCycleDays() {
+        switch ( frequency ) {
+            case DAILY:
+                return interval;
+            case WEEKLY:
+                return 7L * interval;
+            default:
+                long months = lcm(interval, GREGORIAN_CYCLE_MONTHS);
+                return months / GREGORIAN_CYCLE_MONTHS * GREGORIAN_CYCLE_DAYS;
+        }
+    }
+
+    LocalDate getLastExceptDate() {
+        return lastExceptDay==Long.MIN_VALUE ? null : LocalDate.ofEpochDay(lastExceptDay);
+    }
+
+    static long lcm(long a, long b) {
+        long x = a, y = b;
+        while ( y!=0 ) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+        return a / x * b;
+    }
+
+}
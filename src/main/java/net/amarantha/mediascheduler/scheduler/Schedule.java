@@ -7,17 +7,26 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
+// Events are packed into an EventStore and handed out as MediaEvents only when asked for.
+// Rows are bucketed by date for one-offs and by each candidate weekday for repeats, each
+// bucket sorted by start so that reads merge them rather than sort.
 public class Schedule {
 
-    private Map<DayOfWeek, Map<LocalDate, List<MediaEvent>>> allEvents;
+    private final EventStore store = new EventStore();
+
+    private final Map<Long, Bucket> oneOffs = new HashMap<>();
+    private final Bucket[] repeats = new Bucket[7];
+    private final Bucket allRepeats = new Bucket();
+
+    private int maxSpanDays = 0;
+
+    // Stand-ins for single occurrences of a series, keyed on (event id, date); null means cancelled
+    private final Map<Long, MediaEvent> overrides = new HashMap<>();
 
     public Schedule() {
-        allEvents = new LinkedHashMap<>();
         for ( DayOfWeek dow : DayOfWeek.values() ) {
-            allEvents.put(dow, new HashMap<>());
+            repeats[dow.ordinal()] = new Bucket();
         }
     }
 
@@ -27,16 +36,10 @@ public class Schedule {
     ////////////////
 
     public List<MediaEvent> getUniqueEvents() {
-        Set<Integer> ids = new HashSet<>();
-        List<MediaEvent> result = new ArrayList<>();
-        for ( Entry<DayOfWeek, Map<LocalDate, List<MediaEvent>>> dowEntry : allEvents.entrySet() ) {
-            for ( Entry<LocalDate, List<MediaEvent>> dateEntry : dowEntry.getValue().entrySet() ) {
-                for ( MediaEvent event : dateEntry.getValue() ) {
-                    if ( !ids.contains(event.getId()) ) {
-                        result.add(event);
-                        ids.add(event.getId());
-                    }
-                }
+        List<MediaEvent> result = new ArrayList<>(store.size());
+        for ( int row = 0; row < store.getHighWater(); row++ ) {
+            if ( store.isLive(row) ) {
+                result.add(store.get(row));
             }
         }
         return result;
@@ -46,16 +49,42 @@ public class Schedule {
         return getEvent(dateTime.toLocalDate(), dateTime.toLocalTime());
     }
 
+    // Works on the packed rows, only building the event it finds
     public MediaEvent getEvent(LocalDate date, LocalTime time) {
-        List<MediaEvent> events = getEvents(date);
-        for ( MediaEvent event : events ) {
-            if ( event.getStartTime().compareTo(time)<=0 && event.getEndTime().compareTo(time)>0 ) {
-                return event;
+        for ( int daysBack = 0; daysBack <= maxSpanDays; daysBack++ ) {
+            LocalDate day = date.minusDays(daysBack);
+            int offset = daysBack * MediaEvent.SECONDS_PER_DAY + time.toSecondOfDay();
+            Bucket dateRows = oneOffs.get(day.toEpochDay());
+            if ( dateRows!=null ) {
+                for ( int i = 0; i < dateRows.size() && store.getStartSecond(dateRows.get(i))<=offset; i++ ) {
+                    if ( store.getEndSecond(dateRows.get(i))>offset ) {
+                        return store.get(dateRows.get(i));
+                    }
+                }
+            }
+            Bucket repeatRows = repeats[day.getDayOfWeek().ordinal()];
+            for ( int i = 0; i < repeatRows.size(); i++ ) {
+                int row = repeatRows.get(i);
+                if ( !store.repeatsOn(row, day) ) {
+                    continue;
+                }
+                if ( isOverridden(row, day) ) {
+                    MediaEvent replacement = overrides.get(overrideKey(store.getId(row), day));
+                    if ( replacement!=null && replacement.getStartOffset()<=offset && replacement.getEndOffset()>offset ) {
+                        return replacement;
+                    }
+                } else if ( store.getStartSecond(row)<=offset && store.getEndSecond(row)>offset ) {
+                    return store.get(row);
+                }
             }
         }
         return null;
     }
 
+    int getMaxSpanDays() {
+        return maxSpanDays;
+    }
+
     public Map<LocalDate, List<MediaEvent>> getEvents(LocalDate from, LocalDate to) {
         Map<LocalDate, List<MediaEvent>> result = new LinkedHashMap<>();
         for ( LocalDate d = from; d.compareTo(to)<=0; d = d.plusDays(1) ) {
@@ -65,46 +94,76 @@ public class Schedule {
     }
 
     public List<MediaEvent> getEvents(LocalDate date) {
-        List<MediaEvent> result = new LinkedList<>();
-        Map<LocalDate, List<MediaEvent>> dowMap = allEvents.get(date.getDayOfWeek());
-        List<MediaEvent> dateEvents = dowMap.get(date);
-        if ( dateEvents!=null ) {
-            result.addAll(dateEvents);
-        }
-        List<MediaEvent> repeatEvents = dowMap.get(null);
-        if ( repeatEvents!=null ) {
-            result.addAll(repeatEvents.stream()
-                    .filter(event -> event.getStartDate().compareTo(date) <= 0)
-                    .collect(Collectors.toList()));
-        }
-        Collections.sort(result);
+        List<MediaEvent> result = new ArrayList<>();
+        getEvents(date, result);
         return result;
     }
 
-    MediaEvent getEventById(long eventId) {
-        for ( Entry<DayOfWeek, Map<LocalDate, List<MediaEvent>>> dowEntry : allEvents.entrySet() ) {
-            for ( Entry<LocalDate, List<MediaEvent>> dateEntry : dowEntry.getValue().entrySet() ) {
-                List<MediaEvent> eventList = dateEntry.getValue();
-                for ( MediaEvent event : eventList ) {
-                    if ( event.getId()==eventId ) {
-                        return event;
+    // Appends to the caller's list, which can be reused. One-offs and repeats come out of their
+    // buckets already in start order, so they are merged; stand-ins are slotted in afterwards.
+    void getEvents(LocalDate date, List<MediaEvent> into) {
+        int base = into.size();
+        Bucket dateRows = oneOffs.get(date.toEpochDay());
+        Bucket repeatRows = repeats[date.getDayOfWeek().ordinal()];
+        int dateCount = ( dateRows==null ? 0 : dateRows.size() );
+        int i = 0;
+        int j = nextOccurrence(repeatRows, 0, date);
+        while ( i<dateCount || j<repeatRows.size() ) {
+            if ( j>=repeatRows.size() || ( i<dateCount && dateRows.getKey(i)<=repeatRows.getKey(j) ) ) {
+                into.add(store.get(dateRows.get(i++)));
+            } else {
+                into.add(store.get(repeatRows.get(j)));
+                j = nextOccurrence(repeatRows, j + 1, date);
+            }
+        }
+        if ( !overrides.isEmpty() ) {
+            for ( int k = 0; k < repeatRows.size(); k++ ) {
+                int row = repeatRows.get(k);
+                if ( store.repeatsOn(row, date) && isOverridden(row, date) ) {
+                    MediaEvent replacement = overrides.get(overrideKey(store.getId(row), date));
+                    if ( replacement!=null ) {
+                        int pos = base;
+                        while ( pos<into.size() && into.get(pos).compareTo(replacement)<=0 ) {
+                            pos++;
+                        }
+                        into.add(pos, replacement);
                     }
                 }
             }
         }
-        return null;
+    }
+
+    // Index of the next row from the given one that takes place as itself on the date
+    private int nextOccurrence(Bucket rows, int from, LocalDate date) {
+        int i = from;
+        while ( i<rows.size() && ( !store.repeatsOn(rows.get(i), date) || isOverridden(rows.get(i), date) ) ) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isOverridden(int row, LocalDate date) {
+        return !overrides.isEmpty() && overrides.containsKey(overrideKey(store.getId(row), date));
+    }
+
+    private static long overrideKey(long eventId, LocalDate date) {
+        return (eventId << 32) ^ (date.toEpochDay() & 0xFFFFFFFFL);
+    }
+
+    MediaEvent getEventById(long eventId) {
+        int row = store.find(eventId);
+        return row<0 ? null : store.get(row);
+    }
+
+    boolean hasEvent(long eventId) {
+        return store.find(eventId)>=0;
     }
 
     List<MediaEvent> getEventsByCueList(Cue cue) {
         List<MediaEvent> result = new ArrayList<>();
-        for ( Entry<DayOfWeek, Map<LocalDate, List<MediaEvent>>> dowEntry : allEvents.entrySet() ) {
-            for ( Entry<LocalDate, List<MediaEvent>> dateEntry : dowEntry.getValue().entrySet() ) {
-                List<MediaEvent> eventList = dateEntry.getValue();
-                for ( MediaEvent event : eventList ) {
-                    if ( event.getCueId() == cue.getId() ) {
-                        result.add(event);
-                    }
-                }
+        for ( int row = 0; row < store.getHighWater(); row++ ) {
+            if ( store.isLive(row) && store.usesCue(row, cue.getId()) ) {
+                result.add(store.get(row));
             }
         }
         return result;
@@ -116,82 +175,225 @@ public class Schedule {
     ////////////////
 
     void addEvent(MediaEvent event) throws ScheduleConflictException {
+        // Ids locate events, so a second event with the same id would clash with the first
+        int existing = store.find(event.getId());
+        if ( existing>=0 ) {
+            throw new ScheduleConflictException(store.get(existing));
+        }
         checkConflicts(event);
+        for ( EventOverride override : event.getOverrides() ) {
+            MediaEvent replacement = override.apply(event);
+            if ( replacement!=null ) {
+                checkConflicts(replacement);
+            }
+        }
+        for ( EventOverride override : event.getOverrides() ) {
+            indexOverride(event, override);
+        }
+        maxSpanDays = Math.max(maxSpanDays, event.getSpanDays());
+        int row = store.add(event);
+        long key = store.getStartKey(row);
         if ( event.isRepeating() ) {
-            // Repeating event
-            for ( DayOfWeek dow : event.getRepeatOn() ) {
-                addEventToMap(event, dow, null);
+            for ( DayOfWeek dow : event.getRule().getCandidateDays() ) {
+                repeats[dow.ordinal()].add(row, key);
             }
+            allRepeats.add(row, key);
         } else {
-            // One-off event
-            addEventToMap(event, event.getStartDate().getDayOfWeek(), event.getStartDate());
+            oneOffs.computeIfAbsent(event.getStartDate().toEpochDay(), d -> new Bucket()).add(row, key);
         }
     }
 
     private void checkConflicts(MediaEvent event) throws ScheduleConflictException {
-        for ( Entry<DayOfWeek, Map<LocalDate, List<MediaEvent>>> dowEntry : allEvents.entrySet() ) {
-            for ( Entry<LocalDate, List<MediaEvent>> dateEntry : dowEntry.getValue().entrySet() ) {
-                List<MediaEvent> eventList = dateEntry.getValue();
-                for ( MediaEvent otherEvent : eventList ) {
-                    if ( isConflict(event, otherEvent) ) {
-                        throw new ScheduleConflictException(otherEvent);
+        long first = event.getStartDate().toEpochDay();
+        long last = EventStore.epochDay(event.getLastDate());
+        int span = event.getSpanDays();
+        if ( event.isRepeating() ) {
+            for ( int row = 0; row < store.getHighWater(); row++ ) {
+                if ( store.isLive(row) ) {
+                    checkConflict(event, first, last, span, row);
+                }
+            }
+        } else {
+            // Only one-offs starting within a span either side can overlap another one-off
+            for ( long day = first - maxSpanDays - 1; day <= first + span + 1; day++ ) {
+                Bucket dateRows = oneOffs.get(day);
+                if ( dateRows!=null ) {
+                    for ( int i = 0; i < dateRows.size(); i++ ) {
+                        checkConflict(event, first, last, span, dateRows.get(i));
                     }
                 }
             }
+            for ( int i = 0; i < allRepeats.size(); i++ ) {
+                checkConflict(event, first, last, span, allRepeats.get(i));
+            }
+        }
+        for ( MediaEvent otherEvent : overrides.values() ) {
+            if ( otherEvent!=null && isConflict(event, otherEvent) ) {
+                throw new ScheduleConflictException(otherEvent);
+            }
+        }
+    }
+
+    // Rows whose dates can't come within a day of the event's are ruled out without a view
+    private void checkConflict(MediaEvent event, long first, long last, int span, int row) throws ScheduleConflictException {
+        if ( store.getStartDay(row) <= last + span + 1 && store.getLastDay(row) + store.getSpanDays(row) + 1 >= first ) {
+            MediaEvent otherEvent = store.get(row);
+            if ( isConflict(event, otherEvent) ) {
+                throw new ScheduleConflictException(otherEvent);
+            }
         }
     }
 
     private boolean isConflict(MediaEvent thisEvent, MediaEvent otherEvent) {
-        if ( timesOverlap(thisEvent, otherEvent) ) {
-            if ( thisEvent.isRepeating() || otherEvent.isRepeating() ) {
-                Set<DayOfWeek> common = commonDays(thisEvent, otherEvent);
-                return !common.isEmpty();
-            } else {
-                return thisEvent.getStartDate().equals(otherEvent.getStartDate());
+        // Compare each pairing where the other occurrence starts dayShift days after this one
+        for ( int dayShift = -otherEvent.getSpanDays()-1; dayShift <= thisEvent.getSpanDays()+1; dayShift++ ) {
+            int shift = dayShift * MediaEvent.SECONDS_PER_DAY;
+            if ( thisEvent.getStartOffset() < otherEvent.getEndOffset() + shift
+                    && otherEvent.getStartOffset() + shift < thisEvent.getEndOffset()
+                    && occursTogether(thisEvent, otherEvent, dayShift) ) {
+                return true;
             }
         }
         return false;
     }
 
-    private Set<DayOfWeek> commonDays(MediaEvent thisEvent, MediaEvent otherEvent) {
-        Set<DayOfWeek> result = new HashSet<>();
-        DayOfWeek thisStartDay = thisEvent.getStartDate().getDayOfWeek();
-        DayOfWeek otherStartDay = otherEvent.getStartDate().getDayOfWeek();
-        if ( otherEvent.getRepeatOn().contains(thisStartDay) ) {
-            result.add(thisStartDay);
+    private boolean occursTogether(MediaEvent thisEvent, MediaEvent otherEvent, int dayShift) {
+        LocalDate from = max(thisEvent.getStartDate(), otherEvent.getStartDate().minusDays(dayShift));
+        LocalDate to = min(thisEvent.getLastDate(), otherEvent.getLastDate()==null ? null : otherEvent.getLastDate().minusDays(dayShift));
+        // Past the last exception date both patterns repeat, so one combined cycle is enough
+        LocalDate horizon = max(from, max(lastExceptDate(thisEvent), lastExceptDate(otherEvent)))
+                .plusDays(Math.min(Recurrence.lcm(cycleDays(thisEvent), cycleDays(otherEvent)), Recurrence.GREGORIAN_CYCLE_DAYS));
+        to = min(to, horizon);
+        // Compared 64 days at a time as bitmasks, as a monthly cycle is 400 years of days
+        for ( long day = from.toEpochDay(); day <= to.toEpochDay(); day += 64 ) {
+            int days = (int) Math.min(64, to.toEpochDay() - day + 1);
+            if ( (thisEvent.occurrences(day, days) & otherEvent.occurrences(day + dayShift, days))!=0 ) {
+                return true;
+            }
         }
-        if ( thisEvent.getRepeatOn().contains(otherStartDay) ) {
-            result.add(otherStartDay);
+        return false;
+    }
+
+    private static long cycleDays(MediaEvent event) {
+        return event.isRepeating() ? event.getRule().getCycleDays() : 1;
+    }
+
+    private static LocalDate lastExceptDate(MediaEvent event) {
+        LocalDate result = ( event.isRepeating() ? event.getRule().getLastExceptDate() : null );
+        return result==null ? LocalDate.MIN : result;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        if ( a==null ) {
+            return b;
         }
-        for ( DayOfWeek dow : DayOfWeek.values() ) {
-            if ( thisEvent.getRepeatOn().contains(dow) && otherEvent.getRepeatOn().contains(dow) ) {
-                result.add(dow);
+        return ( b==null || a.isBefore(b) ) ? a : b;
+    }
+
+    ///////////////
+    // Intervals //
+    ///////////////
+
+    // Every occurrence starting on a date from..to, stand-ins in place of the occurrences they
+    // override, read from the buckets without building any views
+    IntervalIndex indexOccurrences(LocalDate from, LocalDate to) {
+        IntervalIndex index = new IntervalIndex();
+        for ( LocalDate date = from; !date.isAfter(to); date = date.plusDays(1) ) {
+            long midnight = date.toEpochDay() * MediaEvent.SECONDS_PER_DAY;
+            Bucket dateRows = oneOffs.get(date.toEpochDay());
+            if ( dateRows!=null ) {
+                for ( int i = 0; i < dateRows.size(); i++ ) {
+                    int row = dateRows.get(i);
+                    index.add(midnight + store.getStartSecond(row), midnight + store.getEndSecond(row), store.getId(row), store.getCueId(row));
+                }
+            }
+            // Repeats are sorted by start, so those from the first not yet begun can be skipped
+            Bucket repeatRows = repeats[date.getDayOfWeek().ordinal()];
+            for ( int i = 0; i < repeatRows.size() && repeatRows.getKey(i) < midnight + MediaEvent.SECONDS_PER_DAY; i++ ) {
+                int row = repeatRows.get(i);
+                if ( !store.repeatsOn(row, date) ) {
+                    continue;
+                }
+                if ( isOverridden(row, date) ) {
+                    MediaEvent replacement = overrides.get(overrideKey(store.getId(row), date));
+                    if ( replacement!=null ) {
+                        index.add(midnight + replacement.getStartOffset(), midnight + replacement.getEndOffset(), replacement.getId(), replacement.getCueId());
+                    }
+                } else {
+                    index.add(midnight + store.getStartSecond(row), midnight + store.getEndSecond(row), store.getId(row), store.getCueId(row));
+                }
             }
         }
-        return result;
+        index.sort();
+        return index;
+    }
+
+
+    ///////////////
+    // Overrides //
+    ///////////////
+
+    void addOverride(MediaEvent series, EventOverride override) throws ScheduleConflictException {
+        LocalDate date = override.getDate();
+        if ( !series.isRepeating() || !series.getRule().occursOn(date) ) {
+            throw new IllegalArgumentException("Event does not occur on " + date);
+        }
+        // Checked before anything changes, as a replacement that ends before it starts is refused
+        MediaEvent replacement = override.apply(series);
+        int row = store.find(series.getId());
+        if ( row>=0 ) {
+            store.attach(row, series);
+        }
+        long key = overrideKey(series.getId(), date);
+        EventOverride previous = series.putOverride(override);
+        boolean hadReplacement = overrides.containsKey(key);
+        MediaEvent previousReplacement = overrides.remove(key);
+        if ( replacement!=null ) {
+            try {
+                checkConflicts(replacement);
+            } catch (ScheduleConflictException e) {
+                if ( previous==null ) {
+                    series.removeOverride(date);
+                } else {
+                    series.putOverride(previous);
+                }
+                if ( hadReplacement ) {
+                    overrides.put(key, previousReplacement);
+                }
+                throw e;
+            }
+        }
+        indexOverride(series, override);
     }
 
-    private boolean timesOverlap(MediaEvent thisEvent, MediaEvent otherEvent) {
-        LocalTime thisStart = thisEvent.getStartTime();
-        LocalTime thisEnd = thisEvent.getEndTime();
-        LocalTime otherStart = otherEvent.getStartTime();
-        LocalTime otherEnd = otherEvent.getEndTime();
-        return (
-                           (thisStart.compareTo(otherStart) <= 0 && thisEnd.compareTo(otherStart) > 0)
-                        || (thisStart.compareTo(otherStart) > 0 && thisEnd.compareTo(otherEnd) < 0)
-                        || (thisStart.compareTo(otherEnd) < 0 && thisEnd.compareTo(otherEnd) >= 0 )
-                );
+    boolean removeOverride(MediaEvent series, LocalDate date) throws ScheduleConflictException {
+        EventOverride override = series.getOverride(date);
+        if ( override==null ) {
+            return false;
+        }
+        // The restored occurrence may clash with anything booked since
+        long key = overrideKey(series.getId(), date);
+        MediaEvent replacement = overrides.remove(key);
+        try {
+            checkConflicts(new EventOverride(date.toString(), false, null, null, null, null).apply(series));
+        } catch (ScheduleConflictException e) {
+            overrides.put(key, replacement);
+            throw e;
+        }
+        series.removeOverride(date);
+        return true;
     }
 
-    private void addEventToMap(MediaEvent event, DayOfWeek dow, LocalDate date) {
-        Map<LocalDate, List<MediaEvent>> dowMap = allEvents.get(dow);
-        List<MediaEvent> events = dowMap.get(date);
-        if ( events == null ) {
-            events = new LinkedList<>();
-            dowMap.put(date, events);
+    private void indexOverride(MediaEvent series, EventOverride override) {
+        MediaEvent replacement = override.apply(series);
+        overrides.put(overrideKey(series.getId(), override.getDate()), replacement);
+        if ( replacement!=null ) {
+            maxSpanDays = Math.max(maxSpanDays, replacement.getSpanDays());
         }
-        events.add(event);
-        Collections.sort(events);
     }
 
 
@@ -199,21 +401,113 @@ public class Schedule {
     // Remove Events //
     ///////////////////
 
-    boolean removeEvent(long eventId) {
-        boolean result = false;
-        for ( Entry<DayOfWeek, Map<LocalDate, List<MediaEvent>>> dowEntry : allEvents.entrySet() ) {
-            for ( Entry<LocalDate, List<MediaEvent>> dateEntry : dowEntry.getValue().entrySet() ) {
-                List<MediaEvent> eventList = dateEntry.getValue();
-                List<MediaEvent> eventsToRemove = new ArrayList<>();
-                for ( MediaEvent event : eventList ) {
-                    if ( event.getId()==eventId ) {
-                        eventsToRemove.add(event);
+    List<MediaEvent> getExpiredEvents(LocalDate today) {
+        List<MediaEvent> result = new ArrayList<>();
+        for ( int row = 0; row < store.getHighWater(); row++ ) {
+            if ( store.isLive(row) && store.isExpired(row, today) ) {
+                result.add(store.get(row));
+            }
+        }
+        return result;
+    }
+
+    // Only removes the expired events named in archived, which are those already written to the
+    // archive. Series left live but with past overrides dropped are added to pruned, to be stored again.
+    List<MediaEvent> removeExpiredEvents(LocalDate today, Set<Integer> archived, List<MediaEvent> pruned) {
+        List<MediaEvent> result = new ArrayList<>();
+        for ( int row = 0; row < store.getHighWater(); row++ ) {
+            if ( store.isLive(row) && archived.contains(store.getId(row)) && store.isExpired(row, today) ) {
+                result.add(store.get(row));
+                removeRow(row);
+            }
+        }
+        for ( MediaEvent event : result ) {
+            for ( EventOverride override : event.getOverrides() ) {
+                overrides.remove(overrideKey(event.getId(), override.getDate()));
+            }
+        }
+        maxSpanDays = 0;
+        for ( int row = 0; row < store.getHighWater(); row++ ) {
+            if ( !store.isLive(row) ) {
+                continue;
+            }
+            MediaEvent event = store.getObject(row);
+            if ( event!=null ) {
+                boolean changed = false;
+                for ( EventOverride override : event.getOverrides() ) {
+                    MediaEvent replacement = override.apply(event);
+                    int span = ( replacement==null ? 0 : replacement.getSpanDays() );
+                    if ( override.getDate().plusDays(span).isBefore(today) ) {
+                        overrides.remove(overrideKey(event.getId(), override.getDate()));
+                        event.removeOverride(override.getDate());
+                        changed = true;
+                    } else {
+                        maxSpanDays = Math.max(maxSpanDays, span);
                     }
                 }
-                result |= eventList.removeAll(eventsToRemove);
+                if ( changed ) {
+                    pruned.add(event);
+                }
             }
+            maxSpanDays = Math.max(maxSpanDays, store.getSpanDays(row));
         }
         return result;
     }
 
+    // Checks the replacement against everything but the event it replaces, then swaps it in.
+    // On a conflict the original goes back as it was.
+    MediaEvent replaceEvent(long eventId, MediaEvent replacement) throws ScheduleConflictException {
+        int row = store.find(eventId);
+        if ( row<0 ) {
+            return null;
+        }
+        MediaEvent existing = store.get(row);
+        removeEvent(eventId);
+        try {
+            addEvent(replacement);
+        } catch (ScheduleConflictException e) {
+            try {
+                addEvent(existing);
+            } catch (ScheduleConflictException e1) {
+                throw new IllegalStateException("Could not restore event " + eventId, e1);
+            }
+            throw e;
+        }
+        return existing;
+    }
+
+    // Goes straight to the buckets holding the event's row
+    boolean removeEvent(long eventId) {
+        int row = store.find(eventId);
+        if ( row<0 ) {
+            return false;
+        }
+        MediaEvent event = store.getObject(row);
+        if ( event!=null ) {
+            for ( EventOverride override : event.getOverrides() ) {
+                overrides.remove(overrideKey(eventId, override.getDate()));
+            }
+        }
+        removeRow(row);
+        return true;
+    }
+
+    private void removeRow(int row) {
+        long key = store.getStartKey(row);
+        if ( store.isRepeating(row) ) {
+            for ( Bucket bucket : repeats ) {
+                bucket.remove(row, key);
+            }
+            allRepeats.remove(row, key);
+        } else {
+            long day = store.getStartDay(row);
+            Bucket dateRows = oneOffs.get(day);
+            dateRows.remove(row, key);
+            if ( dateRows.isEmpty() ) {
+                oneOffs.remove(day);
+            }
+        }
+        store.remove(row);
+    }
+
 }
@@ -2,22 +2,34 @@ package net.amarantha.mediascheduler.scheduler;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import net.amarantha.mediascheduler.device.ArKaos;
-import net.amarantha.mediascheduler.device.Projector;
+import net.amarantha.mediascheduler.audit.AuditEntry.Type;
+import net.amarantha.mediascheduler.audit.AuditLog;
+import net.amarantha.mediascheduler.device.Output;
+import net.amarantha.mediascheduler.device.OutputRegistry;
 import net.amarantha.mediascheduler.exception.*;
+import net.amarantha.mediascheduler.metrics.Metrics;
 import net.amarantha.mediascheduler.utility.Now;
+import net.amarantha.mediascheduler.utility.VirtualClock;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 
 @Singleton
 public class Scheduler {
 
-    @Inject private ArKaos mediaServer;
-    @Inject private Projector projector;
+    @Inject private OutputRegistry outputs;
     @Inject private JsonEncoder json;
+    @Inject private Storage storage;
+    @Inject private Persister persister;
 
     @Inject private Now now;
+    @Inject private Metrics metrics;
+    @Inject private AuditLog audit;
 
     public Scheduler() {}
 
@@ -25,41 +37,31 @@ public class Scheduler {
     // Cues //
     //////////
 
-    private Set<Cue> cues = new HashSet<>();
-
-    private static final String CUES_FILE = "cues.json";
+    private final CueCatalogue cues = new CueCatalogue();
 
     private void loadCues() {
-        cues = json.decodeCuesFromFile(CUES_FILE);
-        for ( Cue cue : cues ) {
+        cues.clear();
+        for ( Cue cue : storage.loadCues() ) {
+            cues.add(cue);
             nextCueId = Math.max(cue.getId()+1, nextCueId);
         }
     }
 
-    public void saveCues() {
-        json.encodeCuesToFile(CUES_FILE);
+    // A copy, in id order
+    public Set<Cue> getCues() {
+        return cues.getAll();
     }
 
-    public Set<Cue> getCues() {
-        return cues;
+    public List<Cue> findCues(String query, int offset, int limit) {
+        return cues.search(query, offset, limit);
     }
 
     public Cue getCue(long id) {
-        for ( Cue cue : cues) {
-            if ( cue.getId()==id ) {
-                return cue;
-            }
-        }
-        return null;
+        return cues.get(id);
     }
 
     public Cue getCue(String name) {
-        for ( Cue cue : cues) {
-            if ( cue.getName().equals(name) ) {
-                return cue;
-            }
-        }
-        return null;
+        return cues.get(name);
     }
 
     public long addCue(Integer number, String name) {
@@ -70,14 +72,15 @@ public class Scheduler {
     }
 
     public long addCue(Cue cue) throws DuplicateCueException {
-        if ( getCue(cue.getId())!=null || getCue(cue.getName())!=null ) {
+        if ( !cues.add(cue) ) {
             throw new DuplicateCueException();
         }
         if ( cue.getId()>=nextCueId ) {
             nextCueId = cue.getId()+1;
         }
-        cues.add(cue);
-        saveCues();
+        audit.record(Type.CUE_ADDED, null, null, cue.getId(), null, cue.getName());
+        storage.putCue(cue);
+        persister.markDirty();
         return cue.getId();
     }
 
@@ -88,16 +91,22 @@ public class Scheduler {
     public void removeCue(Cue cue) throws CueInUseException {
         List<MediaEvent> events = getEventsByCue(cue);
         if ( events.isEmpty() ) {
-            cues.remove(cue);
+            if ( cues.remove(cue.getId())!=null ) {
+                audit.record(Type.CUE_REMOVED, null, null, cue.getId(), null, cue.getName());
+                storage.removeCue(cue);
+                persister.markDirty();
+            }
         } else {
             throw new CueInUseException("Cue " + cue + " is used by " + events.size() + " events");
         }
-        saveCues();
     }
 
     void clearCues() {
+        for ( Cue cue : cues.getAll() ) {
+            storage.removeCue(cue);
+        }
         cues.clear();
-        saveCues();
+        persister.markDirty();
     }
 
     public static int nextCueId = 1;
@@ -108,53 +117,71 @@ public class Scheduler {
     // Schedules //
     ///////////////
 
-    private Map<Integer, Schedule> schedules = new LinkedHashMap<>();
-
-    private static final String SCHEDULES_FILENAME = "schedules.json";
-
     public void loadSchedules() {
-        schedules = json.decodeSchedulesFromFile(SCHEDULES_FILENAME);
-        for ( Schedule schedule : schedules.values() ) {
-            for ( MediaEvent event : schedule.getUniqueEvents() ) {
-                nextEventId = Math.max(event.getId()+1, nextEventId);
+        Map<String, Zone> loaded = storage.loadSchedules();
+        for ( Zone zone : loaded.values() ) {
+            Zone target = getOrCreateZone(zone.getName());
+            synchronized (target) {
+                target.getSchedules().putAll(zone.getSchedules());
+                target.invalidatePlan();
+            }
+            for ( Schedule schedule : zone.getSchedules().values() ) {
+                for ( MediaEvent event : schedule.getUniqueEvents() ) {
+                    nextEventId = Math.max(event.getId()+1, nextEventId);
+                }
             }
         }
+        rebuildZoneOutputs();
     }
 
+    // The changes staged with the storage are committed by the persister shortly after
     public void saveSchedules() {
-        json.encodeAllSchedulesToFile(SCHEDULES_FILENAME);
+        persister.markDirty();
     }
 
-    public static final int MAX_PRIORITY = 10;
-
     void clearSchedules() {
-        schedules.clear();
+        for ( Zone zone : zones.values() ) {
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    for ( MediaEvent event : entry.getValue().getUniqueEvents() ) {
+                        storage.removeEvent(zone.getName(), entry.getKey(), event.getId());
+                    }
+                }
+                zone.clearSchedules();
+            }
+        }
+        persister.markDirty();
     }
 
     public Schedule createSchedule(int priority) throws PriorityOutOfBoundsException {
-        if ( priority < 1 || priority > MAX_PRIORITY ) {
-            throw new PriorityOutOfBoundsException("Priority must be between 1 (lowest) and " + MAX_PRIORITY + " (highest)");
+        return createSchedule(getDefaultZone(), priority);
+    }
+
+    private Schedule createSchedule(Zone zone, int priority) throws PriorityOutOfBoundsException {
+        if ( priority < 1 ) {
+            throw new PriorityOutOfBoundsException("Priority must be 1 (lowest) or higher");
         }
-        Schedule schedule = new Schedule();
-        schedules.put(priority, schedule);
-        return schedule;
+        return zone.getOrCreateSchedule(priority);
     }
 
     public Map<Integer, Schedule> getSchedules() {
-        return schedules;
+        return getDefaultZone().getSchedules();
     }
 
     public MediaEvent getCurrentEvent() {
-        for ( int priority = MAX_PRIORITY; priority>0; priority-- ) {
-            Schedule schedule = schedules.get(priority);
-            if ( schedule!=null ) {
-                MediaEvent event = schedule.getEvent(now.now());
-                if ( event!=null ) {
-                    return event;
-                }
-            }
+        return getCurrentEvent(getDefaultZone());
+    }
+
+    public MediaEvent getCurrentEvent(String zoneName) {
+        Zone zone = zones.get(zoneName);
+        return zone==null ? null : getCurrentEvent(zone);
+    }
+
+    private MediaEvent getCurrentEvent(Zone zone) {
+        long epochMillis = now.epochMillis();
+        synchronized (zone) {
+            return zone.getPlan(epochMillis, now.getZone()).getEvent(epochMillis);
         }
-        return null;
     }
 
     public MediaEvent addEvent(MediaEvent event) throws ScheduleConflictException, CueNotFoundException {
@@ -165,38 +192,158 @@ public class Scheduler {
     }
 
     public MediaEvent addEvent(int priority, MediaEvent event) throws PriorityOutOfBoundsException, ScheduleConflictException, CueNotFoundException {
-        Cue cue = getCue(event.getCueId());
-        if ( cue ==null ) {
-            throw new CueNotFoundException("Cue List " + event.getCueId() + " not found");
+        return addEvent(DEFAULT_ZONE, priority, event);
+    }
+
+    public MediaEvent addEvent(String zoneName, int priority, MediaEvent event) throws PriorityOutOfBoundsException, ScheduleConflictException, CueNotFoundException {
+        Zone zone = insertEvent(zoneName, priority, event);
+        audit.record(Type.EVENT_ADDED, zone.getName(), null, event.getCueId(), (long) event.getId(), "priority " + priority);
+        saveSchedules();
+        checkZone(zone);
+        scheduleTransition(zone);
+        return event;
+    }
+
+    private Zone insertEvent(String zoneName, int priority, MediaEvent event) throws PriorityOutOfBoundsException, ScheduleConflictException, CueNotFoundException {
+        for ( int cueId : event.getCueIds() ) {
+            if ( getCue(cueId)==null ) {
+                throw new CueNotFoundException("Cue List " + cueId + " not found");
+            }
         }
-        Schedule schedule = schedules.get(priority);
-        if ( schedule==null ) {
-            schedule = createSchedule(priority);
+        Zone zone = getOrCreateZone(zoneName);
+        synchronized (zone) {
+            createSchedule(zone, priority).addEvent(event);
+            storage.putEvent(zone.getName(), priority, event);
+            zone.invalidatePlan();
         }
-        schedule.addEvent(event);
         if ( event.getId()>=nextEventId ) {
             nextEventId = event.getId()+1;
         }
-        saveSchedules();
-        checkSchedule();
-        return event;
+        return zone;
+    }
+
+    // Replaces the event with the same id in whichever layer holds it. The swap happens under
+    // the zone's lock, so playback never sees the schedule without one or the other.
+    public MediaEvent updateEvent(MediaEvent event) throws ScheduleConflictException, CueNotFoundException {
+        for ( int cueId : event.getCueIds() ) {
+            if ( getCue(cueId)==null ) {
+                throw new CueNotFoundException("Cue List " + cueId + " not found");
+            }
+        }
+        for ( Zone zone : zones.values() ) {
+            MediaEvent existing = null;
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    existing = entry.getValue().replaceEvent(event.getId(), event);
+                    if ( existing!=null ) {
+                        storage.putEvent(zone.getName(), entry.getKey(), event);
+                        zone.invalidatePlan();
+                        break;
+                    }
+                }
+            }
+            if ( existing!=null ) {
+                audit.record(Type.EVENT_UPDATED, zone.getName(), null, event.getCueId(), (long) event.getId(), null);
+                saveSchedules();
+                checkZone(zone);
+                scheduleTransition(zone);
+                return event;
+            }
+        }
+        return null;
     }
 
+    // Each layer finds the event through its id index, and only a zone that had it is rechecked
     public boolean removeEvent(long eventId) {
         boolean removed = false;
-        for ( Entry<Integer, Schedule> entry : schedules.entrySet() ) {
-            removed |= entry.getValue().removeEvent(eventId);
+        for ( Zone zone : zones.values() ) {
+            boolean removedFromZone = false;
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    if ( entry.getValue().removeEvent(eventId) ) {
+                        storage.removeEvent(zone.getName(), entry.getKey(), eventId);
+                        removedFromZone = true;
+                    }
+                }
+                if ( removedFromZone ) {
+                    zone.invalidatePlan();
+                }
+            }
+            if ( removedFromZone ) {
+                audit.record(Type.EVENT_REMOVED, zone.getName(), null, null, eventId, null);
+                checkZone(zone);
+                scheduleTransition(zone);
+            }
+            removed |= removedFromZone;
+        }
+        if ( removed ) {
+            saveSchedules();
         }
-        saveSchedules();
-        checkSchedule();
         return removed;
     }
 
+    public MediaEvent overrideOccurrence(long eventId, EventOverride override) throws ScheduleConflictException {
+        for ( Zone zone : zones.values() ) {
+            MediaEvent series = null;
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    series = entry.getValue().getEventById(eventId);
+                    if ( series!=null ) {
+                        entry.getValue().addOverride(series, override);
+                        storage.putEvent(zone.getName(), entry.getKey(), series);
+                        zone.invalidatePlan();
+                        break;
+                    }
+                }
+            }
+            if ( series!=null ) {
+                audit.record(Type.OCCURRENCE_OVERRIDDEN, zone.getName(), null, override.getCueId(), eventId,
+                        override.getDate() + ( override.isCancelled() ? " cancelled" : " replaced" ));
+                saveSchedules();
+                checkZone(zone);
+                scheduleTransition(zone);
+                return series;
+            }
+        }
+        return null;
+    }
+
+    public boolean removeOverride(long eventId, LocalDate date) throws ScheduleConflictException {
+        for ( Zone zone : zones.values() ) {
+            boolean removed = false;
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    MediaEvent series = entry.getValue().getEventById(eventId);
+                    if ( series!=null ) {
+                        removed = entry.getValue().removeOverride(series, date);
+                        if ( removed ) {
+                            storage.putEvent(zone.getName(), entry.getKey(), series);
+                            zone.invalidatePlan();
+                        }
+                        break;
+                    }
+                }
+            }
+            if ( removed ) {
+                audit.record(Type.OVERRIDE_REMOVED, zone.getName(), null, null, eventId, date.toString());
+                saveSchedules();
+                checkZone(zone);
+                scheduleTransition(zone);
+                return true;
+            }
+        }
+        return false;
+    }
+
     public MediaEvent getEventById(long eventId) {
-        for ( Entry<Integer, Schedule> entry : schedules.entrySet() ) {
-            MediaEvent event = entry.getValue().getEventById(eventId);
-            if ( event!=null ) {
-                return event;
+        for ( Zone zone : zones.values() ) {
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    MediaEvent event = entry.getValue().getEventById(eventId);
+                    if ( event!=null ) {
+                        return event;
+                    }
+                }
             }
         }
         return null;
@@ -204,22 +351,60 @@ public class Scheduler {
 
     public List<MediaEvent> getEventsByCue(Cue cue) {
         List<MediaEvent> result = new ArrayList<>();
-        for ( Entry<Integer, Schedule> entry : schedules.entrySet() ) {
-            Schedule schedule = entry.getValue();
-            result.addAll(schedule.getEventsByCueList(cue));
+        for ( Zone zone : zones.values() ) {
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    result.addAll(entry.getValue().getEventsByCueList(cue));
+                }
+            }
         }
         return result;
     }
 
+    // Every occurrence the event would clash with over the horizon, in each layer of the zone,
+    // and the nearest free slots of its length in its own layer that aren't already past
+    public ConflictReport getConflictReport(String zoneName, int priority, MediaEvent proposed, int horizonDays, int slotCount) {
+        Zone zone = zones.get(zoneName);
+        ZoneId zoneId = ( zone==null || zone.getTimeZone()==null ? now.getZone() : zone.getTimeZone() );
+        LocalDateTime notBefore = LocalDateTime.ofInstant(Instant.ofEpochMilli(now.epochMillis()), zoneId);
+        if ( zone==null ) {
+            return ConflictFinder.find(Collections.emptyMap(), priority, proposed, notBefore, horizonDays, slotCount);
+        }
+        synchronized (zone) {
+            return ConflictFinder.find(zone.getSchedules(), priority, proposed, notBefore, horizonDays, slotCount);
+        }
+    }
+
+    // The event is added to its new layer and dropped from the old under the zone's lock, so
+    // playback never sees it in both, or in neither
     public MediaEvent switchPriority(long eventId, int priority) throws PriorityOutOfBoundsException, ScheduleConflictException, CueNotFoundException {
-        for ( Entry<Integer, Schedule> entry : schedules.entrySet() ) {
-            Schedule oldSchedule = entry.getValue();
-            MediaEvent event = oldSchedule.getEventById(eventId);
+        for ( Zone zone : zones.values() ) {
+            MediaEvent event = null;
+            int oldPriority = 0;
+            synchronized (zone) {
+                Schedule oldSchedule = null;
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    event = entry.getValue().getEventById(eventId);
+                    if ( event!=null ) {
+                        oldPriority = entry.getKey();
+                        oldSchedule = entry.getValue();
+                        break;
+                    }
+                }
+                if ( event!=null ) {
+                    createSchedule(zone, priority).addEvent(event);
+                    oldSchedule.removeEvent(event.getId());
+                    storage.putEvent(zone.getName(), priority, event);
+                    storage.removeEvent(zone.getName(), oldPriority, event.getId());
+                    zone.invalidatePlan();
+                }
+            }
             if ( event!=null ) {
-                addEvent(priority, event);
-                oldSchedule.removeEvent(event.getId());
+                audit.record(Type.EVENT_MOVED, zone.getName(), null, event.getCueId(), eventId,
+                        "priority " + oldPriority + " to " + priority);
                 saveSchedules();
-                checkSchedule();
+                checkZone(zone);
+                scheduleTransition(zone);
                 return event;
             }
         }
@@ -227,58 +412,433 @@ public class Scheduler {
     }
 
 
+    ///////////
+    // Zones //
+    ///////////
+
+    public static final String DEFAULT_ZONE = "default";
+
+    private final Map<String, Zone> zones = new ConcurrentHashMap<>();
+    private volatile Map<Zone, List<Output>> zoneOutputs = new HashMap<>();
+    private int zoneOutputsRevision = -1;
+
+    {
+        zones.put(DEFAULT_ZONE, new Zone(DEFAULT_ZONE));
+    }
+
+    private void loadZones() {
+        for ( Zone zone : storage.loadZones() ) {
+            Zone target = getOrCreateZone(zone.getName());
+            target.setOutputs(zone.getOutputs());
+            target.setTimeZone(zone.getTimeZone());
+        }
+        rebuildZoneOutputs();
+    }
+
+    public void saveZones() {
+        for ( Zone zone : zones.values() ) {
+            storage.putZone(zone);
+        }
+        persister.markDirty();
+    }
+
+    public Collection<Zone> getZones() {
+        return zones.values();
+    }
+
+    public Zone getZone(String name) {
+        return zones.get(name);
+    }
+
+    public Zone getDefaultZone() {
+        return zones.get(DEFAULT_ZONE);
+    }
+
+    public Zone createZone(String name, Set<String> outputNames) {
+        return createZone(name, outputNames, null);
+    }
+
+    public Zone createZone(String name, Set<String> outputNames, ZoneId timeZone) {
+        Zone zone = getOrCreateZone(name);
+        zone.setOutputs(outputNames==null ? new HashSet<>() : outputNames);
+        synchronized (zone) {
+            zone.setTimeZone(timeZone);
+        }
+        rebuildZoneOutputs();
+        audit.record(Type.ZONE_CREATED, zone.getName(), null, null, null, String.join(",", zone.getOutputs()));
+        saveZones();
+        checkZone(zone);
+        scheduleTransition(zone);
+        return zone;
+    }
+
+    private Zone getOrCreateZone(String name) {
+        return zones.computeIfAbsent(name==null ? DEFAULT_ZONE : name, Zone::new);
+    }
+
+    private synchronized void rebuildZoneOutputs() {
+        zoneOutputsRevision = outputs.getRevision();
+        Set<String> claimed = new HashSet<>();
+        for ( Zone zone : zones.values() ) {
+            claimed.addAll(zone.getOutputs());
+        }
+        Map<Zone, List<Output>> result = new HashMap<>();
+        for ( Zone zone : zones.values() ) {
+            List<Output> driven = new ArrayList<>();
+            for ( Output output : outputs.getOutputs() ) {
+                if ( zone.getOutputs().isEmpty() ? !claimed.contains(output.getName()) : zone.getOutputs().contains(output.getName()) ) {
+                    driven.add(output);
+                }
+            }
+            result.put(zone, driven);
+        }
+        zoneOutputs = result;
+    }
+
+    public void pause(String zoneName, boolean paused) {
+        Zone zone = zones.get(zoneName);
+        if ( zone!=null ) {
+            zone.setPaused(paused);
+            audit.record(paused ? Type.PAUSED : Type.RESUMED, zoneName, null, null, null, null);
+            if ( paused ) {
+                for ( Output output : getOutputs(zone) ) {
+                    output.stopAll();
+                }
+            } else {
+                checkZone(zone);
+            }
+        }
+    }
+
+    private List<Output> getOutputs(Zone zone) {
+        if ( zoneOutputsRevision!=outputs.getRevision() ) {
+            rebuildZoneOutputs();
+        }
+        List<Output> result = zoneOutputs.get(zone);
+        return result==null ? Collections.emptyList() : result;
+    }
+
+
     ////////////////////////
     // Startup & Shutdown //
     ////////////////////////
 
-    private Timer timer;
-    private boolean paused = false;
+    public static final long TICK_MILLIS = 100;
+
+    private ScheduledExecutorService ticker;
+    private ExecutorService zoneWorkers;
+    // Replaced by the tick thread when the clock moves backwards
+    private volatile TimerWheel wheel;
+    private volatile boolean paused = false;
 
     public void startup() {
-        mediaServer.startup();
-        projector.switchOn(true);
+        audit.startup();
+        outputs.startup();
+        zoneWorkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "zone-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        storage.open();
         loadCues();
+        loadZones();
         loadSchedules();
+        persister.startup();
+        compactSchedules();
         startSchedulerLoop();
     }
 
+    private void startWheel() {
+        wheel = new TimerWheel(TICK_MILLIS, now.epochMillis());
+        checkSchedule();
+        for ( Zone zone : zones.values() ) {
+            scheduleTransition(zone);
+        }
+    }
+
     private void startSchedulerLoop() {
-        timer = new Timer();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                if ( !paused ) {
-                    checkSchedule();
+        startWheel();
+        scheduleCompaction();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "scheduler-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        if ( paused ) {
+            return;
+        }
+        long start = System.nanoTime();
+        long nowMillis = now.epochMillis();
+        if ( nowMillis < wheel.getTime() - TICK_MILLIS ) {
+            // Clock moved backwards: re-arm every zone against the new time
+            wheel = new TimerWheel(TICK_MILLIS, nowMillis);
+            checkSchedule();
+            for ( Zone zone : zones.values() ) {
+                scheduleTransition(zone);
+            }
+            scheduleCompaction();
+        } else {
+            wheel.advanceTo(nowMillis);
+        }
+        metrics.histogram(Metrics.TICK_DURATION).recordSince(start);
+    }
+
+    // The tick thread re-arms every zone after replacing the wheel, but a transition set here on
+    // the old wheel just after that would never fire, so it is armed again on the new one
+    private void scheduleTransition(Zone zone) {
+        TimerWheel currentWheel;
+        do {
+            currentWheel = wheel;
+            if ( currentWheel==null ) {
+                return;
+            }
+            long deadline = getNextTransition(zone);
+            zone.setTransition(currentWheel.schedule(deadline, () -> {
+                Runnable transition = () -> {
+                    metrics.histogram(Metrics.TRANSITION_LAG).record(Math.max(0, now.epochMillis() - deadline) * 1000);
+                    checkZone(zone);
+                    scheduleTransition(zone);
+                };
+                if ( zoneWorkers==null ) {
+                    transition.run();
+                } else {
+                    zoneWorkers.execute(transition);
+                }
+            }));
+        } while ( wheel!=currentWheel );
+    }
+
+
+    ////////////////
+    // Compaction //
+    ////////////////
+
+    private static final String ARCHIVE_FILENAME = "archive.json";
+    private static final long COMPACTION_DELAY_MILLIS = 5 * 60 * 1000;
+
+    private TimerWheel.Timeout compaction;
+
+    // Called from both the tick thread and the compaction job
+    private synchronized void scheduleCompaction() {
+        TimerWheel currentWheel = wheel;
+        if ( currentWheel==null ) {
+            return;
+        }
+        if ( compaction!=null ) {
+            compaction.cancel();
+        }
+        long nextMidnight = now.date().plusDays(1).atStartOfDay(now.getZone()).toInstant().toEpochMilli();
+        compaction = currentWheel.schedule(nextMidnight + COMPACTION_DELAY_MILLIS, () -> {
+            Runnable job = () -> {
+                compactSchedules();
+                scheduleCompaction();
+            };
+            if ( zoneWorkers==null ) {
+                job.run();
+            } else {
+                zoneWorkers.execute(job);
+            }
+        });
+    }
+
+    int compactSchedules() {
+        // Zones may run ahead of the scheduler clock, so allow a day's grace
+        LocalDate cutoff = now.date().minusDays(1);
+        int archived = 0;
+        boolean changed = false;
+        for ( Zone zone : zones.values() ) {
+            Map<Integer, List<MediaEvent>> expired = new HashMap<>();
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    List<MediaEvent> events = entry.getValue().getExpiredEvents(cutoff);
+                    if ( !events.isEmpty() ) {
+                        expired.put(entry.getKey(), events);
+                    }
+                }
+            }
+            // The archive is appended to with the zone lock released, and only what reaches it
+            // is removed. The rest stays in the schedule for the next compaction to try again.
+            Map<Integer, Set<Integer>> appended = new HashMap<>();
+            for ( Entry<Integer, List<MediaEvent>> entry : expired.entrySet() ) {
+                try {
+                    json.appendEventsToFile(ARCHIVE_FILENAME, zone.getName(), entry.getKey(), entry.getValue());
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    continue;
                 }
+                Set<Integer> ids = new HashSet<>();
+                for ( MediaEvent event : entry.getValue() ) {
+                    ids.add(event.getId());
+                }
+                appended.put(entry.getKey(), ids);
+            }
+            List<MediaEvent> removed = new ArrayList<>();
+            synchronized (zone) {
+                for ( Entry<Integer, Schedule> entry : zone.getSchedules().entrySet() ) {
+                    int priority = entry.getKey();
+                    List<MediaEvent> pruned = new ArrayList<>();
+                    List<MediaEvent> archivedEvents = entry.getValue().removeExpiredEvents(cutoff, appended.getOrDefault(priority, Collections.emptySet()), pruned);
+                    for ( MediaEvent event : archivedEvents ) {
+                        storage.removeEvent(zone.getName(), priority, event.getId());
+                    }
+                    for ( MediaEvent event : pruned ) {
+                        storage.putEvent(zone.getName(), priority, event);
+                    }
+                    removed.addAll(archivedEvents);
+                    changed |= !archivedEvents.isEmpty() || !pruned.isEmpty();
+                }
+                zone.invalidatePlan();
             }
-        }, 0, 1000);
+            for ( MediaEvent event : removed ) {
+                audit.record(Type.EVENT_ARCHIVED, zone.getName(), null, event.getCueId(), (long) event.getId(), null);
+            }
+            archived += removed.size();
+        }
+        if ( changed ) {
+            saveSchedules();
+        }
+        return archived;
+    }
+
+
+    ////////////////
+    // Simulation //
+    ////////////////
+
+    public void startSimulation() {
+        outputs.startup(false);
+        storage.open();
+        loadCues();
+        loadZones();
+        loadSchedules();
+        startWheel();
+    }
+
+    int runSimulation(VirtualClock clock, long untilMillis) {
+        int steps = 0;
+        long next;
+        while ( (next = wheel.getNextDueTime()) <= untilMillis ) {
+            clock.setMillis(Math.max(next, clock.millis()));
+            wheel.advanceTo(clock.millis());
+            steps++;
+        }
+        clock.setMillis(untilMillis);
+        return steps;
+    }
+
+    private long getNextTransition(Zone zone) {
+        long epochMillis = now.epochMillis();
+        synchronized (zone) {
+            DayPlan plan = zone.getPlan(epochMillis, now.getZone());
+            long next = plan.getNextTransition(epochMillis);
+            // Playlist steps inside running events fire from the same timer as event boundaries
+            List<MediaEvent> activeEvents = plan.getActiveEvents(epochMillis);
+            long[] starts = plan.getActiveStarts(epochMillis);
+            for ( int i = 0; i < activeEvents.size(); i++ ) {
+                Playlist playlist = activeEvents.get(i).getPlaylist();
+                if ( playlist!=null ) {
+                    long change = playlist.getNextChange(epochMillis - starts[i], TICK_MILLIS);
+                    if ( change!=Long.MAX_VALUE ) {
+                        next = Math.min(next, starts[i] + change);
+                    }
+                }
+            }
+            return next;
+        }
     }
 
     public void pause(boolean paused) {
+        if ( this.paused!=paused ) {
+            audit.record(paused ? Type.PAUSED : Type.RESUMED, null, null, null, null, null);
+        }
         this.paused = paused;
     }
 
     void checkSchedule() {
-        MediaEvent currentEvent = getCurrentEvent();
-        Cue nextCue = ( currentEvent==null ? null : getCue(currentEvent.getCueId()) );
-        Cue currentCue = mediaServer.getCurrentCue();
-        if ( nextCue ==null ) {
-            if ( currentCue !=null ) {
-                mediaServer.stopAll();
+        long start = System.nanoTime();
+        Collection<Zone> toCheck = zones.values();
+        if ( zoneWorkers==null || toCheck.size()==1 ) {
+            for ( Zone zone : toCheck ) {
+                checkZone(zone);
             }
         } else {
-            if ( !nextCue.equals(currentCue) ) {
-                mediaServer.startCueList(getCue(currentEvent.getCueId()));
+            List<Callable<Void>> tasks = new ArrayList<>(toCheck.size());
+            for ( Zone zone : toCheck ) {
+                tasks.add(() -> {
+                    checkZone(zone);
+                    return null;
+                });
             }
+            try {
+                zoneWorkers.invokeAll(tasks);
+            } catch (InterruptedException ignored) {}
         }
+        metrics.histogram(Metrics.CHECK_DURATION).recordSince(start);
+    }
+
+    private void checkZone(Zone zone) {
+        if ( zone.isPaused() ) {
+            return;
+        }
+        long epochMillis = now.epochMillis();
+        List<MediaEvent> activeEvents;
+        long[] starts;
+        synchronized (zone) {
+            DayPlan plan = zone.getPlan(epochMillis, now.getZone());
+            activeEvents = plan.getActiveEvents(epochMillis);
+            starts = plan.getActiveStarts(epochMillis);
+        }
+        zone.setCurrentEvent(activeEvents.isEmpty() ? null : activeEvents.get(0));
+        for ( Output output : getOutputs(zone) ) {
+            showOn(output, activeEvents, starts, epochMillis);
+        }
+    }
+
+    private void showOn(Output output, List<MediaEvent> activeEvents, long[] starts, long epochMillis) {
+        for ( int i = 0; i < activeEvents.size(); i++ ) {
+            MediaEvent event = activeEvents.get(i);
+            Playlist playlist = event.getPlaylist();
+            if ( playlist==null ) {
+                Cue cue = getCue(event.getCueId());
+                if ( cue!=null && cue.isRoutedTo(output.getName()) ) {
+                    output.showCue(cue);
+                    return;
+                }
+            } else {
+                long elapsed = epochMillis - starts[i];
+                Cue cue = getCue(playlist.getItem(elapsed).getCueId());
+                if ( cue!=null && cue.isRoutedTo(output.getName()) ) {
+                    PlaylistItem fading = playlist.getFadingItem(elapsed);
+                    output.showCue(cue, fading==null ? null : getCue(fading.getCueId()), playlist.getLevel(elapsed));
+                    return;
+                }
+            }
+        }
+        output.showCue(null);
+    }
+
+    public void stopAll() {
+        pause(true);
+        outputs.stopAll();
     }
 
     public void shutdown() {
-        mediaServer.shutdown();
-        projector.switchOn(false);
-        if ( timer!=null ) {
-            timer.cancel();
+        if ( ticker!=null ) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+        if ( zoneWorkers!=null ) {
+            zoneWorkers.shutdownNow();
+            zoneWorkers = null;
         }
+        outputs.shutdown();
+        audit.shutdown();
+        persister.shutdown();
+        storage.close();
     }
 
 }
@@ -0,0 +1,49 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Inject;
+import net.amarantha.mediascheduler.midi.MidiRecorder;
+import net.amarantha.mediascheduler.utility.Now;
+import net.amarantha.mediascheduler.utility.VirtualClock;
+
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Simulator {
+
+    @Inject private Scheduler scheduler;
+    @Inject private Now now;
+    @Inject private MidiRecorder recorder;
+
+    // Runs in the installation's time zone, so the commands are the ones the box would send
+    public List<String> simulate(LocalDateTime from, LocalDateTime to, PrintStream report) {
+        ZoneId zone = now.getZone();
+        VirtualClock clock = new VirtualClock(from, zone);
+        long untilMillis = to.atZone(zone).toInstant().toEpochMilli();
+        long fromMillis = clock.millis();
+        now.setClock(clock);
+
+        long wallStart = System.nanoTime();
+        scheduler.startSimulation();
+        int transitions = scheduler.runSimulation(clock, untilMillis);
+        scheduler.shutdown();
+        long wallNanos = System.nanoTime() - wallStart;
+
+        List<String> commands;
+        synchronized (recorder.getRecording()) {
+            commands = new ArrayList<>(recorder.getRecording());
+        }
+
+        double simulatedMillis = untilMillis - fromMillis;
+        double wallMillis = wallNanos / 1_000_000.0;
+        report.println("Simulated " + from + " to " + to);
+        report.println("Transitions: " + transitions + ", MIDI commands: " + commands.size());
+        report.printf("Wall time: %.1f ms, speed: %.0fx real time, %.2f us/transition%n",
+                wallMillis, simulatedMillis / Math.max(wallMillis, 0.001), transitions==0 ? 0.0 : wallNanos / 1000.0 / transitions);
+
+        return commands;
+    }
+
+}
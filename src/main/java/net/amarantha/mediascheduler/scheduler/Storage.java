@@ -0,0 +1,63 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+// Where events, cues, zones and properties are kept between runs. Changes are staged a row at
+// a time with the put and remove calls, and the next commit makes everything staged durable
+// together: after a crash the store reads back as of the last commit, never part way through.
+public interface Storage {
+
+    String STORAGE_PROPERTY = "storage";
+    String MVSTORE = "mvstore";
+
+    void open();
+
+    // Commits anything still staged
+    void close();
+
+    void commit();
+
+
+    ////////////
+    // Events //
+    ////////////
+
+    Map<String, Zone> loadSchedules();
+
+    void putEvent(String zone, int priority, MediaEvent event);
+
+    void removeEvent(String zone, int priority, long eventId);
+
+
+    //////////
+    // Cues //
+    //////////
+
+    Set<Cue> loadCues();
+
+    void putCue(Cue cue);
+
+    void removeCue(Cue cue);
+
+
+    ///////////
+    // Zones //
+    ///////////
+
+    List<Zone> loadZones();
+
+    void putZone(Zone zone);
+
+
+    ////////////////
+    // Properties //
+    ////////////////
+
+    Properties loadProperties();
+
+    void putProperty(String name, String value);
+
+}
@@ -0,0 +1,244 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimerWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    private static final int OVERFLOW = LEVELS;
+    private static final int EXPIRED = -1;
+    private static final int DETACHED = -2;
+
+    private final long tickMillis;
+
+    private final Timeout[][] slots = new Timeout[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private Timeout overflow;
+    private Timeout expired;
+
+    private long currentTick;
+    private int size = 0;
+
+    public TimerWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public synchronized long getTime() {
+        return currentTick * tickMillis;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getNextDueTime() {
+        if ( expired!=null ) {
+            return currentTick * tickMillis;
+        }
+        long next = nextDueTick();
+        return next==Long.MAX_VALUE ? Long.MAX_VALUE : next * tickMillis;
+    }
+
+
+    //////////////
+    // Schedule //
+    //////////////
+
+    public synchronized Timeout schedule(long deadlineMillis, Runnable task) {
+        Timeout timeout = new Timeout(this, -Math.floorDiv(-deadlineMillis, tickMillis), deadlineMillis, task);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    synchronized boolean cancel(Timeout timeout) {
+        if ( timeout.level==DETACHED ) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    private void place(Timeout timeout) {
+        long deadline = timeout.deadlineTick;
+        if ( deadline <= currentTick ) {
+            timeout.level = EXPIRED;
+            expired = push(expired, timeout);
+            return;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(deadline ^ currentTick)) / SLOT_BITS;
+        if ( level >= LEVELS ) {
+            timeout.level = OVERFLOW;
+            overflow = push(overflow, timeout);
+            return;
+        }
+        int slot = (int) (deadline >>> (level * SLOT_BITS)) & SLOT_MASK;
+        timeout.level = level;
+        timeout.slot = slot;
+        slots[level][slot] = push(slots[level][slot], timeout);
+        occupied[level] |= 1L << slot;
+    }
+
+    private Timeout push(Timeout head, Timeout timeout) {
+        timeout.prev = null;
+        timeout.next = head;
+        if ( head!=null ) {
+            head.prev = timeout;
+        }
+        return timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if ( timeout.prev!=null ) {
+            timeout.prev.next = timeout.next;
+        } else if ( timeout.level==EXPIRED ) {
+            expired = timeout.next;
+        } else if ( timeout.level==OVERFLOW ) {
+            overflow = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+            if ( timeout.next==null ) {
+                occupied[timeout.level] &= ~(1L << timeout.slot);
+            }
+        }
+        if ( timeout.next!=null ) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.level = DETACHED;
+    }
+
+
+    /////////////
+    // Advance //
+    /////////////
+
+    public void advanceTo(long nowMillis) {
+        List<Timeout> due = collectExpired(Math.floorDiv(nowMillis, tickMillis));
+        if ( due!=null ) {
+            for ( Timeout timeout : due ) {
+                timeout.task.run();
+            }
+        }
+    }
+
+    private synchronized List<Timeout> collectExpired(long targetTick) {
+        List<Timeout> result = null;
+        while ( true ) {
+            result = drainExpired(result);
+            long next = nextDueTick();
+            if ( next > targetTick ) {
+                currentTick = Math.max(currentTick, targetTick);
+                break;
+            }
+            currentTick = next;
+            if ( overflow!=null && (currentTick & ((1L << (LEVELS * SLOT_BITS)) - 1))==0 ) {
+                Timeout list = overflow;
+                overflow = null;
+                replace(list);
+            }
+            for ( int level = LEVELS - 1; level >= 0; level-- ) {
+                long lowMask = (1L << (level * SLOT_BITS)) - 1;
+                int slot = (int) (currentTick >>> (level * SLOT_BITS)) & SLOT_MASK;
+                if ( (currentTick & lowMask)==0 && (occupied[level] & (1L << slot))!=0 ) {
+                    Timeout list = slots[level][slot];
+                    slots[level][slot] = null;
+                    occupied[level] &= ~(1L << slot);
+                    replace(list);
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<Timeout> drainExpired(List<Timeout> result) {
+        while ( expired!=null ) {
+            if ( result==null ) {
+                result = new ArrayList<>();
+            }
+            Timeout timeout = expired;
+            unlink(timeout);
+            size--;
+            result.add(timeout);
+        }
+        return result;
+    }
+
+    private void replace(Timeout list) {
+        while ( list!=null ) {
+            Timeout next = list.next;
+            list.prev = null;
+            list.next = null;
+            place(list);
+            list = next;
+        }
+    }
+
+    private long nextDueTick() {
+        long next = Long.MAX_VALUE;
+        for ( int level = 0; level < LEVELS; level++ ) {
+            if ( occupied[level]!=0 ) {
+                int shift = (level + 1) * SLOT_BITS;
+                long base = (currentTick >>> shift) << shift;
+                long due = base | ((long) Long.numberOfTrailingZeros(occupied[level]) << (level * SLOT_BITS));
+                next = Math.min(next, due);
+            }
+        }
+        if ( overflow!=null ) {
+            next = Math.min(next, overflowDueTick());
+        }
+        return next;
+    }
+
+    private long overflowDueTick() {
+        int shift = LEVELS * SLOT_BITS;
+        return ((currentTick >>> shift) + 1) << shift;
+    }
+
+
+    /////////////
+    // Timeout //
+    /////////////
+
+    public static class Timeout {
+
+        private final TimerWheel wheel;
+        private final long deadlineTick;
+        private final long deadlineMillis;
+        private final Runnable task;
+
+        private int level = DETACHED;
+        private int slot;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, long deadlineTick, long deadlineMillis, Runnable task) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.deadlineMillis = deadlineMillis;
+            this.task = task;
+        }
+
+        public long getDeadline() {
+            return deadlineMillis;
+        }
+
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+
+public class Zone {
+
+    private final String name;
+
+    private Set<String> outputs = new HashSet<>();
+
+    private ZoneId timeZone;
+
+    private Map<Integer, Schedule> schedules = new TreeMap<>(Collections.reverseOrder());
+
+    private volatile boolean paused = false;
+    private volatile MediaEvent currentEvent;
+
+    private TimerWheel.Timeout transition;
+
+    public Zone(String name) {
+        this(name, null, null);
+    }
+
+    @JsonCreator
+    public Zone(@JsonProperty("name") String name, @JsonProperty("outputs") Set<String> outputs, @JsonProperty("timeZone") String timeZone) {
+        this.name = name;
+        if ( outputs!=null ) {
+            this.outputs.addAll(outputs);
+        }
+        if ( timeZone!=null ) {
+            this.timeZone = ZoneId.of(timeZone);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<String> getOutputs() {
+        return outputs;
+    }
+
+    public void setOutputs(Set<String> outputs) {
+        this.outputs = outputs;
+    }
+
+    @JsonIgnore
+    public ZoneId getTimeZone() {
+        return timeZone;
+    }
+
+    public void setTimeZone(ZoneId timeZone) {
+        this.timeZone = timeZone;
+        plan = null;
+    }
+
+    @JsonProperty("timeZone")
+    String getTimeZoneId() {
+        return timeZone==null ? null : timeZone.getId();
+    }
+
+
+    ///////////////
+    // Schedules //
+    ///////////////
+
+    @JsonIgnore
+    public Map<Integer, Schedule> getSchedules() {
+        return schedules;
+    }
+
+    Schedule getSchedule(int priority) {
+        return schedules.get(priority);
+    }
+
+    Schedule getOrCreateSchedule(int priority) {
+        Schedule schedule = schedules.get(priority);
+        if ( schedule==null ) {
+            schedule = new Schedule();
+            schedules.put(priority, schedule);
+        }
+        return schedule;
+    }
+
+    void clearSchedules() {
+        schedules.clear();
+        plan = null;
+    }
+
+
+    //////////////
+    // Day Plan //
+    //////////////
+
+    private DayPlan plan;
+
+    DayPlan getPlan(long epochMillis, ZoneId defaultTimeZone) {
+        if ( plan==null || !plan.covers(epochMillis) ) {
+            ZoneId zoneId = ( timeZone==null ? defaultTimeZone : timeZone );
+            plan = DayPlan.build(schedules, Instant.ofEpochMilli(epochMillis).atZone(zoneId).toLocalDate(), zoneId);
+        }
+        return plan;
+    }
+
+    void invalidatePlan() {
+        plan = null;
+    }
+
+    Integer getPriorityOf(long eventId) {
+        for ( Map.Entry<Integer, Schedule> entry : schedules.entrySet() ) {
+            if ( entry.getValue().hasEvent(eventId) ) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+
+    ///////////
+    // State //
+    ///////////
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    @JsonIgnore
+    public MediaEvent getCurrentEvent() {
+        return currentEvent;
+    }
+
+    void setCurrentEvent(MediaEvent currentEvent) {
+        this.currentEvent = currentEvent;
+    }
+
+    synchronized void setTransition(TimerWheel.Timeout transition) {
+        if ( this.transition!=null ) {
+            this.transition.cancel();
+        }
+        this.transition = transition;
+    }
+
+}
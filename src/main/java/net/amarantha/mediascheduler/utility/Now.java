@@ -1,19 +1,152 @@
 package net.amarantha.mediascheduler.utility;
 
 import javax.inject.Singleton;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.ZoneOffset;
+import java.time.*;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.function.LongSupplier;
 
 @Singleton
 public class Now {
 
-    public LocalDateTime now() {
-        if ( offset==null ) {
-            return LocalDateTime.now();
+    public static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private static final long RESYNC_MILLIS = 60_000;
+    private static final long MAX_HOLD_MILLIS = 5 * 60_000;
+
+    private LongSupplier wallClock = System::currentTimeMillis;
+    private LongSupplier nanoClock = System::nanoTime;
+
+    public Now() {
+        anchor(wallClock.getAsLong());
+    }
+
+    // Stands in for the system clocks in tests
+    synchronized void setSystemClocks(LongSupplier wallClock, LongSupplier nanoClock) {
+        this.wallClock = wallClock;
+        this.nanoClock = nanoClock;
+        lastSystemMillis = Long.MIN_VALUE;
+        anchor(wallClock.getAsLong());
+    }
+
+
+    ///////////
+    // Clock //
+    ///////////
+
+    private Clock clock = null;
+    private ZoneId zone = ZoneId.systemDefault();
+
+    public synchronized void setClock(Clock clock) {
+        this.clock = clock;
+        zone = ( clock==null ? ZoneId.systemDefault() : clock.getZone() );
+        zoneValidFrom = Long.MAX_VALUE;
+        offsetMillis = 0;
+    }
+
+    public synchronized Clock getClock() {
+        return clock==null ? Clock.system(zone) : clock;
+    }
+
+    public synchronized ZoneId getZone() {
+        return zone;
+    }
+
+    // System time runs from a monotonic anchor, re-synced to the wall clock every minute.
+    // Small backward corrections are held rather than replayed so transitions never fire twice.
+
+    private long baseWallMillis;
+    private long baseNanos;
+    private long lastSystemMillis = Long.MIN_VALUE;
+
+    private void anchor(long wallMillis) {
+        baseWallMillis = wallMillis;
+        baseNanos = nanoClock.getAsLong();
+    }
+
+    private long systemMillis() {
+        long elapsed = (nanoClock.getAsLong() - baseNanos) / 1_000_000;
+        if ( elapsed >= RESYNC_MILLIS ) {
+            anchor(wallClock.getAsLong());
+            elapsed = 0;
         }
-        return LocalDateTime.ofEpochSecond(LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) + offset, 0, ZoneOffset.UTC);
+        long result = baseWallMillis + elapsed;
+        if ( result < lastSystemMillis && lastSystemMillis - result < MAX_HOLD_MILLIS ) {
+            result = lastSystemMillis;
+        }
+        lastSystemMillis = result;
+        return result;
+    }
+
+
+    ////////////////
+    // Primitives //
+    ////////////////
+
+    public synchronized long epochMillis() {
+        return rawEpochMillis() + offsetMillis;
+    }
+
+    private long rawEpochMillis() {
+        return clock==null ? systemMillis() : clock.millis();
+    }
+
+    public synchronized long millis() {
+        long epochMillis = epochMillis();
+        return epochMillis + zoneOffset(epochMillis);
+    }
+
+    public long epochDay() {
+        return epochDay(millis());
+    }
+
+    public int secondOfDay() {
+        return secondOfDay(millis());
+    }
+
+    public int minuteOfDay() {
+        return secondOfDay() / 60;
+    }
+
+    public static long epochDay(long localMillis) {
+        return Math.floorDiv(localMillis, MILLIS_PER_DAY);
+    }
+
+    public static int secondOfDay(long localMillis) {
+        return (int) (Math.floorMod(localMillis, MILLIS_PER_DAY) / 1000);
+    }
+
+    public static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static LocalDateTime toDateTime(long localMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(localMillis, 1000), (int) Math.floorMod(localMillis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private long zoneOffsetMillis;
+    private long zoneValidFrom = Long.MAX_VALUE;
+    private long zoneValidUntil = Long.MIN_VALUE;
+
+    private long zoneOffset(long epochMillis) {
+        if ( epochMillis < zoneValidFrom || epochMillis >= zoneValidUntil ) {
+            ZoneRules rules = zone.getRules();
+            Instant instant = Instant.ofEpochMilli(epochMillis);
+            zoneOffsetMillis = rules.getOffset(instant).getTotalSeconds() * 1000L;
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            zoneValidFrom = epochMillis;
+            zoneValidUntil = ( next==null ? Long.MAX_VALUE : next.getInstant().toEpochMilli() );
+        }
+        return zoneOffsetMillis;
+    }
+
+
+    ////////////////
+    // Date/Times //
+    ////////////////
+
+    public LocalDateTime now() {
+        return toDateTime(millis());
     }
 
     public LocalDate date() {
@@ -24,7 +157,12 @@ public class Now {
         return now().toLocalTime();
     }
 
-    private Long offset = null;
+
+    ////////////
+    // Offset //
+    ////////////
+
+    private long offsetMillis = 0;
 
     public void setDate(String date) {
         setDateTime(date, time().toString());
@@ -34,13 +172,14 @@ public class Now {
         setDateTime(date().toString(), time);
     }
 
-    public void setDateTime(String date, String time) {
+    // The target is placed in the zone's own offset for that date, not the current one
+    public synchronized void setDateTime(String date, String time) {
         LocalDateTime target = LocalDateTime.parse(date + "T" + time);
-        offset = target.toEpochSecond(ZoneOffset.UTC) - LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+        offsetMillis = target.atZone(zone).toInstant().toEpochMilli() - rawEpochMillis();
     }
 
-    public void pushSeconds(long seconds) {
-        offset += seconds;
+    public synchronized void pushSeconds(long seconds) {
+        offsetMillis += seconds * 1000;
     }
 
     public void pushMinutes(long minutes) {
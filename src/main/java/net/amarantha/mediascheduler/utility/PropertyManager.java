@@ -1,8 +1,13 @@
 package net.amarantha.mediascheduler.utility;
 
+import com.google.inject.Inject;
+import net.amarantha.mediascheduler.scheduler.Persister;
+import net.amarantha.mediascheduler.scheduler.Storage;
+
 import javax.inject.Singleton;
 import java.io.*;
 import java.util.Properties;
+import java.util.function.Function;
 
 @Singleton
 public class PropertyManager {
@@ -11,11 +16,51 @@ public class PropertyManager {
 
     protected Properties props;
 
+    private Storage storage;
+    private Persister persister;
+
     public PropertyManager() {
         props = new Properties();
         loadProperties();
     }
 
+    // Once there is a storage the properties are read from and saved to it, the file serving
+    // only to start with, as it is where the storage to use is chosen
+    @Inject(optional = true)
+    public void setStorage(Storage storage, Persister persister) {
+        this.storage = storage;
+        this.persister = persister;
+        props.putAll(storage.loadProperties());
+    }
+
+    // The storage to use has to be known before anything can be read from it
+    public static String getBootstrapProperty(String propName, String defaultValue) {
+        Properties bootstrap = new Properties();
+        File propsFile = new File(PROPS_FILENAME);
+        if ( propsFile.exists() ) {
+            try ( InputStream in = new FileInputStream(propsFile) ) {
+                bootstrap.load(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return bootstrap.getProperty(propName, defaultValue);
+    }
+
+    // Parsed, or the default if the property is missing or won't parse
+    public static <T> T getBootstrapProperty(String propName, T defaultValue, Function<String, T> parser) {
+        String value = getBootstrapProperty(propName, null);
+        if ( value==null ) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(value.trim());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid " + propName + " '" + value + "', using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
     protected void loadProperties() {
         try {
             File propsFile = new File(PROPS_FILENAME);
@@ -48,7 +93,12 @@ public class PropertyManager {
 
     public void setProperty(String propName, String value) {
         props.setProperty(propName, value);
-        saveProperties();
+        if ( storage==null ) {
+            saveProperties();
+        } else {
+            storage.putProperty(propName, value);
+            persister.markDirty();
+        }
     }
 
     public String getString(String propName, String defaultValue) {
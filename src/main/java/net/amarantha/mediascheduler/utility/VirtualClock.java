@@ -0,0 +1,51 @@
+package net.amarantha.mediascheduler.utility;
+
+import java.time.*;
+
+public class VirtualClock extends Clock {
+
+    private volatile long millis;
+    private final ZoneId zone;
+
+    public VirtualClock(LocalDateTime start) {
+        this(start, ZoneId.systemDefault());
+    }
+
+    public VirtualClock(LocalDateTime start, ZoneId zone) {
+        this(start.atZone(zone).toInstant().toEpochMilli(), zone);
+    }
+
+    public VirtualClock(long millis, ZoneId zone) {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    public void setMillis(long millis) {
+        this.millis = millis;
+    }
+
+    public void advance(long delta) {
+        millis += delta;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new VirtualClock(millis, zone);
+    }
+
+}
@@ -0,0 +1,49 @@
+package net.amarantha.mediascheduler.webservice;
+
+import com.google.inject.Inject;
+import net.amarantha.mediascheduler.audit.AuditLog;
+import net.amarantha.mediascheduler.scheduler.JsonEncoder;
+import net.amarantha.mediascheduler.utility.Now;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+@Path("audit")
+public class AuditResource extends Resource {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static Now now;
+    private static AuditLog audit;
+    private static JsonEncoder json;
+
+    public AuditResource() {}
+
+    @Inject
+    public AuditResource(Now now, AuditLog audit, JsonEncoder json) {
+        AuditResource.now = now;
+        AuditResource.audit = audit;
+        AuditResource.json = json;
+    }
+
+    // Times are local to the scheduler, e.g. 2016-03-02T10:00; the default is the last day
+    @GET
+    public Response getEntries(@QueryParam("from") String from, @QueryParam("to") String to) {
+        try {
+            long toMillis = ( to==null ? now.epochMillis() : toMillis(to) );
+            long fromMillis = ( from==null ? toMillis - DAY_MILLIS : toMillis(from) );
+            return ok(json.encodeAuditEntries(audit.query(fromMillis, toMillis)));
+        } catch (DateTimeParseException e) {
+            return error("Invalid time: " + e.getParsedString());
+        }
+    }
+
+    private long toMillis(String time) {
+        return LocalDateTime.parse(time).atZone(now.getZone()).toInstant().toEpochMilli();
+    }
+
+}
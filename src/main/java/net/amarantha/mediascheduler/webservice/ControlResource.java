@@ -2,6 +2,7 @@ package net.amarantha.mediascheduler.webservice;
 
 import com.google.inject.Inject;
 import net.amarantha.mediascheduler.device.ArKaos;
+import net.amarantha.mediascheduler.device.OutputRegistry;
 import net.amarantha.mediascheduler.scheduler.Scheduler;
 
 import javax.ws.rs.GET;
@@ -13,60 +14,87 @@ import javax.ws.rs.core.Response;
 @Path("control")
 public class ControlResource extends Resource {
 
-    private static ArKaos mediaServer;
+    private static OutputRegistry outputs;
     private static Scheduler scheduler;
 
     public ControlResource() {}
 
     @Inject
-    public ControlResource(ArKaos mediaServer, Scheduler scheduler) {
-        ControlResource.mediaServer = mediaServer;
+    public ControlResource(OutputRegistry outputs, Scheduler scheduler) {
+        ControlResource.outputs = outputs;
         ControlResource.scheduler = scheduler;
     }
 
     @POST
     @Path("start")
-    public Response start() {
-        scheduler.pause(false);
+    public Response start(@QueryParam("zone") String zone) {
+        if ( zone==null ) {
+            scheduler.pause(false);
+        } else if ( scheduler.getZone(zone)!=null ) {
+            scheduler.pause(zone, false);
+        } else {
+            return error("Zone not found");
+        }
         return ok("Started");
     }
 
     @POST
     @Path("stop")
-    public Response stop() {
-        scheduler.pause(true);
-        mediaServer.stopAll();
+    public Response stop(@QueryParam("zone") String zone) {
+        if ( zone==null ) {
+            scheduler.stopAll();
+        } else if ( scheduler.getZone(zone)!=null ) {
+            scheduler.pause(zone, true);
+        } else {
+            return error("Zone not found");
+        }
         return ok("Stopped");
     }
 
     @GET
     @Path("brightness")
-    public Response getBrightness() {
+    public Response getBrightness(@QueryParam("output") String output) {
+        ArKaos mediaServer = outputs.getMediaServer(output);
+        if ( mediaServer==null ) {
+            return error("Output not found");
+        }
         return ok(mediaServer.getBrightness());
     }
 
     @POST
     @Path("brightness")
-    public Response setBrightness(@QueryParam("value") int brightness) {
+    public Response setBrightness(@QueryParam("value") int brightness, @QueryParam("output") String output) {
         if ( brightness < 0 || brightness > 127) {
             return error("Brightness value out of range");
         }
+        ArKaos mediaServer = outputs.getMediaServer(output);
+        if ( mediaServer==null ) {
+            return error("Output not found");
+        }
         mediaServer.setBrightness(brightness);
         return ok("Brightness set");
     }
 
     @GET
     @Path("contrast")
-    public Response getContrast() {
+    public Response getContrast(@QueryParam("output") String output) {
+        ArKaos mediaServer = outputs.getMediaServer(output);
+        if ( mediaServer==null ) {
+            return error("Output not found");
+        }
         return ok(mediaServer.getContrast());
     }
 
     @POST
     @Path("contrast")
-    public Response setContrast(@QueryParam("value") int contrast) {
+    public Response setContrast(@QueryParam("value") int contrast, @QueryParam("output") String output) {
         if ( contrast < 0 || contrast > 127) {
             return error("Contrast value out of range");
         }
+        ArKaos mediaServer = outputs.getMediaServer(output);
+        if ( mediaServer==null ) {
+            return error("Output not found");
+        }
         mediaServer.setContrast(contrast);
         return ok("Contrast set");
     }
@@ -10,6 +10,7 @@ import net.amarantha.mediascheduler.scheduler.Scheduler;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 @Path("cue")
@@ -29,9 +30,13 @@ public class CueResource extends Resource {
         CueResource.json = json;
     }
 
+    // Without paging or a query this is the whole catalogue, as before
     @GET
-    public Response getCues() {
-        return ok(json.encodeCues());
+    public Response getCues(@QueryParam("query") String query, @QueryParam("offset") Integer offset, @QueryParam("limit") Integer limit) {
+        if ( query==null && offset==null && limit==null ) {
+            return ok(json.encodeCues());
+        }
+        return ok(json.encodeCues(scheduler.findCues(query, offset==null ? 0 : offset, limit==null ? Integer.MAX_VALUE : limit)));
     }
 
     @POST
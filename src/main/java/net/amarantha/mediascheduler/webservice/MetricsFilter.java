@@ -0,0 +1,44 @@
+package net.amarantha.mediascheduler.webservice;
+
+import com.google.inject.Inject;
+import net.amarantha.mediascheduler.metrics.Metrics;
+
+import javax.ws.rs.container.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+
+// Times every REST call, labelled by the resource method that handled it
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String START_PROPERTY = "metrics.start";
+
+    private static Metrics metrics;
+
+    @Context private ResourceInfo resourceInfo;
+
+    public MetricsFilter() {}
+
+    @Inject
+    public MetricsFilter(Metrics metrics) {
+        MetricsFilter.metrics = metrics;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        request.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object start = request.getProperty(START_PROPERTY);
+        if ( metrics==null || start==null ) {
+            return;
+        }
+        Method method = ( resourceInfo==null ? null : resourceInfo.getResourceMethod() );
+        String name = ( method==null ? "unmatched" : method.getDeclaringClass().getSimpleName() + "." + method.getName() );
+        metrics.histogram(Metrics.REST_DURATION, "method", name).recordSince((Long) start);
+    }
+
+}
@@ -0,0 +1,31 @@
+package net.amarantha.mediascheduler.webservice;
+
+import com.google.inject.Inject;
+import net.amarantha.mediascheduler.metrics.Metrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+@Path("metrics")
+public class MetricsResource extends Resource {
+
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4";
+
+    private static Metrics metrics;
+
+    public MetricsResource() {}
+
+    @Inject
+    public MetricsResource(Metrics metrics) {
+        MetricsResource.metrics = metrics;
+    }
+
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public Response getMetrics() {
+        return ok(metrics.toPrometheus());
+    }
+
+}
@@ -2,8 +2,10 @@ package net.amarantha.mediascheduler.webservice;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.inject.Inject;
+import net.amarantha.mediascheduler.scheduler.ConflictReport;
 import net.amarantha.mediascheduler.scheduler.JsonEncoder;
 import net.amarantha.mediascheduler.scheduler.MediaEvent;
+import net.amarantha.mediascheduler.scheduler.Persister;
 import net.amarantha.mediascheduler.scheduler.Scheduler;
 import net.amarantha.mediascheduler.utility.Now;
 
@@ -19,14 +21,16 @@ public class ScheduleResource extends Resource {
     private static Now now;
     private static Scheduler scheduler;
     private static JsonEncoder json;
+    private static Persister persister;
 
     public ScheduleResource() {}
 
     @Inject
-    public ScheduleResource(Now now, Scheduler scheduler, JsonEncoder json) {
+    public ScheduleResource(Now now, Scheduler scheduler, JsonEncoder json, Persister persister) {
         ScheduleResource.now = now;
         ScheduleResource.scheduler = scheduler;
         ScheduleResource.json = json;
+        ScheduleResource.persister = persister;
     }
 
     @GET
@@ -42,6 +46,23 @@ public class ScheduleResource extends Resource {
         return ok(now.time().toString());
     }
 
+    // Waits up to the given millis for every change made so far to be saved, and answers with
+    // the version that is now durable
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("saved")
+    public Response getSaved(@QueryParam("wait") Long wait) {
+        long version = persister.getVersion();
+        try {
+            if ( !persister.awaitDurable(version, wait==null ? 0 : wait) ) {
+                return error("Changes up to " + version + " not yet saved");
+            }
+        } catch (InterruptedException e) {
+            return error(e.getMessage());
+        }
+        return ok(""+persister.getDurableVersion());
+    }
+
     @GET
     @Path("all")
     public Response get() {
@@ -49,8 +70,8 @@ public class ScheduleResource extends Resource {
     }
 
     @GET
-    public Response getForDate(@QueryParam("date") String date) {
-        return ok(json.encodeSchedule(1, LocalDate.parse(date)));
+    public Response getForDate(@QueryParam("date") String date, @QueryParam("zone") String zone, @QueryParam("priority") Integer priority) {
+        return ok(json.encodeSchedule(zone==null ? Scheduler.DEFAULT_ZONE : zone, priority==null ? 1 : priority, LocalDate.parse(date)));
     }
 
     @GET
@@ -69,16 +90,30 @@ public class ScheduleResource extends Resource {
 
     @POST
     @Path("add")
-    public Response createEvent(String content) {
+    public Response createEvent(String content, @QueryParam("zone") String zone, @QueryParam("priority") Integer priority) {
         try {
             MediaEvent event = json.decodeMediaEvent(content);
-            scheduler.addEvent(event);
+            scheduler.addEvent(zone==null ? Scheduler.DEFAULT_ZONE : zone, priority==null ? 1 : priority, event);
         } catch (Exception e) {
             return error(e.getMessage());
         }
         return ok("Event created");
     }
 
+    @POST
+    @Path("conflicts")
+    public Response getConflicts(String content, @QueryParam("zone") String zone, @QueryParam("priority") Integer priority,
+                                 @QueryParam("days") Integer days, @QueryParam("slots") Integer slots) {
+        try {
+            MediaEvent event = json.decodeMediaEvent(content);
+            ConflictReport report = scheduler.getConflictReport(zone==null ? Scheduler.DEFAULT_ZONE : zone, priority==null ? 1 : priority, event,
+                    days==null ? ConflictReport.DEFAULT_HORIZON_DAYS : days, slots==null ? ConflictReport.DEFAULT_SLOTS : slots);
+            return ok(json.encodeConflictReport(report));
+        } catch (Exception e) {
+            return error(e.getMessage());
+        }
+    }
+
     @POST
     @Path("update")
     public Response updateEvent(String content) {
@@ -88,23 +123,38 @@ public class ScheduleResource extends Resource {
         } catch (IOException e) {
             return error(e.getMessage());
         }
-        MediaEvent existing = scheduler.getEventById(newEvent.getId());
-        if ( existing == null ) {
-            return error("Event not found");
+        try {
+            if ( scheduler.updateEvent(newEvent)==null ) {
+                return error("Event not found");
+            }
+        } catch (Exception e) {
+            return error(e.getMessage());
+        }
+        return ok("Event updated");
+    }
+
+    @POST
+    @Path("override")
+    public Response overrideOccurrence(String content, @QueryParam("id") int id) {
+        MediaEvent series;
+        try {
+            series = scheduler.overrideOccurrence(id, json.decodeEventOverride(content));
+        } catch (Exception e) {
+            return error(e.getMessage());
         }
-        scheduler.removeEvent(existing.getId());
+        return series==null ? error("Event not found") : ok("Occurrence overridden");
+    }
+
+    @POST
+    @Path("override/remove")
+    public Response removeOverride(@QueryParam("id") int id, @QueryParam("date") String date) {
+        boolean wasRemoved;
         try {
-            scheduler.addEvent(newEvent);
+            wasRemoved = scheduler.removeOverride(id, LocalDate.parse(date));
         } catch (Exception e) {
-            String msg = e.getMessage();
-            try {
-                scheduler.addEvent(existing);
-            } catch (Exception e1) {
-                msg += " " + e1.getMessage();
-            }
-            return error(msg);
+            return error(e.getMessage());
         }
-        return ok("Event created");
+        return ok(wasRemoved?"Override removed":"Override not found");
     }
 
     @POST
@@ -17,6 +17,10 @@ public class WebService {
     @Inject private ControlResource controlResource;
     @Inject private CueResource cueResource;
     @Inject private ScheduleResource scheduleResource;
+    @Inject private ZoneResource zoneResource;
+    @Inject private MetricsResource metricsResource;
+    @Inject private AuditResource auditResource;
+    @Inject private MetricsFilter metricsFilter;
 
     @Inject private PropertyManager props;
 
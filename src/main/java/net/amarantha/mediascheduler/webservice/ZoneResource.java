@@ -0,0 +1,43 @@
+package net.amarantha.mediascheduler.webservice;
+
+import com.google.inject.Inject;
+import net.amarantha.mediascheduler.scheduler.JsonEncoder;
+import net.amarantha.mediascheduler.scheduler.Scheduler;
+import net.amarantha.mediascheduler.scheduler.Zone;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.core.Response;
+
+@Path("zone")
+public class ZoneResource extends Resource {
+
+    private static Scheduler scheduler;
+    private static JsonEncoder json;
+
+    public ZoneResource() {}
+
+    @Inject
+    public ZoneResource(Scheduler scheduler, JsonEncoder json) {
+        ZoneResource.scheduler = scheduler;
+        ZoneResource.json = json;
+    }
+
+    @GET
+    public Response getZones() {
+        return ok(json.encodeZones());
+    }
+
+    @POST
+    @Path("create")
+    public Response createZone(String content) {
+        Zone zone = json.decodeZone(content);
+        if ( zone==null || zone.getName()==null ) {
+            return error("Could not create Zone");
+        }
+        scheduler.createZone(zone.getName(), zone.getOutputs(), zone.getTimeZone());
+        return ok("Zone created");
+    }
+
+}
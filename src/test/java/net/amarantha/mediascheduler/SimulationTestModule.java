@@ -0,0 +1,50 @@
+package net.amarantha.mediascheduler;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import net.amarantha.mediascheduler.audit.AuditLog;
+import net.amarantha.mediascheduler.audit.AuditLogMock;
+import net.amarantha.mediascheduler.device.Projector;
+import net.amarantha.mediascheduler.device.ProjectorMock;
+import net.amarantha.mediascheduler.midi.Midi;
+import net.amarantha.mediascheduler.midi.MidiRecorder;
+import net.amarantha.mediascheduler.scheduler.JsonEncoder;
+import net.amarantha.mediascheduler.scheduler.JsonEncoderMock;
+import net.amarantha.mediascheduler.scheduler.ReadOnlyStorage;
+import net.amarantha.mediascheduler.scheduler.Storage;
+import net.amarantha.mediascheduler.scheduler.StorageMock;
+import net.amarantha.mediascheduler.utility.Now;
+
+public class SimulationTestModule extends AbstractModule {
+
+    private final Now now = new Now();
+    private final MidiRecorder recorder = new MidiRecorder(now);
+
+    @Override
+    protected void configure() {
+        bind(Now.class).toInstance(now);
+        bind(MidiRecorder.class).toInstance(recorder);
+        bind(Midi.class).toInstance(recorder);
+        bind(Projector.class).to(ProjectorMock.class);
+        bind(JsonEncoder.class).to(JsonEncoderMock.class);
+        bind(AuditLog.class).to(AuditLogMock.class);
+    }
+
+    @Provides @Singleton
+    Storage provideStorage(StorageMock stored) {
+        return new ReadOnlyStorage(stored);
+    }
+
+    @Provides @Named("output")
+    Midi provideOutputMidi() {
+        return new MidiRecorder(now, recorder.getRecording());
+    }
+
+    @Provides @Named("output")
+    Projector provideOutputProjector() {
+        return new ProjectorMock();
+    }
+
+}
@@ -1,12 +1,18 @@
 package net.amarantha.mediascheduler;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.name.Named;
+import net.amarantha.mediascheduler.audit.AuditLog;
+import net.amarantha.mediascheduler.audit.AuditLogMock;
 import net.amarantha.mediascheduler.device.Projector;
 import net.amarantha.mediascheduler.device.ProjectorMock;
 import net.amarantha.mediascheduler.midi.Midi;
 import net.amarantha.mediascheduler.midi.MidiMock;
 import net.amarantha.mediascheduler.scheduler.JsonEncoder;
 import net.amarantha.mediascheduler.scheduler.JsonEncoderMock;
+import net.amarantha.mediascheduler.scheduler.Storage;
+import net.amarantha.mediascheduler.scheduler.StorageMock;
 
 public class TestModule extends AbstractModule {
 
@@ -15,6 +21,18 @@ public class TestModule extends AbstractModule {
         bind(Midi.class).to(MidiMock.class);
         bind(Projector.class).to(ProjectorMock.class);
         bind(JsonEncoder.class).to(JsonEncoderMock.class);
+        bind(AuditLog.class).to(AuditLogMock.class);
+        bind(Storage.class).to(StorageMock.class);
+    }
+
+    @Provides @Named("output")
+    Midi provideOutputMidi() {
+        return new MidiMock();
+    }
+
+    @Provides @Named("output")
+    Projector provideOutputProjector() {
+        return new ProjectorMock();
     }
 
 }
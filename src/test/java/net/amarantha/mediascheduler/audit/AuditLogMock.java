@@ -0,0 +1,44 @@
+package net.amarantha.mediascheduler.audit;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.audit.AuditEntry.Type;
+import net.amarantha.mediascheduler.utility.Now;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Singleton
+public class AuditLogMock implements AuditLog {
+
+    @Inject private Now now;
+
+    private final List<AuditEntry> entries = new ArrayList<>();
+
+    @Override
+    public void startup() {}
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public synchronized void record(Type type, String zone, String output, Integer cueId, Long eventId, String detail) {
+        entries.add(new AuditEntry(now.epochMillis(), type, zone, output, cueId, eventId, detail));
+    }
+
+    @Override
+    public synchronized List<AuditEntry> query(long fromMillis, long toMillis) {
+        List<AuditEntry> result = new ArrayList<>();
+        for ( AuditEntry entry : entries ) {
+            if ( entry.getEpochMillis()>=fromMillis && entry.getEpochMillis()<=toMillis ) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+}
@@ -0,0 +1,121 @@
+package net.amarantha.mediascheduler.audit;
+
+import com.google.inject.Inject;
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.TestModule;
+import net.amarantha.mediascheduler.audit.AuditEntry.Type;
+import net.amarantha.mediascheduler.utility.Now;
+import net.amarantha.mediascheduler.utility.VirtualClock;
+import org.junit.After;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(TestModule.class)
+public class TestAuditLog {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Inject private Now now;
+    @Inject private AuditLogImpl audit;
+
+    private VirtualClock clock;
+    private File file;
+
+    @Story
+    public void testQueryByTimeRange() {
+
+        given_an_audit_log_at_$1("2016-03-02T00:00");
+
+        when_record_$1_entries_a_minute_apart(2000);
+        then_entries_between_minute_$1_and_$2_are_$3(0, 0, 1);
+        then_entries_between_minute_$1_and_$2_are_$3(1000, 1099, 100);
+        then_entries_between_minute_$1_and_$2_are_$3(1990, 5000, 10);
+        then_entries_between_minute_$1_and_$2_are_$3(-10, -1, 0);
+
+        // The index is rebuilt from the file on restart
+        when_restart();
+        when_record_$1_entries_a_minute_apart(10);
+        then_entries_between_minute_$1_and_$2_are_$3(1995, 2005, 11);
+        then_entries_between_minute_$1_and_$2_are_$3(0, 3000, 2010);
+
+    }
+
+    @Story
+    public void testNothingRecordedBeforeStartup() {
+
+        given_a_clock_at_$1("2016-03-02T00:00");
+        when_record_$1_entries_a_minute_apart(5);
+        then_entries_between_minute_$1_and_$2_are_$3(0, 10, 0);
+
+    }
+
+    @After
+    public void when_shutdown() {
+        audit.shutdown();
+        now.setClock(null);
+        if ( file!=null ) {
+            file.delete();
+        }
+    }
+
+
+    ///////////
+    // Given //
+    ///////////
+
+    void given_a_clock_at_$1(String dateTime) {
+        clock = new VirtualClock(LocalDateTime.parse(dateTime));
+        now.setClock(clock);
+    }
+
+    void given_an_audit_log_at_$1(String dateTime) {
+        given_a_clock_at_$1(dateTime);
+        try {
+            file = File.createTempFile("audit", ".log");
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+        audit.startup(file.getPath());
+    }
+
+
+    //////////
+    // When //
+    //////////
+
+    void when_record_$1_entries_a_minute_apart(int count) {
+        for ( int i = 0; i < count; i++ ) {
+            audit.record(Type.CUE_STARTED, null, "main", i % 10, null, null);
+            clock.advance(MINUTE);
+        }
+    }
+
+    void when_restart() {
+        audit.shutdown();
+        audit.startup(file.getPath());
+    }
+
+
+    //////////
+    // Then //
+    //////////
+
+    void then_entries_between_minute_$1_and_$2_are_$3(long from, long to, int count) {
+        long start = LocalDateTime.parse("2016-03-02T00:00").atZone(now.getZone()).toInstant().toEpochMilli();
+        List<AuditEntry> entries = audit.query(start + from * MINUTE, start + to * MINUTE);
+        assertEquals(count, entries.size());
+        for ( AuditEntry entry : entries ) {
+            assertEquals(Type.CUE_STARTED, entry.getType());
+            assertEquals("main", entry.getOutput());
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package net.amarantha.mediascheduler.device;
+
+import net.amarantha.mediascheduler.midi.MidiCommand;
+import net.amarantha.mediascheduler.midi.MidiMock;
+import net.amarantha.mediascheduler.scheduler.Cue;
+import net.amarantha.mediascheduler.utility.PropertyManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1) @Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1)
+public class ArKaosBenchmark {
+
+    private ArKaos mediaServer;
+    private Cue[] cues;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        mediaServer = new ArKaos(new PropertyManager(), new MidiMock());
+        cues = new Cue[8];
+        for ( int i = 0; i < cues.length; i++ ) {
+            cues[i] = new Cue(i + 1, i + 1, "Cue " + (i + 1));
+        }
+    }
+
+    private Cue nextCue() {
+        next = (next + 1) & (cues.length - 1);
+        return cues[next];
+    }
+
+    @Benchmark
+    public MidiCommand startCueCommand() {
+        return mediaServer.startCueCommand(nextCue());
+    }
+
+    @Benchmark
+    public MidiCommand cueLevelCommand() {
+        return mediaServer.cueLevelCommand(nextCue(), next * 16);
+    }
+
+    @Benchmark
+    public MidiCommand stopAllCommand() {
+        return mediaServer.stopAllCommand();
+    }
+
+    // Stop the current cue and start the next, through to the (mock) device
+    @Benchmark
+    public Cue startCueList() {
+        mediaServer.startCueList(nextCue());
+        return mediaServer.getCurrentCue();
+    }
+
+    @Benchmark
+    public Cue crossfade() {
+        Cue from = cues[next];
+        Cue to = nextCue();
+        mediaServer.crossfade(from, to, 64);
+        return mediaServer.getCurrentCue();
+    }
+
+}
@@ -0,0 +1,116 @@
+package net.amarantha.mediascheduler.metrics;
+
+import com.google.inject.Inject;
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.TestModule;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(TestModule.class)
+public class TestMetrics {
+
+    @Inject private Metrics metrics;
+
+    private Histogram histogram;
+
+    @Story
+    public void testQuantiles() {
+
+        given_an_empty_histogram();
+        then_quantile_$1_is_about_$2(0.5, 0);
+
+        when_record_1_to_$1(100000);
+        then_count_is_$1(100000);
+        then_quantile_$1_is_about_$2(0.5, 50000);
+        then_quantile_$1_is_about_$2(0.99, 99000);
+        then_quantile_$1_is_about_$2(1.0, 100000);
+
+        when_record_$1(5000000000L);
+        then_quantile_$1_is_about_$2(1.0, 5000000000L);
+
+    }
+
+    @Story
+    public void testBucketsAreContiguous() {
+
+        for ( int i = 0; i < 2000; i++ ) {
+            then_bucket_$1_follows_the_last(i);
+        }
+
+    }
+
+    @Story
+    public void testPrometheusExport() {
+
+        when_record_$1_micros_to_$2_labelled_$3(1500, Metrics.REST_DURATION, "CueResource.getCues");
+        when_record_$1_micros_to_$2_labelled_$3(2500, Metrics.REST_DURATION, "CueResource.getCues");
+        when_record_$1_micros_to_$2_labelled_$3(250, Metrics.TICK_DURATION, null);
+
+        then_export_contains_$1("# TYPE rest_request_duration_seconds summary");
+        then_export_contains_$1("rest_request_duration_seconds_count{method=\"CueResource.getCues\"} 2");
+        then_export_contains_$1("rest_request_duration_seconds_sum{method=\"CueResource.getCues\"} 0.004000");
+        then_export_contains_$1("scheduler_tick_duration_seconds{quantile=\"0.5\"} 0.000250");
+        then_export_contains_$1("scheduler_tick_duration_seconds_count 1");
+
+    }
+
+
+    ///////////
+    // Given //
+    ///////////
+
+    void given_an_empty_histogram() {
+        histogram = new Histogram();
+    }
+
+
+    //////////
+    // When //
+    //////////
+
+    void when_record_1_to_$1(long max) {
+        for ( long value = 1; value <= max; value++ ) {
+            histogram.record(value);
+        }
+    }
+
+    void when_record_$1(long value) {
+        histogram.record(value);
+    }
+
+    void when_record_$1_micros_to_$2_labelled_$3(long micros, String name, String method) {
+        if ( method==null ) {
+            metrics.histogram(name).record(micros);
+        } else {
+            metrics.histogram(name, "method", method).record(micros);
+        }
+    }
+
+
+    //////////
+    // Then //
+    //////////
+
+    void then_count_is_$1(long count) {
+        assertEquals(count, histogram.getCount());
+    }
+
+    void then_quantile_$1_is_about_$2(double quantile, long expected) {
+        long actual = histogram.getValueAtQuantile(quantile);
+        assertTrue("Quantile " + quantile + " was " + actual, Math.abs(actual - expected) <= expected / 64);
+    }
+
+    void then_bucket_$1_follows_the_last(int index) {
+        assertEquals(index, Histogram.indexOf(Histogram.lowestEquivalent(index)));
+        assertEquals(index, Histogram.indexOf(Histogram.highestEquivalent(index)));
+        assertEquals(index + 1, Histogram.indexOf(Histogram.highestEquivalent(index) + 1));
+    }
+
+    void then_export_contains_$1(String line) {
+        assertTrue(metrics.toPrometheus().contains(line + "\n"));
+    }
+
+}
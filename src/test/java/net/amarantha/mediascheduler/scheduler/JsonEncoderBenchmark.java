@@ -0,0 +1,52 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import net.amarantha.mediascheduler.TestModule;
+import net.amarantha.mediascheduler.scheduler.ScheduleGenerator.Shape;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1) @Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+public class JsonEncoderBenchmark {
+
+    @Param({ "ONE_OFF", "REPEATING", "MIXED" })
+    private Shape shape;
+
+    @Param({ "1000", "10000" })
+    private int size;
+
+    private JsonEncoderImpl json;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        Injector injector = Guice.createInjector(new TestModule());
+        new ScheduleGenerator().populate(injector.getInstance(Scheduler.class), shape, size, 3);
+        json = injector.getInstance(JsonEncoderImpl.class);
+        file = File.createTempFile("schedules", ".json");
+        json.encodeAllSchedulesToFile(file.getPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public String encode() {
+        return json.encodeAllSchedules();
+    }
+
+    @Benchmark
+    public Map<String, Zone> decode() {
+        return json.decodeSchedulesFromFile(file.getPath());
+    }
+
+}
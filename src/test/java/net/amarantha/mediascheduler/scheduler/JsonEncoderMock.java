@@ -1,13 +1,20 @@
 package net.amarantha.mediascheduler.scheduler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.audit.AuditEntry;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.*;
 
+@Singleton
 public class JsonEncoderMock implements JsonEncoder {
 
+    private final List<String> written = new ArrayList<>();
+    private boolean failing = false;
+
     @Override
     public String encodeAllSchedules() {
         return null;
@@ -15,11 +22,11 @@ public class JsonEncoderMock implements JsonEncoder {
 
     @Override
     public void encodeAllSchedulesToFile(String filename) {
-
+        write(filename);
     }
 
     @Override
-    public Map<Integer, Schedule> decodeSchedulesFromFile(String filename) {
+    public Map<String, Zone> decodeSchedulesFromFile(String filename) {
         return new HashMap<>();
     }
 
@@ -28,6 +35,41 @@ public class JsonEncoderMock implements JsonEncoder {
         return null;
     }
 
+    @Override
+    public String encodeSchedule(String zone, int priority, LocalDate date) {
+        return null;
+    }
+
+    @Override
+    public String encodeZones() {
+        return null;
+    }
+
+    @Override
+    public void encodeZonesToFile(String filename) {
+        write(filename);
+    }
+
+    @Override
+    public void appendEventsToFile(String filename, String zone, int priority, List<MediaEvent> events) {
+        write(filename);
+    }
+
+    @Override
+    public String encodeZone(Zone zone) {
+        return null;
+    }
+
+    @Override
+    public Zone decodeZone(String json) {
+        return null;
+    }
+
+    @Override
+    public List<Zone> decodeZonesFromFile(String filename) {
+        return new ArrayList<>();
+    }
+
     @Override
     public String encodeCues() {
         return null;
@@ -35,7 +77,12 @@ public class JsonEncoderMock implements JsonEncoder {
 
     @Override
     public void encodeCuesToFile(String filename) {
+        write(filename);
+    }
 
+    @Override
+    public String encodeCue(Cue cue) {
+        return null;
     }
 
     @Override
@@ -58,8 +105,62 @@ public class JsonEncoderMock implements JsonEncoder {
         return null;
     }
 
+    @Override
+    public EventOverride decodeEventOverride(String json) throws IOException {
+        return null;
+    }
+
+    @Override
+    public String encodeAuditEntries(List<AuditEntry> entries) {
+        return null;
+    }
+
+    @Override
+    public String encodeCues(List<Cue> cues) {
+        return null;
+    }
+
+    @Override
+    public void appendCueChangeToFile(String filename, CueChange change) {
+        write(filename);
+    }
+
+    @Override
+    public List<CueChange> decodeCueChangesFromFile(String filename) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void truncateFile(String filename) {
+
+    }
+
+    @Override
+    public String encodeConflictReport(ConflictReport report) {
+        return null;
+    }
+
     @Override
     public void saveSchedules() {
 
     }
+
+    private synchronized void write(String filename) {
+        if ( failing ) {
+            throw new UncheckedIOException(new IOException("Cannot write " + filename));
+        }
+        written.add(filename);
+    }
+
+    public synchronized void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    // Files written since the last call, in order
+    public synchronized List<String> takeWritten() {
+        List<String> result = new ArrayList<>(written);
+        written.clear();
+        return result;
+    }
+
 }
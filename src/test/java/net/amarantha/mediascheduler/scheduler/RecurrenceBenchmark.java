@@ -0,0 +1,67 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.DayOfWeek.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1) @Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1)
+public class RecurrenceBenchmark {
+
+    private static final LocalDate FROM = LocalDate.parse("2016-01-01");
+    private static final LocalDate TO = FROM.plusYears(10);
+
+    public enum Rule {
+        WEEKLY_MON_WED_FRI(new Recurrence(Recurrence.Frequency.WEEKLY, 1, EnumSet.of(MONDAY, WEDNESDAY, FRIDAY), null, null, null)),
+        EVERY_OTHER_SUNDAY(new Recurrence(Recurrence.Frequency.WEEKLY, 2, Collections.singleton(SUNDAY), null, null, null)),
+        FIRST_SUNDAY_OF_MONTH(new Recurrence(Recurrence.Frequency.MONTHLY, 1, Collections.singleton(SUNDAY), 1, null, null)),
+        LAST_DAY_OF_QUARTER(new Recurrence(Recurrence.Frequency.MONTHLY, 3, null, null, Collections.singleton(-1), null)),
+        EVERY_THREE_DAYS(new Recurrence(Recurrence.Frequency.DAILY, 3, null, null, null, Collections.singleton("2016-12-25")));
+
+        private final Recurrence recurrence;
+
+        Rule(Recurrence recurrence) {
+            this.recurrence = recurrence;
+        }
+    }
+
+    @Param
+    private Rule rule;
+
+    private Recurrence recurrence;
+
+    @Setup
+    public void setup() {
+        recurrence = rule.recurrence;
+        recurrence.compile(FROM, null, null);
+    }
+
+    // Every occurrence in ten years
+    @Benchmark
+    public int expand() {
+        int count = 0;
+        for ( LocalDate ignored : recurrence.expand(FROM, TO.minusDays(1)) ) {
+            count++;
+        }
+        return count;
+    }
+
+    // A lookup for every day in ten years
+    @Benchmark
+    public int occursOn() {
+        int count = 0;
+        for ( LocalDate date = FROM; date.isBefore(TO); date = date.plusDays(1) ) {
+            if ( recurrence.occursOn(date) ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
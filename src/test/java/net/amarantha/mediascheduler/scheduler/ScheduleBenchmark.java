@@ -0,0 +1,92 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import net.amarantha.mediascheduler.exception.ScheduleConflictException;
+import net.amarantha.mediascheduler.scheduler.ScheduleGenerator.Shape;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1) @Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1)
+public class ScheduleBenchmark {
+
+    private static final int PROBES = 1024;
+
+    @Param({ "ONE_OFF", "REPEATING", "MIXED" })
+    private Shape shape;
+
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    private Schedule schedule;
+    private LocalDate[] probeDates;
+    private LocalTime[] probeTimes;
+    private int probe = 0;
+
+    private MediaEvent freeRepeat;
+    private MediaEvent clashingRepeat;
+
+    @Setup
+    public void setup() {
+        ScheduleGenerator generator = new ScheduleGenerator();
+        List<MediaEvent> events = generator.generate(shape, size);
+        schedule = generator.schedule(events);
+        LocalDate last = events.get(events.size() - 1).getStartDate();
+        long days = Math.max(1, last.toEpochDay() - ScheduleGenerator.START.toEpochDay() + 1);
+        probeDates = new LocalDate[PROBES];
+        probeTimes = new LocalTime[PROBES];
+        for ( int i = 0; i < PROBES; i++ ) {
+            probeDates[i] = ScheduleGenerator.START.plusDays((i * 7919L) % days);
+            probeTimes[i] = LocalTime.ofSecondOfDay((i * 104729L) % 86400);
+        }
+        // Free: 00:50 every Monday, forever. Clashing: 00:10 on the first Monday.
+        freeRepeat = new MediaEvent(-1, 1, ScheduleGenerator.START.toString(), "00:50", "00:55", DayOfWeek.MONDAY);
+        clashingRepeat = new MediaEvent(-2, 1, ScheduleGenerator.START.toString(), "00:10", "00:20", DayOfWeek.MONDAY);
+    }
+
+    private int nextProbe() {
+        probe = (probe + 1) & (PROBES - 1);
+        return probe;
+    }
+
+    @Benchmark
+    public MediaEvent getEvent() {
+        int i = nextProbe();
+        return schedule.getEvent(probeDates[i], probeTimes[i]);
+    }
+
+    @Benchmark
+    public List<MediaEvent> getEventsForDay() {
+        return schedule.getEvents(probeDates[nextProbe()]);
+    }
+
+    @Benchmark
+    public Map<LocalDate, List<MediaEvent>> getEventsForMonth() {
+        LocalDate from = probeDates[nextProbe()];
+        return schedule.getEvents(from, from.plusDays(30));
+    }
+
+    // Conflict checking against every event, then back out so the schedule is unchanged
+    @Benchmark
+    public boolean addEvent() throws ScheduleConflictException {
+        schedule.addEvent(freeRepeat);
+        return schedule.removeEvent(freeRepeat.getId());
+    }
+
+    @Benchmark
+    public boolean addConflictingEvent() {
+        try {
+            schedule.addEvent(clashingRepeat);
+            return false;
+        } catch (ScheduleConflictException e) {
+            return true;
+        }
+    }
+
+}
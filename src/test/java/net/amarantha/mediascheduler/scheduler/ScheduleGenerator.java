@@ -0,0 +1,108 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import net.amarantha.mediascheduler.exception.SchedulerException;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.time.temporal.TemporalAdjusters.nextOrSame;
+
+// Synthetic, conflict-free schedules for the benchmarks. One-offs take the first half of
+// every hour, day after day; repeats are weekly, one hour-slot per day of the week, each
+// running for four weeks before the slot is handed to the next generation.
+public class ScheduleGenerator {
+
+    public enum Shape { ONE_OFF, REPEATING, MIXED }
+
+    public static final LocalDate START = LocalDate.parse("2016-01-04");
+    public static final int CUES = 10;
+
+    private static final int HOURS = 24;
+    private static final int WEEKLY_SLOTS = 7 * HOURS;
+    private static final int GENERATION_WEEKS = 4;
+
+    private int nextId = 1;
+
+    public List<MediaEvent> generate(Shape shape, int count) {
+        switch ( shape ) {
+            case ONE_OFF:
+                return oneOffs(count, 0);
+            case REPEATING:
+                return repeats(count);
+            default:
+                List<MediaEvent> result = repeats(count / 2);
+                result.addAll(oneOffs(count - count / 2, 40));
+                return result;
+        }
+    }
+
+    // One-offs at HH:mm to HH:mm+10 (or to HH:30 when mm is 0), filling every hour in turn
+    public List<MediaEvent> oneOffs(int count, int minute) {
+        List<MediaEvent> result = new ArrayList<>(count);
+        for ( int i = 0; i < count; i++ ) {
+            LocalDate date = START.plusDays(i / HOURS);
+            int hour = i % HOURS;
+            int end = ( minute==0 ? 30 : minute + 10 );
+            result.add(new MediaEvent(nextId++, 1 + i % CUES, date.toString(), time(hour, minute), time(hour, end)));
+        }
+        return result;
+    }
+
+    // Weekly repeats on the hour for half an hour, each bounded by an end date
+    public List<MediaEvent> repeats(int count) {
+        List<MediaEvent> result = new ArrayList<>(count);
+        for ( int i = 0; i < count; i++ ) {
+            int slot = i % WEEKLY_SLOTS;
+            int generation = i / WEEKLY_SLOTS;
+            DayOfWeek dow = DayOfWeek.of(1 + slot / HOURS);
+            int hour = slot % HOURS;
+            LocalDate from = START.plusWeeks((long) generation * GENERATION_WEEKS).with(nextOrSame(dow));
+            MediaEvent event = new MediaEvent(nextId++, 1 + i % CUES, from.toString(), time(hour, 0), time(hour, 30), dow);
+            event.setEndDate(from.plusWeeks(GENERATION_WEEKS).minusDays(1));
+            result.add(event);
+        }
+        return result;
+    }
+
+    public Schedule schedule(List<MediaEvent> events) {
+        Schedule schedule = new Schedule();
+        for ( MediaEvent event : events ) {
+            try {
+                schedule.addEvent(event);
+            } catch (SchedulerException e) {
+                throw new IllegalStateException("Generated a conflict: " + e.getMessage());
+            }
+        }
+        return schedule;
+    }
+
+    // Spreads the events over several priority layers of the default zone
+    public void populate(Scheduler scheduler, Shape shape, int count, int priorities) {
+        for ( int cue = 1; cue <= CUES; cue++ ) {
+            if ( scheduler.getCue(cue)==null ) {
+                try {
+                    scheduler.addCue(new Cue(cue, cue, "Cue " + cue));
+                } catch (SchedulerException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        for ( int priority = 1; priority <= priorities; priority++ ) {
+            int layerCount = count / priorities + ( priority <= count % priorities ? 1 : 0 );
+            for ( MediaEvent event : generate(shape, layerCount) ) {
+                try {
+                    scheduler.addEvent(priority, event);
+                } catch (SchedulerException e) {
+                    throw new IllegalStateException("Generated a conflict: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String time(int hour, int minute) {
+        return String.format("%02d:%02d", hour, minute);
+    }
+
+}
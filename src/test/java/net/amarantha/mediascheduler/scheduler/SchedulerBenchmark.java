@@ -0,0 +1,71 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import net.amarantha.mediascheduler.TestModule;
+import net.amarantha.mediascheduler.scheduler.ScheduleGenerator.Shape;
+import net.amarantha.mediascheduler.utility.Now;
+import net.amarantha.mediascheduler.utility.VirtualClock;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1) @Warmup(iterations = 3, time = 1) @Measurement(iterations = 5, time = 1)
+public class SchedulerBenchmark {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Param({ "REPEATING", "MIXED" })
+    private Shape shape;
+
+    @Param({ "1000", "10000" })
+    private int size;
+
+    @Param({ "1", "10", "100" })
+    private int priorities;
+
+    private Scheduler scheduler;
+    private Zone zone;
+    private VirtualClock clock;
+    private long start;
+
+    @Setup
+    public void setup() {
+        Injector injector = Guice.createInjector(new TestModule());
+        start = ScheduleGenerator.START.atTime(0, 15).toInstant(ZoneOffset.UTC).toEpochMilli();
+        clock = new VirtualClock(start, ZoneOffset.UTC);
+        injector.getInstance(Now.class).setClock(clock);
+        scheduler = injector.getInstance(Scheduler.class);
+        new ScheduleGenerator().populate(scheduler, shape, size, priorities);
+        zone = scheduler.getDefaultZone();
+    }
+
+    // The usual case: the day's plan is built and each lookup is a binary search
+    @Benchmark
+    public MediaEvent getCurrentEvent() {
+        return scheduler.getCurrentEvent();
+    }
+
+    // As after any edit: the plan for the day is rebuilt from every layer
+    @Benchmark
+    public MediaEvent getCurrentEventAfterEdit() {
+        synchronized (zone) {
+            zone.invalidatePlan();
+        }
+        return scheduler.getCurrentEvent();
+    }
+
+    // Walks the clock forward a minute at a time, crossing a day boundary every 1440 calls
+    @Benchmark
+    public MediaEvent getCurrentEventAsTimePasses() {
+        clock.advance(MINUTE);
+        if ( clock.millis() - start > 28L * 24 * 60 * MINUTE ) {
+            clock.setMillis(start);
+        }
+        return scheduler.getCurrentEvent();
+    }
+
+}
@@ -0,0 +1,138 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Singleton;
+import net.amarantha.mediascheduler.exception.ScheduleConflictException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.Map.Entry;
+
+@Singleton
+public class StorageMock implements Storage {
+
+    private final Map<Integer, MediaEvent> events = new HashMap<>();
+    private final Map<Integer, String> eventLayers = new HashMap<>();
+    private final Map<Integer, List<EventOverride>> eventOverrides = new HashMap<>();
+    private final Map<Integer, Cue> cues = new HashMap<>();
+    private final Map<String, Zone> zones = new HashMap<>();
+    private final Properties properties = new Properties();
+
+    private int commits = 0;
+    private boolean failing = false;
+
+    @Override
+    public void open() {}
+
+    @Override
+    public void close() {}
+
+    @Override
+    public synchronized void commit() {
+        if ( failing ) {
+            throw new UncheckedIOException(new IOException("Storage unavailable"));
+        }
+        commits++;
+    }
+
+    public synchronized void clear() {
+        events.clear();
+        eventLayers.clear();
+        eventOverrides.clear();
+        cues.clear();
+        zones.clear();
+        properties.clear();
+        commits = 0;
+        failing = false;
+    }
+
+    @Override
+    public synchronized Map<String, Zone> loadSchedules() {
+        Map<String, Zone> result = new HashMap<>();
+        for ( Entry<Integer, String> entry : eventLayers.entrySet() ) {
+            String[] layer = entry.getValue().split("/");
+            try {
+                result.computeIfAbsent(layer[0], Zone::new).getOrCreateSchedule(Integer.parseInt(layer[1]))
+                        .addEvent(events.get(entry.getKey()));
+            } catch (ScheduleConflictException e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void putEvent(String zone, int priority, MediaEvent event) {
+        events.put(event.getId(), event);
+        eventLayers.put(event.getId(), zone + "/" + priority);
+        eventOverrides.put(event.getId(), event.getOverrides());
+    }
+
+    @Override
+    public synchronized void removeEvent(String zone, int priority, long eventId) {
+        if ( eventLayers.remove((int) eventId, zone + "/" + priority) ) {
+            events.remove((int) eventId);
+            eventOverrides.remove((int) eventId);
+        }
+    }
+
+    @Override
+    public synchronized Set<Cue> loadCues() {
+        return new HashSet<>(cues.values());
+    }
+
+    @Override
+    public synchronized void putCue(Cue cue) {
+        cues.put(cue.getId(), cue);
+    }
+
+    @Override
+    public synchronized void removeCue(Cue cue) {
+        cues.remove(cue.getId());
+    }
+
+    @Override
+    public synchronized List<Zone> loadZones() {
+        return new ArrayList<>(zones.values());
+    }
+
+    @Override
+    public synchronized void putZone(Zone zone) {
+        zones.put(zone.getName(), zone);
+    }
+
+    @Override
+    public synchronized Properties loadProperties() {
+        Properties result = new Properties();
+        result.putAll(properties);
+        return result;
+    }
+
+    @Override
+    public synchronized void putProperty(String name, String value) {
+        properties.setProperty(name, value);
+    }
+
+    // Zone and layer each stored event was last put in, as "zone/priority"
+    public synchronized Map<Integer, String> getEventLayers() {
+        return new HashMap<>(eventLayers);
+    }
+
+    // Overrides each stored event had when it was last put
+    public synchronized List<EventOverride> getEventOverrides(int eventId) {
+        return eventOverrides.get(eventId);
+    }
+
+    public synchronized Set<Integer> getCueIds() {
+        return new HashSet<>(cues.keySet());
+    }
+
+    public synchronized void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    public synchronized int getCommits() {
+        return commits;
+    }
+
+}
@@ -0,0 +1,200 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Inject;
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.TestModule;
+import org.junit.After;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(TestModule.class)
+public class TestAtomicFiles {
+
+    @Inject private AtomicFiles files;
+
+    private Path directory;
+    private String filename;
+
+    @Story
+    public void testRollingBackups() {
+
+        given_a_file_with_$1_backups(2);
+        then_file_reads_$1(null);
+
+        when_write_$1("one");
+        when_write_$1("two");
+        when_write_$1("three");
+        when_write_$1("four");
+        then_file_reads_$1("four");
+        then_copy_$1_holds_$2(".1", "three");
+        then_copy_$1_holds_$2(".2", "two");
+        then_copy_$1_holds_$2(".3", null);
+        then_copy_$1_holds_$2(AtomicFiles.TEMP_SUFFIX, null);
+
+    }
+
+    @Story
+    public void testCorruptCopies() {
+
+        given_a_file_with_$1_backups(2);
+        when_write_$1("one");
+        when_write_$1("two");
+        when_write_$1("three");
+
+        // A torn write fails its checksum, so the newest intact backup is read instead
+        when_copy_$1_is_overwritten_with_$2("", "thr");
+        then_file_reads_$1("two");
+
+        // A copy with no sidecar is taken on trust, so long as it decodes
+        when_copy_$1_is_overwritten_with_$2(".1", "tw");
+        when_copy_$1_is_deleted(".1" + AtomicFiles.CHECKSUM_SUFFIX);
+        then_file_reads_$1("one");
+
+        // With nothing intact the read fails, and the live copy is kept aside
+        when_copy_$1_is_overwritten_with_$2(".2", "on");
+        then_file_fails_to_read();
+        then_copy_$1_holds_$2(AtomicFiles.CORRUPT_SUFFIX, "thr");
+
+        when_write_$1("four");
+        then_file_reads_$1("four");
+
+    }
+
+    @Story
+    public void testAppend() {
+
+        given_a_file_with_$1_backups(2);
+        when_append_$1("one\n");
+        when_append_$1("two\n");
+        then_copy_$1_holds_$2("", "one\ntwo\n");
+
+        // Journals are appended in place, with no backups or sidecars
+        then_copy_$1_holds_$2(".1", null);
+        then_copy_$1_holds_$2(AtomicFiles.CHECKSUM_SUFFIX, null);
+
+        // A failed append reaches the caller
+        filename = directory.resolve("missing").resolve("test.json").toString();
+        then_append_fails();
+
+    }
+
+    @After
+    public void when_cleanup() {
+        if ( directory!=null ) {
+            for ( File file : directory.toFile().listFiles() ) {
+                file.delete();
+            }
+            directory.toFile().delete();
+        }
+    }
+
+
+    ///////////
+    // Given //
+    ///////////
+
+    void given_a_file_with_$1_backups(int backups) {
+        try {
+            directory = Files.createTempDirectory("atomic");
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+        filename = directory.resolve("test.json").toString();
+        files.setFsync(AtomicFiles.Fsync.FULL);
+        files.setBackups(backups);
+    }
+
+
+    //////////
+    // When //
+    //////////
+
+    void when_write_$1(String value) {
+        try {
+            files.write(filename, value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    void when_append_$1(String value) {
+        try {
+            files.append(filename, value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    void when_copy_$1_is_overwritten_with_$2(String suffix, String value) {
+        try {
+            Files.write(directory.resolve("test.json" + suffix), value.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    void when_copy_$1_is_deleted(String suffix) {
+        assertTrue(directory.resolve("test.json" + suffix).toFile().delete());
+    }
+
+
+    //////////
+    // Then //
+    //////////
+
+    // Only whole words decode, standing in for JSON that a torn write leaves unparseable
+    private String read() throws IOException {
+        return files.read(filename, bytes -> {
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            if ( !value.matches("one|two|three|four") ) {
+                throw new IOException("Cannot decode '" + value + "'");
+            }
+            return value;
+        });
+    }
+
+    void then_file_reads_$1(String expected) {
+        try {
+            assertEquals(expected, read());
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    void then_file_fails_to_read() {
+        try {
+            read();
+            fail("Expected an exception");
+        } catch (IOException ignored) {}
+    }
+
+    void then_append_fails() {
+        try {
+            files.append(filename, "three\n".getBytes(StandardCharsets.UTF_8));
+            fail("Expected an exception");
+        } catch (IOException ignored) {}
+    }
+
+    void then_copy_$1_holds_$2(String suffix, String expected) {
+        Path copy = directory.resolve("test.json" + suffix);
+        if ( expected==null ) {
+            assertFalse(Files.exists(copy));
+        } else {
+            try {
+                assertEquals(expected, new String(Files.readAllBytes(copy), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.TestModule;
+import org.junit.runner.RunWith;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.time.DayOfWeek.*;
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(TestModule.class)
+public class TestEventStore {
+
+    private EventStore store;
+    private Map<Integer, MediaEvent> added = new HashMap<>();
+    private int nextId = 1;
+
+    @Story
+    public void testPackedRoundTrip() {
+
+        given_a_store();
+
+        int oneOff = when_add_$1(event("2016-03-02", "10:00", "11:00"));
+        int overnight = when_add_$1(event("2016-03-02", "22:00", "02:00"));
+        int weekly = when_add_$1(event("2016-03-07", "10:00", "12:00", MONDAY, THURSDAY));
+        MediaEvent ending = event("2016-03-07", "23:30", "00:00", SUNDAY);
+        ending.setEndDate(LocalDate.parse("2016-04-03"));
+        int ended = when_add_$1(ending);
+
+        then_row_$1_is_packed_$2(oneOff, true);
+        then_row_$1_is_packed_$2(overnight, true);
+        then_row_$1_is_packed_$2(weekly, true);
+        then_row_$1_is_packed_$2(ended, true);
+
+        then_row_$1_unpacks_to_its_event(oneOff);
+        then_row_$1_unpacks_to_its_event(overnight);
+        then_row_$1_unpacks_to_its_event(weekly);
+        then_row_$1_unpacks_to_its_event(ended);
+
+        then_row_$1_spans_$2_days(overnight, 1);
+        then_row_$1_spans_$2_days(ended, 1);
+        then_row_$1_has_no_end_$2(weekly, true);
+        then_row_$1_has_no_end_$2(ended, false);
+
+    }
+
+    @Story
+    public void testFreeRowsReused() {
+
+        given_a_store();
+
+        int first = when_add_$1(event("2016-03-02", "10:00", "11:00"));
+        int second = when_add_$1(event("2016-03-02", "12:00", "13:00"));
+        int third = when_add_$1(event("2016-03-02", "14:00", "15:00"));
+        int secondId = store.getId(second);
+
+        when_remove_row_$1(second);
+        then_size_is_$1(2);
+        then_id_$1_is_at_row_$2(secondId, -1);
+        then_row_$1_is_live_$2(second, false);
+
+        // The freed row is taken before the arrays grow any further
+        int reused = when_add_$1(event("2016-03-03", "10:00", "11:00"));
+        assertEquals(second, reused);
+        then_high_water_is_$1(3);
+        then_size_is_$1(3);
+        then_id_$1_is_at_row_$2(store.getId(reused), reused);
+        then_row_$1_unpacks_to_its_event(reused);
+        then_row_$1_unpacks_to_its_event(first);
+        then_row_$1_unpacks_to_its_event(third);
+
+    }
+
+    @Story
+    public void testObjectsKept() {
+
+        given_a_store();
+
+        MediaEvent counted = event("2016-03-07", "10:00", "11:00", MONDAY);
+        counted.setOccurrences(3);
+        MediaEvent fortnightly = event("2016-03-06", "10:00", "11:00");
+        fortnightly.setRecurrence(new Recurrence(Recurrence.Frequency.WEEKLY, 2, Collections.singleton(SUNDAY), null, null, null));
+        MediaEvent overridden = event("2016-03-07", "12:00", "13:00", MONDAY);
+        overridden.putOverride(EventOverride.cancel("2016-03-14"));
+
+        then_row_$1_holds_$2(when_add_$1(counted), counted);
+        then_row_$1_holds_$2(when_add_$1(fortnightly), fortnightly);
+        then_row_$1_holds_$2(when_add_$1(overridden), overridden);
+
+    }
+
+    @Story
+    public void testAttachKeepsChanges() {
+
+        given_a_store();
+
+        int weekly = when_add_$1(event("2016-03-07", "10:00", "12:00", MONDAY));
+
+        // A packed row hands out a new event each time, so changes to one would be lost
+        MediaEvent series = store.get(weekly);
+        assertNotSame(series, store.get(weekly));
+
+        when_attach_$1_to_row_$2(series, weekly);
+        series.putOverride(EventOverride.cancel("2016-03-14"));
+        then_row_$1_holds_$2(weekly, series);
+        assertNotNull(store.get(weekly).getOverride(LocalDate.parse("2016-03-14")));
+        then_row_$1_repeats_on_$2_$3(weekly, "2016-03-14", true);
+
+    }
+
+    @Story
+    public void testPackedAndObjectRowsAgree() {
+
+        MediaEvent ending = event("2016-03-07", "22:00", "01:00", MONDAY, FRIDAY);
+        ending.setEndDate(LocalDate.parse("2016-03-25"));
+
+        then_packed_and_object_rows_agree_for_$1(event("2016-03-09", "10:00", "11:00"));
+        then_packed_and_object_rows_agree_for_$1(event("2016-03-09", "23:00", "01:00"));
+        then_packed_and_object_rows_agree_for_$1(event("2016-03-07", "10:00", "12:00", MONDAY, WEDNESDAY, SATURDAY));
+        then_packed_and_object_rows_agree_for_$1(ending);
+
+    }
+
+
+    ///////////
+    // Given //
+    ///////////
+
+    void given_a_store() {
+        store = new EventStore();
+    }
+
+    private MediaEvent event(String date, String start, String end, DayOfWeek... repeats) {
+        return new MediaEvent(nextId++, 1, date, start, end, repeats);
+    }
+
+
+    //////////
+    // When //
+    //////////
+
+    int when_add_$1(MediaEvent event) {
+        int row = store.add(event);
+        assertEquals(row, store.find(event.getId()));
+        added.put(row, event);
+        return row;
+    }
+
+    void when_remove_row_$1(int row) {
+        store.remove(row);
+    }
+
+    void when_attach_$1_to_row_$2(MediaEvent event, int row) {
+        store.attach(row, event);
+    }
+
+
+    //////////
+    // Then //
+    //////////
+
+    void then_row_$1_is_packed_$2(int row, boolean packed) {
+        assertEquals(packed, store.getObject(row)==null);
+    }
+
+    void then_row_$1_holds_$2(int row, MediaEvent event) {
+        assertSame(event, store.getObject(row));
+        assertSame(event, store.get(row));
+    }
+
+    // MediaEvent.equals leaves out the repeat days and end date, so those are checked too
+    void then_row_$1_unpacks_to_its_event(int row) {
+        MediaEvent event = added.get(row);
+        MediaEvent unpacked = store.get(row);
+        assertNotSame(event, unpacked);
+        assertEquals(event, unpacked);
+        assertEquals(event.getRepeatOn(), unpacked.getRepeatOn());
+        assertEquals(event.getEndDate(), unpacked.getEndDate());
+        assertEquals(event.getLastDate(), unpacked.getLastDate());
+    }
+
+    void then_row_$1_spans_$2_days(int row, int days) {
+        assertEquals(days, store.getSpanDays(row));
+        assertEquals(days, store.get(row).getSpanDays());
+    }
+
+    void then_row_$1_has_no_end_$2(int row, boolean open) {
+        assertEquals(open, store.get(row).getEndDate()==null);
+        assertEquals(open, store.getLastDay(row)==EventStore.NO_END);
+    }
+
+    void then_row_$1_repeats_on_$2_$3(int row, String date, boolean repeats) {
+        assertEquals(repeats, store.repeatsOn(row, LocalDate.parse(date)));
+    }
+
+    void then_row_$1_is_live_$2(int row, boolean live) {
+        assertEquals(live, store.isLive(row));
+    }
+
+    void then_id_$1_is_at_row_$2(int id, int row) {
+        assertEquals(row, store.find(id));
+    }
+
+    void then_size_is_$1(int size) {
+        assertEquals(size, store.size());
+    }
+
+    void then_high_water_is_$1(int highWater) {
+        assertEquals(highWater, store.getHighWater());
+    }
+
+    // The same event held packed in one store and as an object in another answers alike on every day
+    void then_packed_and_object_rows_agree_for_$1(MediaEvent event) {
+        EventStore packed = new EventStore();
+        int packedRow = packed.add(event);
+        assertNull(packed.getObject(packedRow));
+        EventStore objects = new EventStore();
+        int objectRow = objects.add(event);
+        objects.attach(objectRow, event);
+        assertNotNull(objects.getObject(objectRow));
+
+        LocalDate first = event.getStartDate().minusDays(7);
+        for ( LocalDate date = first; date.isBefore(first.plusDays(60)); date = date.plusDays(1) ) {
+            if ( event.isRepeating() ) {
+                assertEquals(date.toString(), objects.repeatsOn(objectRow, date), packed.repeatsOn(packedRow, date));
+            }
+            assertEquals(date.toString(), objects.isExpired(objectRow, date), packed.isExpired(packedRow, date));
+        }
+        assertEquals(objects.getSpanDays(objectRow), packed.getSpanDays(packedRow));
+        assertEquals(objects.isRepeating(objectRow), packed.isRepeating(packedRow));
+    }
+
+}
@@ -0,0 +1,90 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.TestModule;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(TestModule.class)
+public class TestIdIndex {
+
+    private IdIndex index;
+    private Map<Integer, Integer> expected;
+
+    @Story
+    public void testPutGetRemove() {
+
+        given_an_empty_index();
+
+        when_put_$1_at_row_$2(7, 0);
+        when_put_$1_at_row_$2(-3, 1);
+        when_put_$1_at_row_$2(1000000, 2);
+        then_$1_is_at_row_$2(7, 0);
+        then_$1_is_at_row_$2(-3, 1);
+        then_$1_is_at_row_$2(1000000, 2);
+        then_$1_is_at_row_$2(8, IdIndex.NONE);
+        then_$1_is_at_row_$2(Integer.MAX_VALUE + 1L, IdIndex.NONE);
+
+        when_put_$1_at_row_$2(7, 5);
+        then_$1_is_at_row_$2(7, 5);
+
+        when_remove_$1(-3);
+        when_remove_$1(42);
+        then_$1_is_at_row_$2(-3, IdIndex.NONE);
+        then_$1_is_at_row_$2(7, 5);
+
+    }
+
+    @Story
+    public void testChurn() {
+
+        given_an_empty_index();
+
+        // Clustered ids and heavy removal exercise the backward shift across wrapped runs
+        Random random = new Random(42);
+        for ( int i = 0; i < 200000; i++ ) {
+            int id = random.nextInt(5000) * 16;
+            if ( random.nextInt(3)==0 ) {
+                when_remove_$1(id);
+            } else {
+                when_put_$1_at_row_$2(id, i);
+            }
+        }
+        then_index_matches_expected();
+
+    }
+
+    void given_an_empty_index() {
+        index = new IdIndex();
+        expected = new HashMap<>();
+    }
+
+    void when_put_$1_at_row_$2(int id, int row) {
+        index.put(id, row);
+        expected.put(id, row);
+    }
+
+    void when_remove_$1(int id) {
+        index.remove(id);
+        expected.remove(id);
+    }
+
+    void then_$1_is_at_row_$2(long id, int row) {
+        assertEquals(row, index.get(id));
+    }
+
+    void then_index_matches_expected() {
+        for ( int id = -16; id < 5000 * 16 + 16; id++ ) {
+            Integer row = expected.get(id);
+            assertEquals(row==null ? IdIndex.NONE : row, index.get(id));
+        }
+    }
+
+}
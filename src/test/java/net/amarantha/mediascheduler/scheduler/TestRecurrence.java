@@ -0,0 +1,163 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.TestModule;
+import net.amarantha.mediascheduler.exception.ScheduleConflictException;
+import org.junit.runner.RunWith;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+
+import static java.time.DayOfWeek.*;
+import static net.amarantha.mediascheduler.scheduler.Recurrence.Frequency.*;
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(TestModule.class)
+public class TestRecurrence {
+
+    private int nextId = 1;
+
+    @Story
+    public void testSetPosAcrossDays() {
+
+        // Positions count through every candidate day of the month together
+        then_dates_from_$1_to_$2_are_$3(rule(MONTHLY, 1, days(MONDAY, TUESDAY, WEDNESDAY, THURSDAY, FRIDAY), -1, null), "2016-01-01", "2016-06-30",
+                "2016-01-29", "2016-02-29", "2016-03-31", "2016-04-29", "2016-05-31", "2016-06-30");
+        then_dates_from_$1_to_$2_are_$3(rule(MONTHLY, 1, days(SATURDAY, SUNDAY), 2, null), "2016-01-01", "2016-03-31",
+                "2016-01-03", "2016-02-07", "2016-03-06");
+        then_dates_from_$1_to_$2_are_$3(rule(MONTHLY, 1, days(SUNDAY), 1, null), "2016-01-01", "2016-03-31",
+                "2016-01-03", "2016-02-07", "2016-03-06");
+        then_dates_from_$1_to_$2_are_$3(rule(MONTHLY, 1, null, 2, Arrays.asList(1, 15, -1)), "2016-01-01", "2016-02-29",
+                "2016-01-15", "2016-02-15");
+
+    }
+
+    @Story
+    public void testCompileLeavesRuleAlone() {
+
+        // One rule shared by two events compiles separately for each
+        Recurrence fortnightly = rule(WEEKLY, 2, days(SUNDAY), null, null);
+        MediaEvent first = when_add_event_on_$1_recurring_$2("2016-03-06", fortnightly);
+        first.setOccurrences(2);
+        MediaEvent second = when_add_event_on_$1_recurring_$2("2016-03-13", fortnightly);
+
+        then_event_$1_occurs_on_$2_$3(first, "2016-03-20", true);
+        then_event_$1_occurs_on_$2_$3(first, "2016-03-27", false);
+        then_event_$1_occurs_on_$2_$3(second, "2016-03-20", false);
+        then_event_$1_occurs_on_$2_$3(second, "2016-03-27", true);
+        assertEquals(LocalDate.parse("2016-03-20"), first.getLastDate());
+        assertNull(second.getLastDate());
+
+    }
+
+    @Story
+    public void testOccurrenceMasksMatchLookups() {
+
+        Recurrence except = rule(WEEKLY, 1, days(MONDAY, THURSDAY), null, null);
+        except.getExcept().add(LocalDate.parse("2016-03-07"));
+
+        then_masks_match_lookups_for_$1(when_add_event_on_$1_recurring_$2("2016-02-29", except));
+        then_masks_match_lookups_for_$1(when_add_event_on_$1_recurring_$2("2016-02-29", rule(WEEKLY, 3, days(SATURDAY, SUNDAY), null, null)));
+        then_masks_match_lookups_for_$1(when_add_event_on_$1_recurring_$2("2016-02-29", rule(DAILY, 4, null, null, null)));
+        then_masks_match_lookups_for_$1(when_add_event_on_$1_recurring_$2("2016-01-31", rule(MONTHLY, 1, null, null, Arrays.asList(-1, 29))));
+        then_masks_match_lookups_for_$1(when_add_event_on_$1_recurring_$2("2016-01-01", rule(MONTHLY, 5, days(TUESDAY, FRIDAY), -2, null)));
+        MediaEvent ending = when_add_event_on_$1_recurring_$2("2016-01-01", rule(MONTHLY, 1, days(SUNDAY), 1, null));
+        ending.setEndDate(LocalDate.parse("2016-08-10"));
+        then_masks_match_lookups_for_$1(ending);
+
+    }
+
+    @Story
+    public void testMonthlyConflicts() {
+
+        Schedule schedule = new Schedule();
+        for ( int day = 1; day <= 28; day++ ) {
+            when_add_$1_to_$2_expecting_$3(monthly(day), schedule, null);
+        }
+        when_add_$1_to_$2_expecting_$3(monthly(14), schedule, ScheduleConflictException.class);
+
+        // The last day of the month clashes with the 28th each non-leap February
+        when_add_$1_to_$2_expecting_$3(monthly(-1), schedule, ScheduleConflictException.class);
+
+    }
+
+
+    ///////////
+    // Given //
+    ///////////
+
+    private Recurrence rule(Recurrence.Frequency frequency, Integer interval, Set<DayOfWeek> byDay, Integer setPos, List<Integer> byMonthDay) {
+        return new Recurrence(frequency, interval, byDay, setPos, byMonthDay==null ? null : new HashSet<>(byMonthDay), null);
+    }
+
+    private Set<DayOfWeek> days(DayOfWeek... days) {
+        return new HashSet<>(Arrays.asList(days));
+    }
+
+    private MediaEvent monthly(int day) {
+        MediaEvent event = new MediaEvent(nextId++, 1, "2016-01-01", "10:00", "11:00");
+        event.setRecurrence(rule(MONTHLY, 1, null, null, Collections.singletonList(day)));
+        return event;
+    }
+
+
+    //////////
+    // When //
+    //////////
+
+    MediaEvent when_add_event_on_$1_recurring_$2(String date, Recurrence recurrence) {
+        MediaEvent event = new MediaEvent(nextId++, 1, date, "10:00", "11:00");
+        event.setRecurrence(recurrence);
+        return event;
+    }
+
+    void when_add_$1_to_$2_expecting_$3(MediaEvent event, Schedule schedule, Class<? extends Exception> expectedExceptionClass) {
+        try {
+            schedule.addEvent(event);
+            if ( expectedExceptionClass!=null ) {
+                fail("Expected an exception");
+            }
+        } catch (Exception e) {
+            if ( expectedExceptionClass==null ) {
+                fail("Did not expect an exception: " + e.getMessage());
+            }
+            assertEquals(expectedExceptionClass, e.getClass());
+        }
+    }
+
+
+    //////////
+    // Then //
+    //////////
+
+    void then_dates_from_$1_to_$2_are_$3(Recurrence recurrence, String from, String to, String... dates) {
+        MediaEvent event = when_add_event_on_$1_recurring_$2(from, recurrence);
+        List<String> result = new ArrayList<>();
+        for ( LocalDate date : event.getRule().expand(LocalDate.parse(from), LocalDate.parse(to)) ) {
+            result.add(date.toString());
+        }
+        assertEquals(Arrays.asList(dates), result);
+    }
+
+    void then_event_$1_occurs_on_$2_$3(MediaEvent event, String date, boolean occurs) {
+        assertEquals(occurs, event.occursOn(LocalDate.parse(date)));
+    }
+
+    // Windows start on awkward days and cross month ends, leap days and the skipped one in 2100
+    void then_masks_match_lookups_for_$1(MediaEvent event) {
+        for ( String start : new String[] { "2015-12-20", "2016-02-03", "2016-07-30", "2099-12-31", "2100-02-15" } ) {
+            long fromDay = LocalDate.parse(start).toEpochDay();
+            for ( int days : new int[] { 1, 17, 64 } ) {
+                long mask = event.occurrences(fromDay, days);
+                for ( int i = 0; i < 64; i++ ) {
+                    boolean expected = i<days && event.occursOn(LocalDate.ofEpochDay(fromDay + i));
+                    assertEquals(start + " +" + i, expected, (mask & 1L << i)!=0);
+                }
+            }
+        }
+    }
+
+}
@@ -5,24 +5,33 @@ import com.googlecode.guicebehave.Modules;
 import com.googlecode.guicebehave.Story;
 import com.googlecode.guicebehave.StoryRunner;
 import net.amarantha.mediascheduler.TestModule;
-import net.amarantha.mediascheduler.device.ArKaosMidiCommand;
-import net.amarantha.mediascheduler.device.Projector;
+import net.amarantha.mediascheduler.audit.AuditEntry;
+import net.amarantha.mediascheduler.audit.AuditLog;
+import net.amarantha.mediascheduler.device.*;
 import net.amarantha.mediascheduler.exception.*;
 import net.amarantha.mediascheduler.midi.Midi;
 import net.amarantha.mediascheduler.midi.MidiCommand;
 import net.amarantha.mediascheduler.midi.MidiMock;
 import net.amarantha.mediascheduler.utility.Now;
+import net.amarantha.mediascheduler.utility.PropertyManager;
+import net.amarantha.mediascheduler.utility.VirtualClock;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.runner.RunWith;
 
+import java.io.UncheckedIOException;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import static java.time.DayOfWeek.*;
-import static net.amarantha.mediascheduler.scheduler.Scheduler.MAX_PRIORITY;
 import static org.junit.Assert.*;
 
 @RunWith(StoryRunner.class) @Modules(TestModule.class)
@@ -34,6 +43,13 @@ public class TestScheduler {
 
     @Inject private Midi midi;
     @Inject private Projector projector;
+    @Inject private OutputRegistry outputs;
+    @Inject private PropertyManager props;
+    @Inject private AuditLog audit;
+    @Inject private Storage storage;
+    @Inject private Persister persister;
+    @Inject private JsonStorage jsonStorage;
+    @Inject private JsonEncoderMock json;
 
     private static final Cue CUE_LIST_FAIL = new Cue(0, 0, "This Will Fail");
     private static final Cue CUE_LIST_DUPLICATE = new Cue(1, 99, "Duplicate");
@@ -41,6 +57,7 @@ public class TestScheduler {
     private static final Cue CUE_LIST_2 = new Cue(2, 2, "Polar Bears");
     private static final Cue CUE_LIST_3 = new Cue(3, 3, "Skinny Dips");
     private static final Cue CUE_LIST_4 = new Cue(4, 4, "Does Not Exist");
+    private static final Cue CUE_LIST_SIDE = new Cue(5, 5, "Side Screen", Collections.singleton("side"));
 
     @Story
     public void testCueLists() {
@@ -69,10 +86,34 @@ public class TestScheduler {
 
     }
 
+    @Story
+    public void testCueSearch() {
+
+        when_add_cuelist_$1(new Cue(10, 10, "Dragon Fire"), false);
+        when_add_cuelist_$1(new Cue(11, 11, "Fire Dragons"), false);
+        when_add_cuelist_$1(new Cue(12, 12, "Sea Dragons"), false);
+        when_add_cuelist_$1(new Cue(13, 13, "Bonfire"), false);
+        then_stored_cues_are_$1(8);
+
+        // Names starting with the query come first, then any others containing it
+        then_cues_found_for_$1_from_$2_limit_$3_are_$4("dragon", 0, 10, 10, 1, 11, 12);
+        then_cues_found_for_$1_from_$2_limit_$3_are_$4("dragon", 1, 2, 1, 11);
+        then_cues_found_for_$1_from_$2_limit_$3_are_$4("FIRE", 0, 10, 11, 10, 13);
+        then_cues_found_for_$1_from_$2_limit_$3_are_$4("ir", 0, 10, 10, 11, 13);
+        then_cues_found_for_$1_from_$2_limit_$3_are_$4(null, 6, 5, 12, 13);
+
+        when_remove_cuelist_$1(new Cue(13, 13, "Bonfire"), false);
+        then_stored_cues_are_$1(7);
+        then_cues_found_for_$1_from_$2_limit_$3_are_$4("fire", 0, 10, 11, 10);
+        assertNull(scheduler.getCue("Bonfire"));
+        assertEquals("Sea Dragons", scheduler.getCue(12).getName());
+
+    }
+
     @Story
     public void testScheduleCursor() {
 
-        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_FAIL, "2016-03-01", "12:00", "11:00",
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_FAIL, "2016-03-01", "12:00", "12:00",
                 IllegalArgumentException.class);
 
         when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-02", "10:00", "11:00");
@@ -143,9 +184,6 @@ public class TestScheduler {
         when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(0, CUE_LIST_FAIL, "2016-03-01", "10:00", "11:00",
                 PriorityOutOfBoundsException.class);
 
-        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(MAX_PRIORITY+1, CUE_LIST_FAIL, "2016-03-01", "10:00", "11:00",
-                PriorityOutOfBoundsException.class);
-
         when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(2, CUE_LIST_1, "2016-03-03", "10:00", "12:00");
         when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(2, CUE_LIST_2, "2016-03-03", "12:00", "14:00");
 
@@ -180,12 +218,14 @@ public class TestScheduler {
 
         when_switch_event_$1_to_priority_$2(id, 1);
         then_current_cuelist_is_$1(CUE_LIST_2);
+        then_event_$1_is_stored_in_$2(id, "default/1");
         when_switch_event_$1_to_priority_$2(id, 3);
         then_current_cuelist_is_$1(CUE_LIST_3);
         when_switch_event_$1_to_priority_$2(id, -1, PriorityOutOfBoundsException.class);
         then_current_cuelist_is_$1(CUE_LIST_3);
         when_switch_event_$1_to_priority_$2(id, 2, ScheduleConflictException.class);
         then_current_cuelist_is_$1(CUE_LIST_3);
+        then_event_$1_is_stored_in_$2(id, "default/3");
 
         when_time_is_$1("13:30");
         then_current_cuelist_is_$1(CUE_LIST_2);
@@ -293,10 +333,523 @@ public class TestScheduler {
     }
 
     @Story
-    public void testMidnightFix() {
+    public void testManyLayers() {
+
+        for ( int priority = 1; priority <= 150; priority++ ) {
+            Cue cue = ( priority%2==0 ? CUE_LIST_1 : CUE_LIST_2 );
+            when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(priority, cue, "2016-03-03", String.format("%02d:00", priority%12), String.format("%02d:30", priority%12 + 12));
+        }
+        Integer campaign =
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(5000, CUE_LIST_3, "2016-03-03", "11:00", "11:15");
+
+        when_date_is_$1("2016-03-03");
+        when_time_is_$1("11:10");
+        then_current_cuelist_is_$1(CUE_LIST_3);
+        when_time_is_$1("11:20");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+        when_time_is_$1("23:00");
+        then_current_cuelist_is_$1(CUE_LIST_2);     // 143 is the highest layer still running
+        when_time_is_$1("23:45");
+        then_current_cuelist_is_$1(null);
+
+        when_remove_event_$1(campaign);
+        when_time_is_$1("11:10");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+
+    }
+
+    @Story
+    public void testCrossMidnight() {
+
         Integer id =
-        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-14", "10:00", "00:00");
-        then_event_$1_end_time_id_$2(id, "23:59");
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-14", "22:00", "00:30");
+        then_event_$1_end_time_id_$2(id, "00:30");
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-15", "00:30", "02:00");
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-03-15", "23:00", "01:00", SATURDAY, SUNDAY);
+
+        // Runs into the next morning, clashing with anything in that range
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-03-15", "00:00", "00:15", ScheduleConflictException.class);
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-03-21", "00:30", "01:30", ScheduleConflictException.class, MONDAY);
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-03-21", "01:00", "02:00", MONDAY);
+
+        when_date_is_$1("2016-03-14");
+        when_time_is_$1("23:30");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+        when_date_is_$1("2016-03-15");
+        when_time_is_$1("00:15");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+        when_time_is_$1("00:45");
+        then_current_cuelist_is_$1(CUE_LIST_2);
+
+        when_date_is_$1("2016-03-20");
+        when_time_is_$1("23:30");
+        then_current_cuelist_is_$1(CUE_LIST_3);
+        when_date_is_$1("2016-03-21");
+        when_time_is_$1("00:30");
+        then_current_cuelist_is_$1(CUE_LIST_3);
+        when_time_is_$1("02:30");
+        then_current_cuelist_is_$1(null);
+
+    }
+
+    @Story
+    public void testMultiDaySpan() {
+
+        Integer id = nextEventId++;
+        when_add_event_$1(new MediaEvent(id, CUE_LIST_1.getId(), "2016-03-14", "18:00", "09:00", 3));
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-16", "12:00", "13:00", ScheduleConflictException.class);
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-17", "09:00", "10:00");
+
+        when_date_is_$1("2016-03-16");
+        when_time_is_$1("03:00");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+        when_date_is_$1("2016-03-17");
+        when_time_is_$1("08:59");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+        when_time_is_$1("09:30");
+        then_current_cuelist_is_$1(CUE_LIST_2);
+
+    }
+
+    @Story
+    public void testEndDates() {
+
+        MediaEvent counted = new MediaEvent(nextEventId++, CUE_LIST_1.getId(), "2016-03-14", "10:00", "12:00", MONDAY);
+        counted.setOccurrences(3);
+        when_add_event_$1(counted);
+        then_there_are_$1_events_between_$2_and_$3(3, "2016-03-01", "2016-04-30");
+
+        MediaEvent ending = new MediaEvent(nextEventId++, CUE_LIST_2.getId(), "2016-03-14", "10:00", "12:00", TUESDAY);
+        ending.setEndDate(LocalDate.parse("2016-03-22"));
+        when_add_event_$1(ending);
+        then_there_are_$1_events_between_$2_and_$3(5, "2016-03-01", "2016-04-30");
+
+        // Free again once the repeats have run out
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-03-28", "11:00", "13:00", ScheduleConflictException.class);
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-04-04", "11:00", "13:00");
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-03-29", "11:00", "13:00");
+
+        when_date_is_$1("2016-03-28");
+        when_time_is_$1("11:00");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+        when_date_is_$1("2016-04-11");
+        then_current_cuelist_is_$1(null);
+
+    }
+
+    @Story
+    public void testRecurrenceRules() {
+
+        // 2016-03-06 is the first Sunday of March
+        when_add_event_$1_recurring_$2(new MediaEvent(nextEventId++, CUE_LIST_1.getId(), "2016-03-06", "10:00", "12:00"),
+                new Recurrence(Recurrence.Frequency.WEEKLY, 2, Collections.singleton(SUNDAY), null, null, Collections.singleton("2016-04-03")));
+        then_there_are_$1_events_between_$2_and_$3(2, "2016-03-01", "2016-04-10");
+
+        // Alternate Sundays are free, the first Sunday of each month is not
+        when_add_event_$1_recurring_$2(new MediaEvent(nextEventId++, CUE_LIST_2.getId(), "2016-03-13", "11:00", "12:00"),
+                new Recurrence(Recurrence.Frequency.WEEKLY, 2, Collections.singleton(SUNDAY), null, null, null));
+        when_add_event_$1_recurring_$2_expecting_$3(new MediaEvent(nextEventId++, CUE_LIST_3.getId(), "2016-03-01", "11:00", "12:00"),
+                new Recurrence(Recurrence.Frequency.MONTHLY, null, Collections.singleton(SUNDAY), 1, null, null),
+                ScheduleConflictException.class);
+        when_add_event_$1_recurring_$2(new MediaEvent(nextEventId++, CUE_LIST_3.getId(), "2016-03-01", "13:00", "14:00"),
+                new Recurrence(Recurrence.Frequency.MONTHLY, null, Collections.singleton(SUNDAY), 1, null, null));
+
+        when_date_is_$1("2016-03-20");
+        when_time_is_$1("10:30");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+        when_date_is_$1("2016-04-03");
+        then_current_cuelist_is_$1(null);
+        when_time_is_$1("13:30");
+        then_current_cuelist_is_$1(CUE_LIST_3);
+        when_date_is_$1("2016-04-10");
+        then_current_cuelist_is_$1(null);
+
+        // The last day of the month, every third month
+        when_add_event_$1_recurring_$2(new MediaEvent(nextEventId++, CUE_LIST_2.getId(), "2016-01-31", "18:00", "19:00"),
+                new Recurrence(Recurrence.Frequency.MONTHLY, 3, null, null, Collections.singleton(-1), null));
+        then_there_are_$1_events_between_$2_and_$3(5, "2016-04-01", "2016-04-30");
+        when_date_is_$1("2016-04-30");
+        when_time_is_$1("18:30");
+        then_current_cuelist_is_$1(CUE_LIST_2);
+
+    }
+
+    @Story
+    public void testOverrides() {
+
+        Integer weekly = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-07", "10:00", "12:00", MONDAY);
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-14", "13:00", "14:00");
+
+        when_override_event_$1_with_$2(weekly, EventOverride.cancel("2016-03-21"), null);
+        when_override_event_$1_with_$2(weekly, EventOverride.replace("2016-03-14", CUE_LIST_3.getId(), "11:00", "13:30"), ScheduleConflictException.class);
+        when_override_event_$1_with_$2(weekly, EventOverride.replace("2016-03-14", CUE_LIST_3.getId(), "11:00", "12:30"), null);
+        when_override_event_$1_with_$2(weekly, EventOverride.cancel("2016-03-15"), IllegalArgumentException.class);
+        then_there_are_$1_events_between_$2_and_$3(4, "2016-03-07", "2016-03-28");
+
+        // New times that end before they start only run overnight when the span is given
+        when_override_event_$1_with_$2(weekly, EventOverride.replace("2016-04-04", null, "22:00", "02:00"), IllegalArgumentException.class);
+        then_occurrence_$1_on_$2_is_overridden_$3(weekly, "2016-04-04", false);
+        when_override_event_$1_with_$2(weekly, new EventOverride("2016-04-04", false, null, "22:00", "02:00", 1), null);
+        then_occurrence_$1_on_$2_is_overridden_$3(weekly, "2016-04-04", true);
+        when_override_event_$1_with_$2(weekly, EventOverride.replace("2016-04-11", null, "22:00", "00:00"), null);
+        then_removing_override_$1_on_$2_finds_nothing(weekly, "2016-04-18");
+
+        // A moved occurrence frees its old slot and takes the new one
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-21", "10:00", "11:00");
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-14", "12:00", "12:45", ScheduleConflictException.class);
+
+        when_date_is_$1("2016-03-14");
+        when_time_is_$1("10:30");
+        then_current_cuelist_is_$1(null);
+        when_time_is_$1("12:15");
+        then_current_cuelist_is_$1(CUE_LIST_3);
+        when_date_is_$1("2016-03-28");
+        when_time_is_$1("10:30");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+
+        when_remove_override_$1_on_$2(weekly, "2016-03-21", ScheduleConflictException.class);
+        when_remove_override_$1_on_$2(weekly, "2016-03-14", null);
+        when_date_is_$1("2016-03-14");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+
+    }
+
+    @Story
+    public void testEventOrder() {
+
+        // Events sort on start date before start time, so a series that began earlier comes first
+        Integer series = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-07", "12:00", "13:00", MONDAY);
+        Integer late = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-14", "18:00", "19:00");
+        Integer early = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-14", "09:00", "10:00");
+        Integer weekly = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-03-14", "14:00", "15:00", MONDAY);
+        then_events_on_$1_are_$2("2016-03-14", series, early, weekly, late);
+        then_events_on_$1_are_$2("2016-03-21", series, weekly);
+
+        // A moved occurrence takes the place of its new start
+        when_override_event_$1_with_$2(series, EventOverride.replace("2016-03-14", null, "20:00", "21:00"), null);
+        then_events_on_$1_are_$2("2016-03-14", early, weekly, late, series);
+
+        when_remove_event_$1(early);
+        when_remove_event_$1(weekly);
+        then_events_on_$1_are_$2("2016-03-14", late, series);
+        then_events_on_$1_are_$2("2016-03-21", series);
+
+    }
+
+    @Story
+    public void testUpdateEvent() {
+
+        Integer id = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-02", "10:00", "11:00");
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-02", "12:00", "13:00");
+        when_date_is_$1("2016-03-02");
+
+        // A failed update leaves the original in place
+        when_update_event_$1_to_$2_on_$3_from_$4_to_$5(id, CUE_LIST_3, "2016-03-02", "12:30", "13:30", ScheduleConflictException.class);
+        when_update_event_$1_to_$2_on_$3_from_$4_to_$5(id, CUE_LIST_4, "2016-03-02", "10:00", "11:00", CueNotFoundException.class);
+        when_time_is_$1("10:30");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+
+        // The replacement may overlap the slot it replaces
+        when_update_event_$1_to_$2_on_$3_from_$4_to_$5(id, CUE_LIST_3, "2016-03-02", "10:30", "11:30", null);
+        then_audit_trail_is_$1(AuditEntry.Type.EVENT_UPDATED, AuditEntry.Type.CUE_STOPPED, AuditEntry.Type.CUE_STARTED);
+        then_event_$1_is_$2(id, CUE_LIST_3);
+        then_there_are_$1_events_today(2);
+        when_time_is_$1("10:15");
+        then_current_cuelist_is_$1(null);
+        when_time_is_$1("11:15");
+        then_current_cuelist_is_$1(CUE_LIST_3);
+
+        when_update_event_$1_to_$2_on_$3_from_$4_to_$5(99, CUE_LIST_3, "2016-03-02", "15:00", "16:00", null);
+        then_event_$1_exists_$2(99, false);
+
+    }
+
+    @Story
+    public void testConflictReport() {
+
+        Integer morning = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-02", "10:00", "11:00");
+        Integer lunch = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-02", "12:00", "13:00", WEDNESDAY);
+        Integer special = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(2, CUE_LIST_3, "2016-03-09", "12:15", "14:00");
+        when_date_is_$1("2016-03-01");
+        when_time_is_$1("09:00");
+
+        // Every clash over the horizon, layer by layer, not just the first
+        when_check_conflicts_for_$1_over_$2_days(new MediaEvent(100, CUE_LIST_3.getId(), "2016-03-02", "10:30", "12:30", WEDNESDAY), 14);
+        then_conflicts_are_$1(
+                "1:" + morning + "@2016-03-02T10:00", "1:" + lunch + "@2016-03-02T12:00",
+                "2:" + special + "@2016-03-09T12:15", "1:" + lunch + "@2016-03-09T12:00",
+                "1:" + lunch + "@2016-03-16T12:00");
+        then_report_is_clear_$1(false);
+        then_free_slots_start_at_$1("2016-03-02T08:00", "2016-03-02T13:00");
+
+        // An existing event being moved doesn't clash with itself
+        when_check_conflicts_for_$1_over_$2_days(new MediaEvent(morning, CUE_LIST_1.getId(), "2016-03-02", "10:30", "11:30"), 14);
+        then_conflicts_are_$1();
+        then_report_is_clear_$1(true);
+        then_free_slots_start_at_$1("2016-03-02T10:30", "2016-03-02T13:00");
+
+    }
+
+    @Story
+    public void testCompaction() {
+
+        Integer past = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-01", "10:00", "12:00");
+        Integer overnight = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-09", "22:00", "02:00");
+        Integer repeat = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-03-01", "14:00", "16:00", MONDAY);
+        MediaEvent ended = new MediaEvent(nextEventId++, CUE_LIST_3.getId(), "2016-02-01", "14:00", "16:00", TUESDAY);
+        ended.setOccurrences(2);
+        when_add_event_$1(ended);
+        Integer future = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_3, "2016-03-20", "10:00", "12:00");
+
+        when_date_is_$1("2016-03-11");
+        when_compact_schedules_archives_$1(2);
+        then_event_$1_is_stored_in_$2(past, null);
+        then_event_$1_is_stored_in_$2(future, "default/1");
+
+        then_event_$1_exists_$2(past, false);
+        then_event_$1_exists_$2(ended.getId(), false);
+        then_event_$1_exists_$2(overnight, true);
+        then_event_$1_exists_$2(repeat, true);
+        then_event_$1_exists_$2(future, true);
+
+    }
+
+    @Story
+    public void testCompactionStoresPrunedOverrides() {
+
+        Integer weekly = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-07", "10:00", "12:00", MONDAY);
+        when_override_event_$1_with_$2(weekly, EventOverride.cancel("2016-03-07"), null);
+        when_override_event_$1_with_$2(weekly, EventOverride.cancel("2016-03-21"), null);
+        then_event_$1_has_stored_overrides_$2(weekly, "2016-03-07", "2016-03-21");
+
+        when_date_is_$1("2016-03-11");
+        when_compact_schedules_archives_$1(0);
+        then_event_$1_is_stored_in_$2(weekly, "default/1");
+        then_event_$1_has_stored_overrides_$2(weekly, "2016-03-21");
+
+    }
+
+    @Story
+    public void testCompactionKeepsUnarchivedEvents() {
+
+        Integer past = when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-01", "10:00", "12:00");
+        when_date_is_$1("2016-03-11");
+
+        // Events the archive could not take are left for the next compaction
+        when_json_writes_fail_$1(true);
+        when_compact_schedules_archives_$1(0);
+        then_event_$1_is_stored_in_$2(past, "default/1");
+        then_event_$1_exists_$2(past, true);
+
+        when_json_writes_fail_$1(false);
+        when_compact_schedules_archives_$1(1);
+        then_event_$1_is_stored_in_$2(past, null);
+        then_event_$1_exists_$2(past, false);
+
+    }
+
+    @Story
+    public void testWriteBehind() {
+
+        // A burst of edits is committed together, shortly after
+        int commits = ((StorageMock) storage).getCommits();
+        for ( int day = 1; day <= 20; day++ ) {
+            when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, String.format("2016-04-%02d", day), "10:00", "11:00");
+        }
+        then_changes_are_durable_within_$1_millis(2000);
+        then_commits_since_$1_are_at_most_$2(commits, 2);
+
+        // Shutting down commits anything still waiting
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_2, "2016-04-21", "10:00", "11:00");
+        when_persister_restarts();
+        then_changes_are_durable_within_$1_millis(0);
+
+    }
+
+    @Story
+    public void testFailedCommitStaysDirty() {
+
+        // A commit that fails leaves the change waiting, and it is committed once the storage recovers
+        when_storage_fails_$1(true);
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-04-01", "10:00", "11:00");
+        then_changes_are_not_durable_within_$1_millis(600);
+        when_storage_fails_$1(false);
+        then_changes_are_durable_within_$1_millis(2000);
+
+    }
+
+    @Story
+    public void testFailedSaveWrittenAgain() {
+
+        json.takeWritten();
+        when_json_writes_fail_$1(true);
+        jsonStorage.putZone(new Zone("side"));
+        jsonStorage.putEvent(Scheduler.DEFAULT_ZONE, 1, new MediaEvent(nextEventId++, CUE_LIST_1.getId(), "2016-04-01", "10:00", "11:00"));
+        when_json_storage_commits_expecting_failure_$1(true);
+        then_json_files_written_are_$1();
+        when_json_writes_fail_$1(false);
+        when_json_storage_commits_expecting_failure_$1(false);
+        then_json_files_written_are_$1(JsonStorage.ZONES_FILENAME, JsonStorage.SCHEDULES_FILENAME);
+
+        when_json_writes_fail_$1(true);
+        jsonStorage.putCue(CUE_LIST_SIDE);
+        when_json_storage_commits_expecting_failure_$1(true);
+        when_json_writes_fail_$1(false);
+        when_json_storage_commits_expecting_failure_$1(false);
+        then_json_files_written_are_$1(JsonStorage.CUES_JOURNAL);
+
+        when_json_storage_commits_expecting_failure_$1(false);
+        then_json_files_written_are_$1();
+
+    }
+
+    @Story
+    public void testOutputRouting() {
+
+        when_register_output_$1("side");
+        when_add_cuelist_$1(CUE_LIST_SIDE, false);
+
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-02", "10:00", "14:00");
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(2, CUE_LIST_SIDE, "2016-03-02", "11:00", "12:00");
+
+        when_date_is_$1("2016-03-02");
+
+        when_time_is_$1("10:30");
+        then_output_$1_shows_$2(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_1);
+        then_output_$1_shows_$2("side", CUE_LIST_1);
+
+        when_time_is_$1("11:30");
+        then_current_cuelist_is_$1(CUE_LIST_SIDE);
+        then_output_$1_shows_$2(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_1);
+        then_output_$1_shows_$2("side", CUE_LIST_SIDE);
+
+        when_time_is_$1("14:30");
+        then_output_$1_shows_$2(OutputRegistry.DEFAULT_OUTPUT, null);
+        then_output_$1_shows_$2("side", null);
+
+    }
+
+    @Story
+    public void testAuditTrail() {
+
+        Integer id =
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-02", "10:00", "11:00");
+        when_date_is_$1("2016-03-02");
+        when_time_is_$1("10:30");
+        when_pause_zone_$1(Scheduler.DEFAULT_ZONE, true);
+        when_pause_zone_$1(Scheduler.DEFAULT_ZONE, false);
+        when_time_is_$1("11:30");
+        when_remove_event_$1(id);
+
+        then_audit_trail_is_$1(
+                AuditEntry.Type.EVENT_ADDED,
+                AuditEntry.Type.CUE_STARTED,
+                AuditEntry.Type.PAUSED, AuditEntry.Type.CUE_STOPPED,
+                AuditEntry.Type.RESUMED, AuditEntry.Type.CUE_STARTED,
+                AuditEntry.Type.CUE_STOPPED,
+                AuditEntry.Type.EVENT_REMOVED);
+
+    }
+
+    @Story
+    public void testPlaylists() {
+
+        MediaEvent event = new MediaEvent(CUE_LIST_1.getId(), "2016-03-02", "10:00", "11:00");
+        event.setPlaylist(new Playlist(Arrays.asList(
+                new PlaylistItem(CUE_LIST_1.getId(), 60),
+                new PlaylistItem(CUE_LIST_2.getId(), 60, 10),
+                new PlaylistItem(CUE_LIST_3.getId(), 60)), true));
+        when_add_event_$1(event);
+
+        MediaEvent missing = new MediaEvent(CUE_LIST_1.getId(), "2016-03-03", "10:00", "11:00");
+        missing.setPlaylist(new Playlist(Collections.singletonList(new PlaylistItem(CUE_LIST_4.getId(), 60)), false));
+        when_add_event_$1_recurring_$2_expecting_$3(missing, null, CueNotFoundException.class);
+
+        when_date_is_$1("2016-03-02");
+
+        when_time_is_$1("10:00:30");
+        then_output_$1_shows_$2_fading_from_$3(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_1, null);
+
+        when_time_is_$1("10:01:05");
+        then_output_$1_shows_$2_fading_from_$3(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_2, CUE_LIST_1);
+        then_output_$1_level_is_between_$2_and_$3(OutputRegistry.DEFAULT_OUTPUT, 1, Playlist.FULL_LEVEL - 1);
+
+        when_time_is_$1("10:01:30");
+        then_output_$1_shows_$2_fading_from_$3(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_2, null);
+
+        when_time_is_$1("10:02:30");
+        then_output_$1_shows_$2_fading_from_$3(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_3, null);
+
+        // Loops back round to the start
+        when_time_is_$1("10:03:30");
+        then_output_$1_shows_$2_fading_from_$3(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_1, null);
+        when_time_is_$1("10:04:05");
+        then_output_$1_shows_$2_fading_from_$3(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_2, CUE_LIST_1);
+
+        when_time_is_$1("11:00:30");
+        then_output_$1_shows_$2_fading_from_$3(OutputRegistry.DEFAULT_OUTPUT, null, null);
+
+    }
+
+    @Story
+    public void testZones() {
+
+        when_register_output_$1("side");
+        when_create_zone_$1_driving_$2("lobby", "side");
+
+        when_add_zone_$1_event_$2_on_$3_from_$4_to_$5("lobby", CUE_LIST_2, "2016-03-02", "09:00", "11:00");
+        when_add_priority_$1_event_$2_on_$3_from_$4_to_$5(1, CUE_LIST_1, "2016-03-02", "10:00", "12:00");
+
+        when_date_is_$1("2016-03-02");
+
+        when_time_is_$1("09:30");
+        then_current_cuelist_is_$1(null);
+        then_output_$1_shows_$2(OutputRegistry.DEFAULT_OUTPUT, null);
+        then_output_$1_shows_$2("side", CUE_LIST_2);
+
+        when_time_is_$1("10:30");
+        then_current_cuelist_is_$1(CUE_LIST_1);
+        then_output_$1_shows_$2(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_1);
+        then_output_$1_shows_$2("side", CUE_LIST_2);
+
+        when_pause_zone_$1("lobby", true);
+        then_output_$1_shows_$2("side", null);
+        when_time_is_$1("10:45");
+        then_output_$1_shows_$2("side", null);
+        then_output_$1_shows_$2(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_1);
+
+        when_pause_zone_$1("lobby", false);
+        then_output_$1_shows_$2("side", CUE_LIST_2);
+
+        when_time_is_$1("11:30");
+        then_output_$1_shows_$2(OutputRegistry.DEFAULT_OUTPUT, CUE_LIST_1);
+        then_output_$1_shows_$2("side", null);
+
+    }
+
+    @Story
+    public void testTimeZones() {
+
+        when_register_output_$1("side");
+        when_create_zone_$1_driving_$2_in_$3("london", "side", "Europe/London");
+
+        // Clocks go forward at 01:00 GMT: 01:30 local does not exist and starts at 02:30 BST
+        when_add_zone_$1_event_$2_on_$3_from_$4_to_$5("london", CUE_LIST_2, "2016-03-27", "01:30", "03:00");
+        when_utc_time_is_$1("2016-03-27T01:15");
+        then_zone_$1_event_is_$2("london", null);
+        when_utc_time_is_$1("2016-03-27T01:45");
+        then_zone_$1_event_is_$2("london", CUE_LIST_2);
+        then_output_$1_shows_$2("side", CUE_LIST_2);
+        when_utc_time_is_$1("2016-03-27T02:05");
+        then_zone_$1_event_is_$2("london", null);
+
+        // Clocks go back at 01:00 GMT: 01:30 local happens twice, the first (BST) one is used
+        when_add_zone_$1_event_$2_on_$3_from_$4_to_$5("london", CUE_LIST_3, "2016-10-30", "01:30", "01:45");
+        when_utc_time_is_$1("2016-10-30T00:35");
+        then_zone_$1_event_is_$2("london", CUE_LIST_3);
+        when_utc_time_is_$1("2016-10-30T01:35");
+        then_zone_$1_event_is_$2("london", null);
+
     }
 
 
@@ -340,6 +893,7 @@ public class TestScheduler {
 
     void when_stop_scheduler() {
         scheduler.shutdown();
+        now.setClock(null);
     }
 
     void then_midi_active_$1(boolean active) {
@@ -355,6 +909,28 @@ public class TestScheduler {
     // When //
     //////////
 
+    void when_persister_restarts() {
+        persister.shutdown();
+        persister.startup();
+    }
+
+    void when_storage_fails_$1(boolean failing) {
+        ((StorageMock) storage).setFailing(failing);
+    }
+
+    void when_json_writes_fail_$1(boolean failing) {
+        json.setFailing(failing);
+    }
+
+    void when_json_storage_commits_expecting_failure_$1(boolean failure) {
+        try {
+            jsonStorage.commit();
+            assertFalse(failure);
+        } catch (UncheckedIOException e) {
+            assertTrue(failure);
+        }
+    }
+
     void when_date_is_$1(String date) {
         now.setDate(date);
         scheduler.checkSchedule();
@@ -365,6 +941,115 @@ public class TestScheduler {
         scheduler.checkSchedule();
     }
 
+    void when_register_output_$1(String name) {
+        outputs.register(new Output(name, new ArKaos(props, name, new MidiMock()), new ProjectorMock()));
+    }
+
+    void when_create_zone_$1_driving_$2(String zone, String output) {
+        scheduler.createZone(zone, Collections.singleton(output));
+    }
+
+    void when_create_zone_$1_driving_$2_in_$3(String zone, String output, String timeZone) {
+        scheduler.createZone(zone, Collections.singleton(output), ZoneId.of(timeZone));
+    }
+
+    void when_utc_time_is_$1(String dateTime) {
+        now.setClock(new VirtualClock(LocalDateTime.parse(dateTime), ZoneOffset.UTC));
+        scheduler.checkSchedule();
+    }
+
+    void when_pause_zone_$1(String zone, boolean paused) {
+        scheduler.pause(zone, paused);
+    }
+
+    void when_add_zone_$1_event_$2_on_$3_from_$4_to_$5(String zone, Cue cue, String date, String start, String end) {
+        try {
+            scheduler.addEvent(zone, 1, new MediaEvent(nextEventId++, cue.getId(), date, start, end));
+        } catch (SchedulerException e) {
+            fail("Did not expect an exception: " + e.getMessage());
+        }
+    }
+
+    void when_compact_schedules_archives_$1(int count) {
+        assertEquals(count, scheduler.compactSchedules());
+    }
+
+    void when_add_event_$1_recurring_$2(MediaEvent event, Recurrence recurrence) {
+        when_add_event_$1_recurring_$2_expecting_$3(event, recurrence, null);
+    }
+
+    void when_add_event_$1_recurring_$2_expecting_$3(MediaEvent event, Recurrence recurrence, Class<? extends Exception> expectedExceptionClass) {
+        event.setRecurrence(recurrence);
+        try {
+            scheduler.addEvent(event);
+            if ( expectedExceptionClass!=null ) {
+                fail("Expected an exception");
+            }
+        } catch (Exception e) {
+            if ( expectedExceptionClass==null ) {
+                fail("Did not expect an exception: " + e.getMessage());
+            }
+            then_exception_thrown(expectedExceptionClass, e.getClass());
+        }
+    }
+
+    void when_override_event_$1_with_$2(long eventId, EventOverride override, Class<? extends Exception> expectedExceptionClass) {
+        try {
+            assertNotNull(scheduler.overrideOccurrence(eventId, override));
+            if ( expectedExceptionClass!=null ) {
+                fail("Expected an exception");
+            }
+        } catch (Exception e) {
+            if ( expectedExceptionClass==null ) {
+                fail("Did not expect an exception: " + e.getMessage());
+            }
+            then_exception_thrown(expectedExceptionClass, e.getClass());
+        }
+    }
+
+    void when_remove_override_$1_on_$2(long eventId, String date, Class<? extends Exception> expectedExceptionClass) {
+        try {
+            assertTrue(scheduler.removeOverride(eventId, LocalDate.parse(date)));
+            if ( expectedExceptionClass!=null ) {
+                fail("Expected an exception");
+            }
+        } catch (Exception e) {
+            if ( expectedExceptionClass==null ) {
+                fail("Did not expect an exception: " + e.getMessage());
+            }
+            then_exception_thrown(expectedExceptionClass, e.getClass());
+        }
+    }
+
+    void when_update_event_$1_to_$2_on_$3_from_$4_to_$5(int eventId, Cue cue, String date, String start, String end, Class<? extends Exception> expectedExceptionClass) {
+        try {
+            MediaEvent updated = scheduler.updateEvent(new MediaEvent(eventId, cue.getId(), date, start, end));
+            assertEquals(scheduler.getEventById(eventId)!=null, updated!=null);
+            if ( expectedExceptionClass!=null ) {
+                fail("Expected an exception");
+            }
+        } catch (Exception e) {
+            if ( expectedExceptionClass==null ) {
+                fail("Did not expect an exception: " + e.getMessage());
+            }
+            then_exception_thrown(expectedExceptionClass, e.getClass());
+        }
+    }
+
+    void when_check_conflicts_for_$1_over_$2_days(MediaEvent proposed, int days) {
+        report = scheduler.getConflictReport(Scheduler.DEFAULT_ZONE, 1, proposed, days, 2);
+    }
+
+    private ConflictReport report;
+
+    void when_add_event_$1(MediaEvent event) {
+        try {
+            scheduler.addEvent(event);
+        } catch (SchedulerException e) {
+            fail("Did not expect an exception: " + e.getMessage());
+        }
+    }
+
     void when_add_cuelist_$1(Cue cue, boolean expectFail) {
         try {
             scheduler.addCue(cue);
@@ -449,6 +1134,66 @@ public class TestScheduler {
         assertEquals(count, scheduler.getCues().size());
     }
 
+    void then_cues_found_for_$1_from_$2_limit_$3_are_$4(String query, int offset, int limit, Integer... cueIds) {
+        List<Cue> cues = scheduler.findCues(query, offset, limit);
+        assertEquals(cueIds.length, cues.size());
+        for ( int i = 0; i < cueIds.length; i++ ) {
+            assertEquals((int) cueIds[i], cues.get(i).getId());
+        }
+    }
+
+    void then_stored_cues_are_$1(int count) {
+        assertEquals(count, ((StorageMock) storage).getCueIds().size());
+    }
+
+    void then_changes_are_durable_within_$1_millis(long millis) {
+        try {
+            assertTrue(persister.awaitDurable(persister.getVersion(), millis));
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    void then_changes_are_not_durable_within_$1_millis(long millis) {
+        try {
+            assertFalse(persister.awaitDurable(persister.getVersion(), millis));
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    void then_json_files_written_are_$1(String... filenames) {
+        assertEquals(Arrays.asList(filenames), json.takeWritten());
+    }
+
+    void then_commits_since_$1_are_at_most_$2(int before, int count) {
+        assertTrue(((StorageMock) storage).getCommits() - before <= count);
+    }
+
+    void then_event_$1_is_stored_in_$2(Integer eventId, String layer) {
+        assertEquals(layer, ((StorageMock) storage).getEventLayers().get(eventId));
+    }
+
+    void then_event_$1_has_stored_overrides_$2(Integer eventId, String... dates) {
+        List<String> stored = new ArrayList<>();
+        for ( EventOverride override : ((StorageMock) storage).getEventOverrides(eventId) ) {
+            stored.add(override.getDate().toString());
+        }
+        assertEquals(Arrays.asList(dates), stored);
+    }
+
+    void then_removing_override_$1_on_$2_finds_nothing(long eventId, String date) {
+        try {
+            assertFalse(scheduler.removeOverride(eventId, LocalDate.parse(date)));
+        } catch (ScheduleConflictException e) {
+            fail("Did not expect an exception: " + e.getMessage());
+        }
+    }
+
+    void then_occurrence_$1_on_$2_is_overridden_$3(Integer eventId, String date, boolean overridden) {
+        assertEquals(overridden, scheduler.getEventById(eventId).getOverride(LocalDate.parse(date))!=null);
+    }
+
     void then_there_are_$1_events_today(int count) {
         int total = 0;
         for (Map.Entry<Integer, Schedule> entry : scheduler.getSchedules().entrySet() ) {
@@ -471,11 +1216,38 @@ public class TestScheduler {
         assertEquals(count, total);
     }
 
+    void then_events_on_$1_are_$2(String date, Integer... eventIds) {
+        List<MediaEvent> events = scheduler.getSchedules().get(1).getEvents(LocalDate.parse(date));
+        assertEquals(eventIds.length, events.size());
+        for ( int i = 0; i < eventIds.length; i++ ) {
+            assertEquals((int) eventIds[i], events.get(i).getId());
+        }
+    }
+
+    void then_conflicts_are_$1(String... conflicts) {
+        assertEquals(conflicts.length, report.getConflicts().size());
+        for ( int i = 0; i < conflicts.length; i++ ) {
+            ConflictReport.Conflict conflict = report.getConflicts().get(i);
+            assertEquals(conflicts[i], conflict.getPriority() + ":" + conflict.getEventId() + "@" + conflict.getStart());
+        }
+    }
+
+    void then_report_is_clear_$1(boolean clear) {
+        assertEquals(clear, report.isClear());
+    }
+
+    void then_free_slots_start_at_$1(String... starts) {
+        assertEquals(starts.length, report.getFreeSlots().size());
+        for ( int i = 0; i < starts.length; i++ ) {
+            assertEquals(LocalDateTime.parse(starts[i]), report.getFreeSlots().get(i).getStart());
+        }
+    }
+
     void then_event_$1_exists_$2(Integer eventId, boolean exists) {
         MediaEvent event = scheduler.getEventById(eventId);
         assertEquals(exists, event!=null);
         try {
-            event = scheduler.switchPriority(eventId, Scheduler.MAX_PRIORITY);
+            event = scheduler.switchPriority(eventId, 1000);
             assertEquals(exists, event!=null);
         } catch (SchedulerException e) {
             fail("Did not expect an exception: " + e.getMessage());
@@ -501,6 +1273,34 @@ public class TestScheduler {
         }
     }
 
+    void then_zone_$1_event_is_$2(String zone, Cue cue) {
+        MediaEvent event = scheduler.getCurrentEvent(zone);
+        assertEquals(cue==null ? null : cue.getId(), event==null ? null : event.getCueId());
+    }
+
+    void then_output_$1_shows_$2(String output, Cue cue) {
+        assertEquals(cue, outputs.getOutput(output).getTargetCue());
+    }
+
+    void then_output_$1_shows_$2_fading_from_$3(String output, Cue cue, Cue fadeFrom) {
+        assertEquals(cue, outputs.getOutput(output).getTargetCue());
+        assertEquals(fadeFrom, outputs.getOutput(output).getFadingCue());
+    }
+
+    void then_output_$1_level_is_between_$2_and_$3(String output, int low, int high) {
+        int level = outputs.getOutput(output).getTargetLevel();
+        assertTrue(level>=low && level<=high);
+    }
+
+    void then_audit_trail_is_$1(AuditEntry.Type... types) {
+        List<AuditEntry> entries = audit.query(Long.MIN_VALUE, Long.MAX_VALUE);
+        int first = entries.size() - types.length;
+        assertTrue(first>=0);
+        for ( int i = 0; i < types.length; i++ ) {
+            assertEquals(types[i], entries.get(first + i).getType());
+        }
+    }
+
     void then_exception_thrown(Class<? extends Exception> expectedExceptionClass, Class<? extends Exception> actualExceptionClass) {
         if (actualExceptionClass != expectedExceptionClass) {
             fail("Wrong exception thrown");
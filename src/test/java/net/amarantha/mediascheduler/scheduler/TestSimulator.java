@@ -0,0 +1,124 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.google.inject.Inject;
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.SimulationTestModule;
+import net.amarantha.mediascheduler.utility.Now;
+import org.junit.After;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static java.time.DayOfWeek.*;
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(SimulationTestModule.class)
+public class TestSimulator {
+
+    @Inject private Simulator simulator;
+    @Inject private StorageMock stored;
+    @Inject private Now now;
+
+    private List<String> commands;
+
+    @Story
+    public void testDryRunOverClocksChange() {
+
+        given_stored_cue_$1(new Cue(1, 1, "Dragons"));
+        given_stored_cue_$1(new Cue(2, 2, "Polar Bears"));
+        given_stored_priority_$1_event_$2(1, new MediaEvent(1, 1, "2016-03-26", "10:00", "11:00", SATURDAY, SUNDAY));
+        given_stored_priority_$1_event_$2(2, new MediaEvent(2, 2, "2016-03-27", "10:30", "12:00"));
+        given_time_zone_$1("Europe/London");
+        Map<Integer, String> layers = stored.getEventLayers();
+
+        when_simulate_from_$1_to_$2("2016-03-26T00:00", "2016-03-28T00:00");
+
+        // Stopping clears all ten layers; brightness and contrast are sent once at startup
+        then_midi_commands_are_$1(
+                stop("2016-03-26T00:00"),
+                send("2016-03-26T00:00", 0, 42, 50), send("2016-03-26T00:00", 0, 43, 25),
+                send("2016-03-26T10:00", 0, 1, 127),
+                stop("2016-03-26T11:00"),
+                send("2016-03-27T10:00", 0, 1, 127),
+                send("2016-03-27T10:30", 0, 1, 0), send("2016-03-27T10:30", 0, 2, 127),
+                stop("2016-03-27T12:00"),
+                stop("2016-03-28T00:00"));
+        then_store_is_unchanged_from_$1(layers);
+
+    }
+
+    @After
+    public void when_cleanup() {
+        stored.clear();
+        now.setClock(null);
+    }
+
+
+    ///////////
+    // Given //
+    ///////////
+
+    void given_stored_cue_$1(Cue cue) {
+        stored.putCue(cue);
+    }
+
+    void given_stored_priority_$1_event_$2(int priority, MediaEvent event) {
+        stored.putEvent(Scheduler.DEFAULT_ZONE, priority, event);
+    }
+
+    void given_time_zone_$1(String zone) {
+        now.setClock(Clock.system(ZoneId.of(zone)));
+    }
+
+
+    //////////
+    // When //
+    //////////
+
+    void when_simulate_from_$1_to_$2(String from, String to) {
+        commands = simulator.simulate(LocalDateTime.parse(from), LocalDateTime.parse(to), new PrintStream(new ByteArrayOutputStream()));
+    }
+
+
+    //////////
+    // Then //
+    //////////
+
+    void then_midi_commands_are_$1(List<?>... expected) {
+        List<String> all = new ArrayList<>();
+        for ( List<?> part : expected ) {
+            for ( Object command : part ) {
+                all.add((String) command);
+            }
+        }
+        assertEquals(all, commands);
+    }
+
+    private List<String> send(String dateTime, int channel, int data1, int data2) {
+        return Collections.singletonList(dateTime + " default 176 " + channel + " " + data1 + " " + data2);
+    }
+
+    private List<String> stop(String dateTime) {
+        List<String> result = new ArrayList<>();
+        for ( int layer = 1; layer <= 10; layer++ ) {
+            result.addAll(send(dateTime, 1, layer, 0));
+        }
+        return result;
+    }
+
+    void then_store_is_unchanged_from_$1(Map<Integer, String> layers) {
+        assertEquals(layers, stored.getEventLayers());
+        assertEquals(0, stored.getCommits());
+    }
+
+}
@@ -0,0 +1,142 @@
+package net.amarantha.mediascheduler.scheduler;
+
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.TestModule;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(TestModule.class)
+public class TestTimerWheel {
+
+    private static final long START = 1457000000000L;
+
+    private TimerWheel wheel;
+    private List<Long> fired;
+
+    @Story
+    public void testExpiry() {
+
+        given_a_wheel_with_tick_$1(100);
+
+        TimerWheel.Timeout t1 = when_schedule_at_$1(START + 1000);
+        when_schedule_at_$1(START + 250);
+        when_schedule_at_$1(START + 60 * 60 * 1000);
+
+        when_advance_to_$1(START + 200);
+        then_fired_count_is_$1(0);
+
+        when_advance_to_$1(START + 300);
+        then_fired_count_is_$1(1);
+
+        when_cancel_$1(t1, true);
+        when_cancel_$1(t1, false);
+        when_advance_to_$1(START + 5000);
+        then_fired_count_is_$1(1);
+
+        when_advance_to_$1(START + 60 * 60 * 1000);
+        then_fired_count_is_$1(2);
+        then_pending_count_is_$1(0);
+
+    }
+
+    @Story
+    public void testPastDeadlineFiresOnNextAdvance() {
+
+        given_a_wheel_with_tick_$1(100);
+        when_schedule_at_$1(START - 5000);
+        then_fired_count_is_$1(0);
+        when_advance_to_$1(START);
+        then_fired_count_is_$1(1);
+
+    }
+
+    @Story
+    public void testManyTimeouts() {
+
+        given_a_wheel_with_tick_$1(100);
+
+        Random random = new Random(42);
+        int count = 200000;
+        for ( int i = 0; i < count; i++ ) {
+            when_schedule_at_$1(START + (long) (random.nextDouble() * 400L * 24 * 60 * 60 * 1000));
+        }
+        then_pending_count_is_$1(count);
+
+        for ( long t = START; t <= START + 400L * 24 * 60 * 60 * 1000; t += 7 * 60 * 60 * 1000 ) {
+            when_advance_to_$1(t);
+        }
+        when_advance_to_$1(START + 401L * 24 * 60 * 60 * 1000);
+
+        then_fired_count_is_$1(count);
+        then_pending_count_is_$1(0);
+        then_nothing_fired_early();
+
+    }
+
+    @Story
+    public void testFarFutureDeadline() {
+
+        given_a_wheel_with_tick_$1(1000);
+        long farFuture = START + 3000L * 365 * 24 * 60 * 60 * 1000;
+        when_schedule_at_$1(farFuture);
+        when_advance_to_$1(farFuture - 1000);
+        then_fired_count_is_$1(0);
+        when_advance_to_$1(farFuture);
+        then_fired_count_is_$1(1);
+
+    }
+
+
+    //////////
+    // When //
+    //////////
+
+    void given_a_wheel_with_tick_$1(long tickMillis) {
+        wheel = new TimerWheel(tickMillis, START);
+        fired = new ArrayList<>();
+    }
+
+    TimerWheel.Timeout when_schedule_at_$1(long deadline) {
+        return wheel.schedule(deadline, () -> {
+            fired.add(deadline);
+            assertTrue(wheel.getTime() >= deadline);
+        });
+    }
+
+    void when_advance_to_$1(long millis) {
+        wheel.advanceTo(millis);
+    }
+
+    void when_cancel_$1(TimerWheel.Timeout timeout, boolean expectCancelled) {
+        assertEquals(expectCancelled, timeout.cancel());
+    }
+
+
+    //////////
+    // Then //
+    //////////
+
+    void then_fired_count_is_$1(int count) {
+        assertEquals(count, fired.size());
+    }
+
+    void then_pending_count_is_$1(int count) {
+        assertEquals(count, wheel.size());
+    }
+
+    void then_nothing_fired_early() {
+        long last = START;
+        for ( long deadline : fired ) {
+            assertTrue(deadline >= last - wheel.getTickMillis());
+            last = Math.max(last, deadline);
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package net.amarantha.mediascheduler.utility;
+
+import com.googlecode.guicebehave.Modules;
+import com.googlecode.guicebehave.Story;
+import com.googlecode.guicebehave.StoryRunner;
+import net.amarantha.mediascheduler.TestModule;
+import org.junit.runner.RunWith;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.Assert.*;
+
+@RunWith(StoryRunner.class) @Modules(TestModule.class)
+public class TestNow {
+
+    private static final long START = 1457000000000L;
+
+    private Now now;
+    private long wallMillis;
+    private long nanos;
+
+    @Story
+    public void testSetDateTimeAcrossClocksChange() {
+
+        given_a_clock_in_$1_at_$2("Europe/London", "2016-03-01T09:00");
+
+        when_set_date_$1_time_$2("2016-07-15", "10:00");
+        then_local_time_is_$1("2016-07-15T10:00");
+        then_instant_is_$1("2016-07-15T09:00:00Z");
+
+        when_set_date_$1_time_$2("2016-01-15", "10:00");
+        then_local_time_is_$1("2016-01-15T10:00");
+        then_instant_is_$1("2016-01-15T10:00:00Z");
+
+        when_set_date_$1("2016-07-16");
+        then_local_time_is_$1("2016-07-16T10:00");
+
+    }
+
+    @Story
+    public void testResyncEveryMinute() {
+
+        given_system_clocks_at_start();
+
+        // Wall clock corrections are ignored between resyncs
+        when_$1_seconds_pass_with_wall_clock_at_$2(30, 40);
+        then_epoch_seconds_are_$1(30);
+
+        when_$1_seconds_pass_with_wall_clock_at_$2(30, 70);
+        then_epoch_seconds_are_$1(70);
+
+    }
+
+    @Story
+    public void testBackwardJumps() {
+
+        given_system_clocks_at_start();
+
+        when_$1_seconds_pass_with_wall_clock_at_$2(59, 59);
+        then_epoch_seconds_are_$1(59);
+
+        // Set back two minutes: held until the wall clock catches up
+        when_$1_seconds_pass_with_wall_clock_at_$2(1, -60);
+        then_epoch_seconds_are_$1(59);
+        when_$1_seconds_pass_with_wall_clock_at_$2(60, 0);
+        then_epoch_seconds_are_$1(59);
+        when_$1_seconds_pass_with_wall_clock_at_$2(60, 60);
+        then_epoch_seconds_are_$1(60);
+
+        // Set back ten minutes: too far to hold, so followed at once
+        when_$1_seconds_pass_with_wall_clock_at_$2(60, -540);
+        then_epoch_seconds_are_$1(-540);
+
+    }
+
+
+    ///////////
+    // Given //
+    ///////////
+
+    void given_a_clock_in_$1_at_$2(String zone, String dateTime) {
+        now = new Now();
+        now.setClock(new VirtualClock(LocalDateTime.parse(dateTime), ZoneId.of(zone)));
+    }
+
+    void given_system_clocks_at_start() {
+        wallMillis = START;
+        nanos = 0;
+        now = new Now();
+        now.setSystemClocks(() -> wallMillis, () -> nanos);
+    }
+
+
+    //////////
+    // When //
+    //////////
+
+    void when_set_date_$1_time_$2(String date, String time) {
+        now.setDateTime(date, time);
+    }
+
+    void when_set_date_$1(String date) {
+        now.setDate(date);
+    }
+
+    void when_$1_seconds_pass_with_wall_clock_at_$2(long seconds, long wallSeconds) {
+        nanos += seconds * 1_000_000_000L;
+        wallMillis = START + wallSeconds * 1000;
+    }
+
+
+    //////////
+    // Then //
+    //////////
+
+    void then_local_time_is_$1(String dateTime) {
+        assertEquals(LocalDateTime.parse(dateTime), now.now());
+    }
+
+    void then_instant_is_$1(String instant) {
+        assertEquals(Instant.parse(instant).toEpochMilli(), now.epochMillis());
+    }
+
+    void then_epoch_seconds_are_$1(long seconds) {
+        assertEquals(START + seconds * 1000, now.epochMillis());
+    }
+
+}
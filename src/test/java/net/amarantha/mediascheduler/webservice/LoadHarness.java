@@ -0,0 +1,368 @@
+package net.amarantha.mediascheduler.webservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Provides;
+import com.google.inject.name.Named;
+import com.google.inject.util.Modules;
+import net.amarantha.mediascheduler.ApplicationModule;
+import net.amarantha.mediascheduler.device.Projector;
+import net.amarantha.mediascheduler.device.ProjectorMock;
+import net.amarantha.mediascheduler.metrics.Histogram;
+import net.amarantha.mediascheduler.midi.Midi;
+import net.amarantha.mediascheduler.midi.MidiMock;
+import net.amarantha.mediascheduler.scheduler.ScheduleGenerator;
+import net.amarantha.mediascheduler.scheduler.ScheduleGenerator.Shape;
+import net.amarantha.mediascheduler.scheduler.Scheduler;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Starts the web service in-process on mock devices and drives it with a closed loop of
+// clients, each sending its next request as soon as the last one is answered. The scheduler
+// loads and saves its files in the working directory, so run it somewhere disposable:
+//   mvn -Ploadtest verify -Dloadtest.args="clients=32 duration=60 writes=0.1"
+// Settings are key=value arguments; with out=<file> each run appends a JSON summary line.
+public class LoadHarness {
+
+    private static final String BASE_URL = "http://127.0.0.1:8001/mediascheduler/";
+
+    // Written events go in half-hour slots from here, clear of the seeded schedule
+    private static final LocalDate WRITE_FROM = LocalDate.parse("2030-01-07");
+    private static final int SLOTS_PER_DAY = 48;
+    private static final int ID_BASE = 1000000;
+
+    private int clients = 16;
+    private int warmup = 5;
+    private int duration = 30;
+    private double writes = 0.2;
+    private int events = 500;
+    private String out = null;
+
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness();
+        harness.configure(args);
+        harness.run();
+        System.exit(0);
+    }
+
+    private void configure(String[] args) {
+        for ( String arg : args ) {
+            for ( String setting : arg.trim().split("\\s+") ) {
+                if ( setting.isEmpty() ) {
+                    continue;
+                }
+                String[] pair = setting.split("=", 2);
+                String value = ( pair.length>1 ? pair[1] : "" );
+                switch ( pair[0] ) {
+                    case "clients":  clients = Integer.parseInt(value); break;
+                    case "warmup":   warmup = Integer.parseInt(value); break;
+                    case "duration": duration = Integer.parseInt(value); break;
+                    case "writes":   writes = Double.parseDouble(value); break;
+                    case "events":   events = Integer.parseInt(value); break;
+                    case "out":      out = value; break;
+                    default:
+                        throw new IllegalArgumentException("Unknown setting '" + pair[0] + "'");
+                }
+            }
+        }
+    }
+
+
+    ////////////////
+    // Operations //
+    ////////////////
+
+    enum Operation {
+        LIST_CUES(false),
+        GET_SCHEDULE(false),
+        GET_EVENT(false),
+        GET_TIME(false),
+        GET_BRIGHTNESS(false),
+        ADD_EVENT(true),
+        REMOVE_EVENT(true),
+        ADD_CUE(true),
+        REMOVE_CUE(true),
+        SET_BRIGHTNESS(true),
+        STOP(true),
+        START(true);
+
+        final boolean write;
+
+        Operation(boolean write) {
+            this.write = write;
+        }
+    }
+
+    private static final Operation[] READS = Arrays.stream(Operation.values()).filter(op -> !op.write).toArray(Operation[]::new);
+    private static final Operation[] WRITES = Arrays.stream(Operation.values()).filter(op -> op.write).toArray(Operation[]::new);
+
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final AtomicInteger nextCue = new AtomicInteger();
+    private final Queue<Integer> liveEvents = new ConcurrentLinkedQueue<>();
+    private final Queue<Integer> liveCues = new ConcurrentLinkedQueue<>();
+
+    // Returns false if the server answered with an error
+    private boolean perform(Operation op) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch ( op ) {
+            case LIST_CUES:
+                return get("cue");
+            case GET_SCHEDULE:
+                LocalDate date = ScheduleGenerator.START.plusDays(random.nextInt(Math.max(1, events / 24)));
+                return get("schedule?date=" + date);
+            case GET_EVENT:
+                // Seeded events are numbered from 1 and never removed
+                return get("schedule/event?id=" + (1 + random.nextInt(Math.max(1, events))));
+            case GET_TIME:
+                return get("schedule/time");
+            case GET_BRIGHTNESS:
+                return get("control/brightness");
+            case ADD_EVENT:
+                return addEvent();
+            case REMOVE_EVENT:
+                Integer eventId = liveEvents.poll();
+                return eventId==null ? addEvent() : post("schedule/remove", eventId.toString());
+            case ADD_CUE:
+                return addCue();
+            case REMOVE_CUE:
+                Integer cueId = liveCues.poll();
+                return cueId==null ? addCue() : post("cue/remove", cueId.toString());
+            case SET_BRIGHTNESS:
+                return post("control/brightness?value=" + random.nextInt(128), "");
+            case STOP:
+                return post("control/stop", "");
+            default:
+                return post("control/start", "");
+        }
+    }
+
+    private boolean addEvent() throws IOException {
+        int slot = nextSlot.getAndIncrement();
+        int id = ID_BASE + slot;
+        LocalTime start = LocalTime.MIDNIGHT.plusMinutes(30 * (slot % SLOTS_PER_DAY));
+        String event = "{\"id\":" + id + ",\"cueId\":" + (1 + slot % ScheduleGenerator.CUES)
+                + ",\"startDate\":\"" + WRITE_FROM.plusDays(slot / SLOTS_PER_DAY) + "\""
+                + ",\"startTime\":\"" + start + "\",\"endTime\":\"" + start.plusMinutes(25) + "\"}";
+        boolean ok = post("schedule/add", event);
+        if ( ok ) {
+            liveEvents.add(id);
+        }
+        return ok;
+    }
+
+    private boolean addCue() throws IOException {
+        int id = ID_BASE + nextCue.getAndIncrement();
+        boolean ok = post("cue/create", "{\"id\":" + id + ",\"number\":" + (id % 128) + ",\"name\":\"Load " + id + "\"}");
+        if ( ok ) {
+            liveCues.add(id);
+        }
+        return ok;
+    }
+
+
+    //////////
+    // HTTP //
+    //////////
+
+    private boolean get(String path) throws IOException {
+        return send("GET", path, null);
+    }
+
+    private boolean post(String path, String body) throws IOException {
+        return send("POST", path, body);
+    }
+
+    // Always drains the response so the connection can be kept alive for the next request
+    private boolean send(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URL + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(30000);
+        if ( body!=null ) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "text/plain");
+            try ( OutputStream os = connection.getOutputStream() ) {
+                os.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = ( status < 400 ? connection.getInputStream() : connection.getErrorStream() );
+        if ( in!=null ) {
+            try ( InputStream is = in ) {
+                byte[] buffer = new byte[8192];
+                while ( is.read(buffer)>=0 ) {}
+            }
+        }
+        return status < 400;
+    }
+
+
+    /////////
+    // Run //
+    /////////
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+    private final Histogram total = new Histogram();
+    private volatile boolean measuring = false;
+    private volatile boolean running = true;
+
+    private void run() throws Exception {
+        Injector injector = Guice.createInjector(Modules.override(new ApplicationModule()).with(new LoadModule()));
+        Scheduler scheduler = injector.getInstance(Scheduler.class);
+        WebService webService = injector.getInstance(WebService.class);
+
+        scheduler.startup();
+        System.out.println("Seeding " + events + " events....");
+        new ScheduleGenerator().populate(scheduler, Shape.MIXED, events, 1);
+        webService.startWebService();
+
+        for ( Operation op : Operation.values() ) {
+            latencies.put(op, new Histogram());
+            errors.put(op, new AtomicLong());
+        }
+
+        System.out.println("Running " + clients + " clients, " + Math.round(writes * 100) + "% writes, "
+                + warmup + "s warmup then " + duration + "s measured....");
+        CountDownLatch done = new CountDownLatch(clients);
+        for ( int i = 0; i < clients; i++ ) {
+            Thread client = new Thread(() -> {
+                try {
+                    drive();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            client.setDaemon(true);
+            client.start();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+        measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+        measuring = false;
+        long elapsed = System.nanoTime() - start;
+        running = false;
+        done.await(1, TimeUnit.MINUTES);
+
+        report(elapsed / 1e9);
+
+        webService.stopWebService();
+        scheduler.shutdown();
+    }
+
+    private void drive() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while ( running ) {
+            Operation op = ( random.nextDouble() < writes ? WRITES[random.nextInt(WRITES.length)] : READS[random.nextInt(READS.length)] );
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                ok = perform(op);
+            } catch (IOException e) {
+                ok = false;
+            }
+            if ( measuring ) {
+                latencies.get(op).recordSince(start);
+                total.recordSince(start);
+                if ( !ok ) {
+                    errors.get(op).incrementAndGet();
+                }
+            }
+        }
+    }
+
+
+    ////////////
+    // Report //
+    ////////////
+
+    private void report(double seconds) throws IOException {
+        long totalErrors = 0;
+        System.out.println();
+        System.out.println(String.format("%-16s %9s %7s %10s %10s %10s %10s", "Operation", "Requests", "Errors", "p50 ms", "p99 ms", "p999 ms", "Max ms"));
+        for ( Operation op : Operation.values() ) {
+            Histogram histogram = latencies.get(op);
+            long opErrors = errors.get(op).get();
+            totalErrors += opErrors;
+            System.out.println(row(op.name(), histogram, opErrors));
+        }
+        System.out.println(row("ALL", total, totalErrors));
+        double throughput = total.getCount() / seconds;
+        System.out.println(String.format(Locale.ROOT, "%nThroughput: %.1f requests/s", throughput));
+
+        if ( out!=null ) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("time", LocalDateTime.now().toString());
+            summary.put("clients", clients);
+            summary.put("duration", duration);
+            summary.put("writes", writes);
+            summary.put("events", events);
+            summary.put("requests", total.getCount());
+            summary.put("errors", totalErrors);
+            summary.put("throughput", throughput);
+            summary.put("p50", millis(total.getValueAtQuantile(0.5)));
+            summary.put("p99", millis(total.getValueAtQuantile(0.99)));
+            summary.put("p999", millis(total.getValueAtQuantile(0.999)));
+            summary.put("max", millis(total.getMax()));
+            try ( Writer writer = new OutputStreamWriter(new FileOutputStream(out, true), StandardCharsets.UTF_8) ) {
+                writer.write(new ObjectMapper().writeValueAsString(summary));
+                writer.write('\n');
+            }
+            System.out.println("Summary appended to " + out);
+        }
+    }
+
+    private static String row(String name, Histogram histogram, long errors) {
+        return String.format(Locale.ROOT, "%-16s %9d %7d %10.2f %10.2f %10.2f %10.2f", name, histogram.getCount(), errors,
+                millis(histogram.getValueAtQuantile(0.5)), millis(histogram.getValueAtQuantile(0.99)),
+                millis(histogram.getValueAtQuantile(0.999)), millis(histogram.getMax()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+
+    ////////////
+    // Module //
+    ////////////
+
+    // The real service stack, with mock MIDI and projectors in place of the hardware
+    private static class LoadModule extends AbstractModule {
+
+        @Override
+        protected void configure() {
+            bind(Midi.class).to(MidiMock.class);
+            bind(Projector.class).to(ProjectorMock.class);
+        }
+
+        @Provides @Named("output")
+        Midi provideOutputMidi() {
+            return new MidiMock();
+        }
+
+        @Provides @Named("output")
+        Projector provideOutputProjector() {
+            return new ProjectorMock();
+        }
+
+    }
+
+}